@@ -0,0 +1,63 @@
+package ru.yandex.practicum.filmorate.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Warmup;
+import ru.yandex.practicum.filmorate.model.Film;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Бенчмарки чтения фильмов и лайков через хранилище фильмов
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class FilmStorageBenchmark {
+    private static final int POPULAR_COUNT = 10;
+
+    @Benchmark
+    public List<Film> getFilms(FilmorateDataset dataset) {
+        return dataset.filmStorage().getFilms();
+    }
+
+    @Benchmark
+    public Film getFilmById(FilmorateDataset dataset) {
+        return dataset.filmStorage().getFilmById(dataset.randomFilmId());
+    }
+
+    /**
+     * Тот же вызов, что getFilmById, но без таймера filmorate.storage: разница - накладные расходы метрик
+     */
+    @Benchmark
+    public Film getFilmByIdWithoutMetrics(FilmorateDataset dataset) {
+        return dataset.cachedFilmStorage().getFilmById(dataset.randomFilmId());
+    }
+
+    @Benchmark
+    public Film getFilmByIdWithoutCache(FilmorateDataset dataset) {
+        return dataset.filmDbStorage().getFilmById(dataset.randomFilmId());
+    }
+
+    @Benchmark
+    public List<Film> getMostPopularFilms(FilmorateDataset dataset) {
+        return dataset.filmStorage().getMostPopularFilms(POPULAR_COUNT);
+    }
+
+    /**
+     * Лайк ставит и сразу убирает пользователь без лайков, поэтому набор данных между вызовами не меняется
+     */
+    @Benchmark
+    public boolean addAndRemoveLike(FilmorateDataset dataset) {
+        int filmId = dataset.randomFilmId();
+        return dataset.filmStorage().addLike(filmId, dataset.freeUserId())
+                && dataset.filmStorage().removeLike(filmId, dataset.freeUserId());
+    }
+}
@@ -0,0 +1,127 @@
+package ru.yandex.practicum.filmorate.benchmark;
+
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.springframework.boot.Banner;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import ru.yandex.practicum.filmorate.FilmorateApplication;
+import ru.yandex.practicum.filmorate.dataset.DatasetSpec;
+import ru.yandex.practicum.filmorate.dataset.GeneratedDataset;
+import ru.yandex.practicum.filmorate.dataset.SyntheticDataGenerator;
+import ru.yandex.practicum.filmorate.model.User;
+import ru.yandex.practicum.filmorate.service.UserService;
+import ru.yandex.practicum.filmorate.storage.FilmStorage;
+import ru.yandex.practicum.filmorate.storage.UserStorage;
+import ru.yandex.practicum.filmorate.storage.cache.CachedFilmStorage;
+import ru.yandex.practicum.filmorate.storage.dao.FilmDbStorage;
+
+import java.time.LocalDate;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Приложение на встроенной H2 в памяти, заполненное генератором синтетических данных.
+ * Размер данных задаётся числом лайков: фильмов в 100 раз меньше, пользователей в 10 раз меньше,
+ * но не меньше FILMS_MIN и USERS_MIN.
+ * Отдельный пользователь без лайков нужен бенчмаркам записи, чтобы они не меняли набор данных.
+ */
+@State(Scope.Benchmark)
+public class FilmorateDataset {
+    private static final int USERS_MIN = 1_000;
+    private static final int FILMS_MIN = 100;
+    private static final int LIKES_PER_FILM = 100;
+    private static final int LIKES_PER_USER = 10;
+    private static final int GENRES_PER_FILM = 2;
+    private static final int FRIENDS_PER_USER = 5;
+    private static final double ZIPF_EXPONENT = 1.0;
+    private static final long SEED = 42;
+
+    @Param({"1000", "100000", "1000000"})
+    public int likesCount;
+
+    private ConfigurableApplicationContext context;
+    private FilmStorage filmStorage;
+    private CachedFilmStorage cachedFilmStorage;
+    private FilmDbStorage filmDbStorage;
+    private UserStorage userStorage;
+    private UserService userService;
+    private int[] userIds;
+    private int[] filmIds;
+    private int freeUserId;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        context = new SpringApplicationBuilder(FilmorateApplication.class)
+                .web(WebApplicationType.NONE)
+                .bannerMode(Banner.Mode.OFF)
+                .logStartupInfo(false)
+                .run("--spring.datasource.url=jdbc:h2:mem:filmorate-benchmark;DB_CLOSE_DELAY=-1",
+                        "--logging.level.root=WARN");
+        filmStorage = context.getBean(FilmStorage.class);
+        cachedFilmStorage = context.getBean(CachedFilmStorage.class);
+        filmDbStorage = context.getBean(FilmDbStorage.class);
+        userStorage = context.getBean(UserStorage.class);
+        userService = context.getBean(UserService.class);
+
+        DatasetSpec spec = new DatasetSpec(Math.max(USERS_MIN, likesCount / LIKES_PER_USER),
+                Math.max(FILMS_MIN, likesCount / LIKES_PER_FILM), GENRES_PER_FILM, likesCount, FRIENDS_PER_USER,
+                ZIPF_EXPONENT, SEED);
+        GeneratedDataset dataset = context.getBean(SyntheticDataGenerator.class).generate(spec);
+        userIds = dataset.userIds();
+        filmIds = dataset.filmIds();
+        freeUserId = userStorage.addUser(User.builder()
+                .name("Пользователь без лайков")
+                .email("free@bench.ru")
+                .login("free_user")
+                .birthday(LocalDate.of(1990, 1, 1))
+                .build()).getId();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        context.close();
+    }
+
+    public FilmStorage filmStorage() {
+        return filmStorage;
+    }
+
+    /**
+     * Хранилище фильмов с кэшем фильмов по id, но без таймеров методов
+     */
+    public CachedFilmStorage cachedFilmStorage() {
+        return cachedFilmStorage;
+    }
+
+    /**
+     * Хранилище фильмов в БД без кэша фильмов по id
+     */
+    public FilmDbStorage filmDbStorage() {
+        return filmDbStorage;
+    }
+
+    public UserStorage userStorage() {
+        return userStorage;
+    }
+
+    public UserService userService() {
+        return userService;
+    }
+
+    public int randomUserId() {
+        return userIds[ThreadLocalRandom.current().nextInt(userIds.length)];
+    }
+
+    public int randomFilmId() {
+        return filmIds[ThreadLocalRandom.current().nextInt(filmIds.length)];
+    }
+
+    public int freeUserId() {
+        return freeUserId;
+    }
+}
@@ -0,0 +1,77 @@
+package ru.yandex.practicum.filmorate.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import ru.yandex.practicum.filmorate.dto.film.FilmDto;
+import ru.yandex.practicum.filmorate.dto.user.UserDto;
+import ru.yandex.practicum.filmorate.mapper.FilmMapper;
+import ru.yandex.practicum.filmorate.mapper.UserMapper;
+import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.Genre;
+import ru.yandex.practicum.filmorate.model.IntHashSet;
+import ru.yandex.practicum.filmorate.model.Mpa;
+import ru.yandex.practicum.filmorate.model.User;
+
+import java.time.LocalDate;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.IntStream;
+
+/**
+ * Бенчмарки преобразования моделей в DTO. БД не нужна, модели собираются в памяти
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class MapperBenchmark {
+    private static final int LIKES_COUNT = 1_000;
+    private static final int FRIENDS_COUNT = 100;
+
+    private Film film;
+    private User user;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        film = Film.builder()
+                .id(1)
+                .name("Фильм")
+                .description("Описание фильма")
+                .releaseDate(LocalDate.of(2000, 1, 1))
+                .duration(120)
+                .mpa(new Mpa(1, "G"))
+                .genres(new LinkedHashSet<>(List.of(new Genre(1, "Комедия"), new Genre(2, "Драма"))))
+                .likes(IntHashSet.of(IntStream.rangeClosed(1, LIKES_COUNT).toArray()))
+                .build();
+        user = User.builder()
+                .id(1)
+                .name("Пользователь")
+                .email("user@bench.ru")
+                .login("bench_user")
+                .birthday(LocalDate.of(1990, 1, 1))
+                .friends(IntHashSet.of(IntStream.rangeClosed(2, FRIENDS_COUNT + 1).toArray()))
+                .build();
+    }
+
+    @Benchmark
+    public FilmDto mapToFilmDto() {
+        return FilmMapper.mapToFilmDto(film);
+    }
+
+    @Benchmark
+    public UserDto mapToUserDto() {
+        return UserMapper.mapToUserDto(user);
+    }
+}
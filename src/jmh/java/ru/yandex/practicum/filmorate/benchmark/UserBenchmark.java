@@ -0,0 +1,34 @@
+package ru.yandex.practicum.filmorate.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Warmup;
+import ru.yandex.practicum.filmorate.dto.user.UserDto;
+import ru.yandex.practicum.filmorate.model.IntHashSet;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Бенчмарки чтения друзей через хранилище и сервис пользователей
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class UserBenchmark {
+    @Benchmark
+    public IntHashSet getUserFriends(FilmorateDataset dataset) {
+        return dataset.userStorage().getUserFriends(dataset.randomUserId());
+    }
+
+    @Benchmark
+    public List<UserDto> getCommonFriends(FilmorateDataset dataset) {
+        return dataset.userService().getCommonFriends(dataset.randomUserId(), dataset.randomUserId());
+    }
+}
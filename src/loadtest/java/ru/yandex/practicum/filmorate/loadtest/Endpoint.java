@@ -0,0 +1,62 @@
+package ru.yandex.practicum.filmorate.loadtest;
+
+import ru.yandex.practicum.filmorate.dataset.GeneratedDataset;
+
+import java.net.URI;
+import java.net.http.HttpRequest;
+import java.util.Random;
+
+/**
+ * Эндпоинты, из которых складывается нагрузка. Id фильмов и пользователей выбираются случайно
+ * из сгенерированных данных, популярность фильмов задаётся самими данными.
+ */
+public enum Endpoint {
+    FILM_BY_ID {
+        @Override
+        HttpRequest request(URI baseUri, GeneratedDataset dataset, Random random) {
+            return get(baseUri, "/films/" + randomFilmId(dataset, random));
+        }
+    },
+    POPULAR_FILMS {
+        @Override
+        HttpRequest request(URI baseUri, GeneratedDataset dataset, Random random) {
+            return get(baseUri, "/films/popular?count=" + POPULAR_COUNT);
+        }
+    },
+    ADD_LIKE {
+        @Override
+        HttpRequest request(URI baseUri, GeneratedDataset dataset, Random random) {
+            String path = "/films/" + randomFilmId(dataset, random) + "/like/" + randomUserId(dataset, random);
+            return HttpRequest.newBuilder(baseUri.resolve(path)).PUT(HttpRequest.BodyPublishers.noBody()).build();
+        }
+    },
+    USER_FRIENDS {
+        @Override
+        HttpRequest request(URI baseUri, GeneratedDataset dataset, Random random) {
+            return get(baseUri, "/users/" + randomUserId(dataset, random) + "/friends");
+        }
+    },
+    COMMON_FRIENDS {
+        @Override
+        HttpRequest request(URI baseUri, GeneratedDataset dataset, Random random) {
+            return get(baseUri, "/users/" + randomUserId(dataset, random) + "/friends/common/" +
+                    randomUserId(dataset, random));
+        }
+    };
+
+    private static final int POPULAR_COUNT = 10;
+
+    abstract HttpRequest request(URI baseUri, GeneratedDataset dataset, Random random);
+
+    private static HttpRequest get(URI baseUri, String path) {
+        return HttpRequest.newBuilder(baseUri.resolve(path)).GET().build();
+    }
+
+    private static int randomFilmId(GeneratedDataset dataset, Random random) {
+        return dataset.filmIds()[random.nextInt(dataset.filmIds().length)];
+    }
+
+    private static int randomUserId(GeneratedDataset dataset, Random random) {
+        return dataset.userIds()[random.nextInt(dataset.userIds().length)];
+    }
+}
@@ -0,0 +1,77 @@
+package ru.yandex.practicum.filmorate.loadtest;
+
+import org.HdrHistogram.ConcurrentHistogram;
+import org.HdrHistogram.Histogram;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Задержки и ошибки одного эндпоинта. Задержки записываются в HdrHistogram в микросекундах,
+ * ответы с ошибкой тоже попадают в гистограмму: медленная ошибка остаётся медленной.
+ */
+public class EndpointStats {
+    private static final int SIGNIFICANT_DIGITS = 3;
+    private static final double MICROS_PER_MILLI = 1_000.0;
+
+    private final Histogram latencies = new ConcurrentHistogram(SIGNIFICANT_DIGITS);
+    private final LongAdder errors = new LongAdder();
+
+    public void record(long latencyNanos, boolean success) {
+        latencies.recordValue(TimeUnit.NANOSECONDS.toMicros(latencyNanos));
+        if (!success) {
+            errors.increment();
+        }
+    }
+
+    public long count() {
+        return latencies.getTotalCount();
+    }
+
+    public long errors() {
+        return errors.sum();
+    }
+
+    public double errorRate() {
+        return count() == 0 ? 0 : (double) errors() / count();
+    }
+
+    /**
+     * Возвращает задержку перцентиля в миллисекундах. Перцентиль задаётся как p50, p99 или p999
+     */
+    public double percentileMillis(String percentile) {
+        return latencies.getValueAtPercentile(parsePercentile(percentile)) / MICROS_PER_MILLI;
+    }
+
+    public double maxMillis() {
+        return latencies.getMaxValue() / MICROS_PER_MILLI;
+    }
+
+    /**
+     * Возвращает сводку для отчёта: число запросов, ошибки и задержки основных перцентилей в миллисекундах
+     */
+    public Map<String, Object> summary(double seconds) {
+        Map<String, Object> summary = new LinkedHashMap<>();
+        summary.put("count", count());
+        summary.put("throughput", count() / seconds);
+        summary.put("errors", errors());
+        summary.put("p50", percentileMillis("p50"));
+        summary.put("p99", percentileMillis("p99"));
+        summary.put("p999", percentileMillis("p999"));
+        summary.put("max", maxMillis());
+        return summary;
+    }
+
+    /**
+     * Переводит p50 в 50, p99 в 99, p999 в 99.9
+     */
+    static double parsePercentile(String percentile) {
+        String digits = percentile.substring(1);
+        if (digits.length() <= 2) {
+            return Double.parseDouble(digits);
+        }
+        return Double.parseDouble(digits.substring(0, 2) + "." + digits.substring(2));
+    }
+}
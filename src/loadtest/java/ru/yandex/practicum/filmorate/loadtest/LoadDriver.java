@@ -0,0 +1,80 @@
+package ru.yandex.practicum.filmorate.loadtest;
+
+import ru.yandex.practicum.filmorate.dataset.GeneratedDataset;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Отправляет запросы по открытой модели: момент отправки i-го запроса заранее назначен как start + i / rate
+ * и не зависит от того, ответило ли приложение на предыдущие.
+ * Задержка считается от назначенного момента, а не от фактической отправки, поэтому отставание
+ * генератора нагрузки не прячет задержки приложения (coordinated omission).
+ */
+public class LoadDriver {
+    private static final Duration DRAIN_TIMEOUT = Duration.ofSeconds(30);
+
+    private final HttpClient client = HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1).build();
+    private final URI baseUri;
+    private final GeneratedDataset dataset;
+    private final LoadTestConfig config;
+    private final Random random;
+    private final Endpoint[] endpointsByWeight;
+
+    public LoadDriver(URI baseUri, GeneratedDataset dataset, LoadTestConfig config) {
+        this.baseUri = baseUri;
+        this.dataset = dataset;
+        this.config = config;
+        this.random = new Random(config.dataset().seed());
+        List<Endpoint> weighted = new ArrayList<>();
+        config.mix().forEach((endpoint, weight) -> {
+            for (int i = 0; i < weight; i++) {
+                weighted.add(endpoint);
+            }
+        });
+        this.endpointsByWeight = weighted.toArray(new Endpoint[0]);
+    }
+
+    /**
+     * Нагружает приложение в течение duration и возвращает статистику по эндпоинтам
+     */
+    public Map<Endpoint, EndpointStats> run(Duration duration) {
+        Map<Endpoint, EndpointStats> stats = new EnumMap<>(Endpoint.class);
+        config.mix().keySet().forEach(endpoint -> stats.put(endpoint, new EndpointStats()));
+
+        long intervalNanos = TimeUnit.SECONDS.toNanos(1) / config.rate();
+        long durationNanos = duration.toNanos();
+        long start = System.nanoTime();
+        List<CompletableFuture<?>> inFlight = new ArrayList<>();
+        for (long i = 0; i * intervalNanos < durationNanos; i++) {
+            long intended = start + i * intervalNanos;
+            long delay = intended - System.nanoTime();
+            if (delay > 0) {
+                LockSupport.parkNanos(delay);
+            }
+
+            Endpoint endpoint = endpointsByWeight[random.nextInt(endpointsByWeight.length)];
+            EndpointStats endpointStats = stats.get(endpoint);
+            inFlight.add(client.sendAsync(endpoint.request(baseUri, dataset, random),
+                            HttpResponse.BodyHandlers.discarding())
+                    .whenComplete((response, error) -> endpointStats.record(System.nanoTime() - intended,
+                            error == null && response.statusCode() < 400)));
+        }
+
+        CompletableFuture.allOf(inFlight.toArray(new CompletableFuture[0]))
+                .exceptionally(error -> null)
+                .orTimeout(DRAIN_TIMEOUT.toSeconds(), TimeUnit.SECONDS)
+                .join();
+        return stats;
+    }
+}
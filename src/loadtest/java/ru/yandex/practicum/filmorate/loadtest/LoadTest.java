@@ -0,0 +1,100 @@
+package ru.yandex.practicum.filmorate.loadtest;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.boot.Banner;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import ru.yandex.practicum.filmorate.FilmorateApplication;
+import ru.yandex.practicum.filmorate.dataset.GeneratedDataset;
+import ru.yandex.practicum.filmorate.dataset.SyntheticDataGenerator;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Нагрузочный тест HTTP API: запускает приложение на свободном порту со встроенной H2,
+ * заполняет её синтетическими данными, прогревает и нагружает смесью запросов из LoadTestConfig.
+ * Печатает p50/p99/p999 по эндпоинтам, пишет их в target/loadtest-result.json
+ * и завершается с кодом 1, если нарушен хотя бы один SLO.
+ */
+public class LoadTest {
+    private static final String RESULT_FILE = "target/loadtest-result.json";
+    private static final String VIRTUAL_THREADS_PROFILE = "virtual-threads";
+    private static final int VIRTUAL_THREADS_JAVA_VERSION = 21;
+
+    public static void main(String[] args) throws IOException {
+        LoadTestConfig config = LoadTestConfig.load(args);
+        // Без Java 21 Spring Boot молча оставляет пул потоков Tomcat, и замеры были бы подписаны неверно
+        if (config.virtualThreads() && Runtime.version().feature() < VIRTUAL_THREADS_JAVA_VERSION) {
+            throw new IllegalStateException("Режиму виртуальных потоков нужна Java " + VIRTUAL_THREADS_JAVA_VERSION +
+                    ", тест запущен на Java " + Runtime.version().feature());
+        }
+        List<String> appArgs = new ArrayList<>(List.of("--server.port=0", "--management.server.port=0",
+                "--spring.datasource.url=jdbc:h2:mem:filmorate-loadtest;DB_CLOSE_DELAY=-1",
+                "--logging.level.root=WARN"));
+        if (config.virtualThreads()) {
+            appArgs.add("--spring.profiles.active=" + VIRTUAL_THREADS_PROFILE);
+        }
+        List<String> violations;
+        try (ConfigurableApplicationContext context = new SpringApplicationBuilder(FilmorateApplication.class)
+                .bannerMode(Banner.Mode.OFF)
+                .logStartupInfo(false)
+                .run(appArgs.toArray(String[]::new))) {
+            GeneratedDataset dataset = context.getBean(SyntheticDataGenerator.class).generate(config.dataset());
+            int port = context.getEnvironment().getRequiredProperty("local.server.port", Integer.class);
+            LoadDriver driver = new LoadDriver(URI.create("http://localhost:" + port), dataset, config);
+
+            System.out.println("Запросы обрабатываются на " +
+                    (config.virtualThreads() ? "виртуальных потоках" : "пуле потоков Tomcat"));
+            driver.run(config.warmup());
+            Map<Endpoint, EndpointStats> stats = driver.run(config.duration());
+            report(stats, config.duration().toSeconds());
+            violations = checkSlo(stats, config);
+        }
+
+        if (!violations.isEmpty()) {
+            violations.forEach(violation -> System.err.println("Нарушен SLO: " + violation));
+            System.exit(1);
+        }
+        System.out.println("Все SLO выполнены");
+    }
+
+    private static void report(Map<Endpoint, EndpointStats> stats, double seconds) throws IOException {
+        Map<String, Object> result = new LinkedHashMap<>();
+        System.out.printf("%-16s %8s %10s %7s %9s %9s %9s %9s%n",
+                "endpoint", "count", "req/s", "errors", "p50 ms", "p99 ms", "p999 ms", "max ms");
+        stats.forEach((endpoint, endpointStats) -> {
+            Map<String, Object> summary = endpointStats.summary(seconds);
+            result.put(endpoint.name(), summary);
+            System.out.printf("%-16s %8d %10.1f %7d %9.2f %9.2f %9.2f %9.2f%n", endpoint, summary.get("count"),
+                    summary.get("throughput"), summary.get("errors"), summary.get("p50"), summary.get("p99"),
+                    summary.get("p999"), summary.get("max"));
+        });
+        File resultFile = new File(RESULT_FILE);
+        resultFile.getParentFile().mkdirs();
+        new ObjectMapper().writerWithDefaultPrettyPrinter().writeValue(resultFile, result);
+    }
+
+    private static List<String> checkSlo(Map<Endpoint, EndpointStats> stats, LoadTestConfig config) {
+        List<String> violations = new ArrayList<>();
+        stats.forEach((endpoint, endpointStats) -> {
+            if (endpointStats.errorRate() > config.maxErrorRate()) {
+                violations.add(String.format("%s доля ошибок %.4f больше %.4f", endpoint, endpointStats.errorRate(),
+                        config.maxErrorRate()));
+            }
+            config.slo().getOrDefault(endpoint, Map.of()).forEach((percentile, limitMillis) -> {
+                double actualMillis = endpointStats.percentileMillis(percentile);
+                if (actualMillis > limitMillis) {
+                    violations.add(String.format("%s %s %.2f мс больше %.2f мс", endpoint, percentile,
+                            actualMillis, limitMillis));
+                }
+            });
+        });
+        return violations;
+    }
+}
@@ -0,0 +1,86 @@
+package ru.yandex.practicum.filmorate.loadtest;
+
+import ru.yandex.practicum.filmorate.dataset.DatasetSpec;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.time.Duration;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Properties;
+
+/**
+ * Параметры нагрузочного теста. Значения по умолчанию читаются из loadtest.properties,
+ * аргументы командной строки вида key=value их переопределяют.
+ *
+ * @param rate           запросов в секунду
+ * @param virtualThreads обрабатывает ли приложение запросы на виртуальных потоках
+ * @param mix            доли эндпоинтов в нагрузке
+ * @param slo            предельные задержки в миллисекундах по эндпоинтам и перцентилям (p50, p99, p999)
+ * @param maxErrorRate   допустимая доля ответов с ошибкой
+ */
+public record LoadTestConfig(int rate, boolean virtualThreads, Duration warmup, Duration duration,
+                             Map<Endpoint, Integer> mix, DatasetSpec dataset, Map<Endpoint, Map<String, Double>> slo,
+                             double maxErrorRate) {
+    private static final String DEFAULTS = "/loadtest.properties";
+    private static final String MIX_PREFIX = "mix.";
+    private static final String SLO_PREFIX = "slo.";
+    private static final String MAX_ERROR_RATE = "slo.max-error-rate";
+
+    public static LoadTestConfig load(String[] args) throws IOException {
+        Properties properties = new Properties();
+        try (InputStream defaults = LoadTestConfig.class.getResourceAsStream(DEFAULTS)) {
+            if (defaults != null) {
+                properties.load(defaults);
+            }
+        }
+        for (String arg : args) {
+            int separator = arg.indexOf('=');
+            if (separator <= 0) {
+                throw new IllegalArgumentException("Аргумент нагрузочного теста должен иметь вид key=value: " + arg);
+            }
+            properties.setProperty(arg.substring(0, separator), arg.substring(separator + 1));
+        }
+
+        Map<Endpoint, Integer> mix = new EnumMap<>(Endpoint.class);
+        Map<Endpoint, Map<String, Double>> slo = new EnumMap<>(Endpoint.class);
+        for (String key : properties.stringPropertyNames()) {
+            if (key.startsWith(MIX_PREFIX)) {
+                int weight = Integer.parseInt(properties.getProperty(key));
+                if (weight > 0) {
+                    mix.put(Endpoint.valueOf(key.substring(MIX_PREFIX.length())), weight);
+                }
+            } else if (key.startsWith(SLO_PREFIX) && !key.equals(MAX_ERROR_RATE)) {
+                String[] parts = key.substring(SLO_PREFIX.length()).split("\\.");
+                slo.computeIfAbsent(Endpoint.valueOf(parts[0]), endpoint -> new HashMap<>())
+                        .put(parts[1], Double.parseDouble(properties.getProperty(key)));
+            }
+        }
+        if (mix.isEmpty()) {
+            throw new IllegalArgumentException("В нагрузке нет ни одного эндпоинта");
+        }
+
+        DatasetSpec dataset = new DatasetSpec(
+                intProperty(properties, "dataset.users"),
+                intProperty(properties, "dataset.films"),
+                intProperty(properties, "dataset.genres-per-film"),
+                intProperty(properties, "dataset.likes"),
+                intProperty(properties, "dataset.friends-per-user"),
+                Double.parseDouble(properties.getProperty("dataset.zipf-exponent")),
+                Long.parseLong(properties.getProperty("dataset.seed")));
+        return new LoadTestConfig(intProperty(properties, "rate"),
+                Boolean.parseBoolean(properties.getProperty("virtual-threads", "false")),
+                Duration.ofSeconds(intProperty(properties, "warmup-seconds")),
+                Duration.ofSeconds(intProperty(properties, "duration-seconds")),
+                mix, dataset, slo, Double.parseDouble(properties.getProperty(MAX_ERROR_RATE, "0")));
+    }
+
+    private static int intProperty(Properties properties, String key) {
+        String value = properties.getProperty(key);
+        if (value == null) {
+            throw new IllegalArgumentException("Не задан параметр нагрузочного теста " + key);
+        }
+        return Integer.parseInt(value);
+    }
+}
@@ -1,24 +1,37 @@
 package ru.yandex.practicum.filmorate.controller;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
 import jakarta.validation.Valid;
+import org.springframework.beans.factory.ObjectProvider;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+import ru.yandex.practicum.filmorate.dto.PageDto;
 import ru.yandex.practicum.filmorate.dto.film.FilmDto;
+import ru.yandex.practicum.filmorate.dto.film.FilmImportResultDto;
 import ru.yandex.practicum.filmorate.dto.film.NewFilmRequest;
 import ru.yandex.practicum.filmorate.dto.film.UpdateFilmRequest;
 import ru.yandex.practicum.filmorate.service.FilmService;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.util.List;
 
 @RestController
 @RequestMapping("/films")
 public class FilmController {
+    private static final String NDJSON_MEDIA_TYPE = "application/x-ndjson";
     private final FilmService filmService;
+    private final ObjectMapper objectMapper;
 
     @Autowired
-    public FilmController(FilmService filmService) {
+    public FilmController(FilmService filmService, ObjectProvider<ObjectMapper> objectMapper) {
         this.filmService = filmService;
+        this.objectMapper = objectMapper.getIfAvailable(() -> Jackson2ObjectMapperBuilder.json().build());
     }
 
     /**
@@ -30,11 +43,48 @@ public class FilmController {
     }
 
     /**
-     * Возвращает все фильмы в виде списка
+     * Возвращает страницу фильмов в виде списка.
+     * Если есть следующая страница, то её курсор передаётся в заголовке X-Next-Cursor.
+     *
+     * @param limit максимальное количество фильмов на странице
+     * @param after id фильма, после которого начинается страница
+     * @return список фильмов страницы
      */
     @GetMapping
-    public ResponseEntity<List<FilmDto>> getFilms() {
-        return ResponseEntity.ok(filmService.getFilms());
+    public ResponseEntity<List<FilmDto>> getFilms(
+            @RequestParam(required = false, defaultValue = "100") int limit,
+            @RequestParam(required = false, defaultValue = "0") int after) {
+        PageDto<FilmDto> page = filmService.getFilms(after, limit);
+        ResponseEntity.BodyBuilder response = ResponseEntity.ok();
+        if (page.getNextCursor() != null) {
+            response.header(PageDto.NEXT_CURSOR_HEADER, String.valueOf(page.getNextCursor()));
+        }
+        return response.body(page.getItems());
+    }
+
+    /**
+     * Выгружает все фильмы в формате NDJSON: по одному фильму в строке.
+     * Фильмы пишутся в ответ по мере чтения из хранилища, поэтому весь список не хранится в памяти.
+     *
+     * @return поток фильмов
+     */
+    @GetMapping(value = "/stream", produces = NDJSON_MEDIA_TYPE)
+    public ResponseEntity<StreamingResponseBody> streamFilms() {
+        StreamingResponseBody body = outputStream -> {
+            try {
+                filmService.streamFilms(film -> {
+                    try {
+                        outputStream.write(objectMapper.writeValueAsBytes(film));
+                        outputStream.write('\n');
+                    } catch (IOException exception) {
+                        throw new UncheckedIOException(exception);
+                    }
+                });
+            } catch (UncheckedIOException exception) {
+                throw exception.getCause();
+            }
+        };
+        return ResponseEntity.ok().contentType(MediaType.parseMediaType(NDJSON_MEDIA_TYPE)).body(body);
     }
 
     /**
@@ -48,6 +98,18 @@ public class FilmController {
         return ResponseEntity.status(HttpStatus.CREATED).body(filmService.addFilm(newFilmDto));
     }
 
+    /**
+     * Добавляет фильмы пакетом.
+     * Фильмы с ошибками не прерывают импорт остальных, ошибки возвращаются по позиции фильма в массиве.
+     *
+     * @param newFilmDtos массив фильмов, которые нужно добавить
+     * @return ответ, содержащий присвоенные ID и ошибки по недобавленным фильмам
+     */
+    @PostMapping("/batch")
+    public ResponseEntity<FilmImportResultDto> addFilms(@RequestBody List<NewFilmRequest> newFilmDtos) {
+        return ResponseEntity.ok(filmService.addFilms(newFilmDtos));
+    }
+
     /**
      * Обновляет фильм.
      *
@@ -0,0 +1,36 @@
+package ru.yandex.practicum.filmorate.dataset;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.context.annotation.Profile;
+import org.springframework.stereotype.Component;
+
+/**
+ * Заполняет БД синтетическими данными при старте приложения с профилем dataset, например:
+ * --spring.profiles.active=dataset --filmorate.dataset.likes=1000000.
+ * Параметры задаются настройками filmorate.dataset.*
+ */
+@Component
+@Profile("dataset")
+public class DatasetGeneratorRunner implements ApplicationRunner {
+    private final SyntheticDataGenerator generator;
+    private final DatasetSpec spec;
+
+    public DatasetGeneratorRunner(SyntheticDataGenerator generator,
+                                  @Value("${filmorate.dataset.users:10000}") int users,
+                                  @Value("${filmorate.dataset.films:10000}") int films,
+                                  @Value("${filmorate.dataset.genres-per-film:2}") int genresPerFilm,
+                                  @Value("${filmorate.dataset.likes:100000}") int likes,
+                                  @Value("${filmorate.dataset.friends-per-user:10}") int friendsPerUser,
+                                  @Value("${filmorate.dataset.zipf-exponent:1.0}") double zipfExponent,
+                                  @Value("${filmorate.dataset.seed:42}") long seed) {
+        this.generator = generator;
+        this.spec = new DatasetSpec(users, films, genresPerFilm, likes, friendsPerUser, zipfExponent, seed);
+    }
+
+    @Override
+    public void run(ApplicationArguments args) {
+        generator.generate(spec);
+    }
+}
@@ -0,0 +1,29 @@
+package ru.yandex.practicum.filmorate.dataset;
+
+/**
+ * Параметры синтетического набора данных.
+ *
+ * @param users          количество пользователей
+ * @param films          количество фильмов
+ * @param genresPerFilm  сколько разных жанров у каждого фильма
+ * @param likes          общее количество лайков, распределённых между фильмами по закону Ципфа
+ * @param friendsPerUser сколько связей добавляет каждый новый пользователь в графе друзей
+ * @param zipfExponent   показатель закона Ципфа: чем больше, тем сильнее лайки сосредоточены на популярных фильмах
+ * @param seed           зерно генератора случайных чисел, одинаковое зерно даёт одинаковые данные
+ */
+public record DatasetSpec(int users, int films, int genresPerFilm, int likes, int friendsPerUser,
+                          double zipfExponent, long seed) {
+    public DatasetSpec {
+        if (users < 0 || films < 0 || genresPerFilm < 0 || likes < 0 || friendsPerUser < 0) {
+            throw new IllegalArgumentException("Размеры набора данных не могут быть отрицательными");
+        }
+
+        if ((long) users * films < likes) {
+            throw new IllegalArgumentException("Лайков больше, чем возможных пар фильма и пользователя");
+        }
+
+        if (zipfExponent < 0) {
+            throw new IllegalArgumentException("Показатель закона Ципфа не может быть отрицательным");
+        }
+    }
+}
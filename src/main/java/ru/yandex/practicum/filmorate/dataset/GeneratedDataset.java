@@ -0,0 +1,8 @@
+package ru.yandex.practicum.filmorate.dataset;
+
+/**
+ * Id пользователей и фильмов, добавленных генератором синтетических данных.
+ * Фильмы упорядочены по id, а не по популярности.
+ */
+public record GeneratedDataset(int[] userIds, int[] filmIds, int likes, int friendships) {
+}
@@ -0,0 +1,283 @@
+package ru.yandex.practicum.filmorate.dataset;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.jdbc.core.BatchPreparedStatementSetter;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import ru.yandex.practicum.filmorate.model.IntHashSet;
+import ru.yandex.practicum.filmorate.storage.dao.FilmLikesCounterRepairJob;
+
+import java.sql.Date;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.util.Random;
+
+/**
+ * Заполняет БД синтетическими пользователями, фильмами, жанрами фильмов, лайками и дружбой
+ * для нагрузочных тестов и бенчмарков.
+ * Лайки распределяются между фильмами по закону Ципфа, граф друзей строится предпочтительным присоединением
+ * и имеет степенное распределение числа друзей.
+ * Все строки пишутся пакетами JDBC, данные полностью определяются зерном из DatasetSpec.
+ * Добавляет данные к уже существующим, справочники жанров и MPA рейтингов должны быть заполнены.
+ */
+@Component
+public class SyntheticDataGenerator {
+    private static final Logger log = LoggerFactory.getLogger(SyntheticDataGenerator.class);
+
+    private static final int BATCH_SIZE = 10_000;
+    private static final LocalDate FIRST_RELEASE_DATE = LocalDate.of(1950, 1, 1);
+    private static final int RELEASE_DAYS_RANGE = 365 * 70;
+    private static final LocalDate FIRST_BIRTHDAY = LocalDate.of(1950, 1, 1);
+    private static final int BIRTHDAY_DAYS_RANGE = 365 * 55;
+    private static final int MIN_DURATION = 60;
+    private static final int DURATION_RANGE = 120;
+
+    private static final String GET_MAX_USER_ID = "SELECT COALESCE(MAX(id), 0) FROM users;";
+    private static final String GET_MAX_FILM_ID = "SELECT COALESCE(MAX(id), 0) FROM films;";
+    private static final String GET_USER_IDS_AFTER = "SELECT id FROM users WHERE id > ? ORDER BY id;";
+    private static final String GET_FILM_IDS_AFTER = "SELECT id FROM films WHERE id > ? ORDER BY id;";
+    private static final String GET_GENRE_IDS = "SELECT id FROM genres ORDER BY id;";
+    private static final String GET_MPA_IDS = "SELECT id FROM mpa_ratings ORDER BY id;";
+    private static final String ADD_USER = "INSERT INTO users (name, email, login, birthday) VALUES (?, ?, ?, ?);";
+    private static final String ADD_FILM = "INSERT INTO films (name, description, duration, release_date, " +
+            "mpa_rating_id) VALUES (?, ?, ?, ?, ?);";
+    private static final String ADD_FILM_GENRE = "INSERT INTO films_genres (film_id, genre_id) VALUES (?, ?);";
+    private static final String ADD_FILM_LIKE = "INSERT INTO films_likes (film_id, user_id) VALUES (?, ?);";
+    private static final String ADD_USER_FRIEND = "INSERT INTO users_friendship (user_id, friend_id) VALUES (?, ?);";
+
+    private final JdbcTemplate jdbc;
+    private final FilmLikesCounterRepairJob likesCounterRepairJob;
+
+    public SyntheticDataGenerator(JdbcTemplate jdbc, FilmLikesCounterRepairJob likesCounterRepairJob) {
+        this.jdbc = jdbc;
+        this.likesCounterRepairJob = likesCounterRepairJob;
+    }
+
+    /**
+     * Генерирует набор данных по параметрам и пересчитывает счётчики лайков и индекс популярности
+     */
+    public GeneratedDataset generate(DatasetSpec spec) {
+        long startedAt = System.nanoTime();
+        Random random = new Random(spec.seed());
+
+        int[] userIds = addUsers(spec.users(), random);
+        int[] filmIds = addFilms(spec.films(), random);
+        addFilmsGenres(filmIds, spec.genresPerFilm(), random);
+        int likes = addLikes(filmIds, userIds, spec.likes(), spec.zipfExponent(), random);
+        int friendships = addFriendships(userIds, spec.friendsPerUser(), random);
+        likesCounterRepairJob.repair();
+
+        log.info("Сгенерировано {} пользователей, {} фильмов, {} лайков и {} связей дружбы за {} мс",
+                userIds.length, filmIds.length, likes, friendships, (System.nanoTime() - startedAt) / 1_000_000);
+        return new GeneratedDataset(userIds, filmIds, likes, friendships);
+    }
+
+    private int[] addUsers(int count, Random random) {
+        int lastUserId = jdbc.queryForObject(GET_MAX_USER_ID, Integer.class);
+        batchInsert(ADD_USER, count, (ps, i) -> {
+            int number = lastUserId + 1 + i;
+            ps.setString(1, "Пользователь " + number);
+            ps.setString(2, "synthetic" + number + "@filmorate.ru");
+            ps.setString(3, "synthetic_user" + number);
+            ps.setDate(4, Date.valueOf(FIRST_BIRTHDAY.plusDays(random.nextInt(BIRTHDAY_DAYS_RANGE))));
+        });
+        return jdbc.queryForList(GET_USER_IDS_AFTER, Integer.class, lastUserId).stream()
+                .mapToInt(Integer::intValue)
+                .toArray();
+    }
+
+    private int[] addFilms(int count, Random random) {
+        int lastFilmId = jdbc.queryForObject(GET_MAX_FILM_ID, Integer.class);
+        int[] mpaIds = queryIds(GET_MPA_IDS);
+        batchInsert(ADD_FILM, count, (ps, i) -> {
+            int number = lastFilmId + 1 + i;
+            ps.setString(1, "Фильм " + number);
+            ps.setString(2, "Описание фильма " + number);
+            ps.setInt(3, MIN_DURATION + random.nextInt(DURATION_RANGE));
+            ps.setDate(4, Date.valueOf(FIRST_RELEASE_DATE.plusDays(random.nextInt(RELEASE_DAYS_RANGE))));
+            ps.setInt(5, mpaIds[random.nextInt(mpaIds.length)]);
+        });
+        return jdbc.queryForList(GET_FILM_IDS_AFTER, Integer.class, lastFilmId).stream()
+                .mapToInt(Integer::intValue)
+                .toArray();
+    }
+
+    /**
+     * Каждому фильму достаются genresPerFilm жанров подряд, начиная со случайного, поэтому они не повторяются
+     */
+    private void addFilmsGenres(int[] filmIds, int genresPerFilm, Random random) {
+        int[] genreIds = queryIds(GET_GENRE_IDS);
+        int perFilm = Math.min(genresPerFilm, genreIds.length);
+        int[] filmColumn = new int[filmIds.length * perFilm];
+        int[] genreColumn = new int[filmColumn.length];
+        int position = 0;
+        for (int filmId : filmIds) {
+            int firstGenre = random.nextInt(genreIds.length);
+            for (int k = 0; k < perFilm; k++) {
+                filmColumn[position] = filmId;
+                genreColumn[position++] = genreIds[(firstGenre + k) % genreIds.length];
+            }
+        }
+        batchInsertPairs(ADD_FILM_GENRE, filmColumn, genreColumn, position);
+    }
+
+    /**
+     * Делит лайки между фильмами по закону Ципфа: фильм на месте r получает долю 1 / r^s.
+     * Места фильмов перемешиваются, чтобы популярные фильмы не совпадали с первыми id.
+     * Пользователи фильма выбираются шагом, взаимно простым с их числом, от случайного начала,
+     * поэтому у одного фильма они не повторяются.
+     */
+    private int addLikes(int[] filmIds, int[] userIds, int likes, double zipfExponent, Random random) {
+        if (likes == 0) {
+            return 0;
+        }
+        int[] likesByRank = zipfCounts(filmIds.length, userIds.length, likes, zipfExponent);
+        int[] filmsByRank = shuffled(filmIds, random);
+
+        int[] filmColumn = new int[likes];
+        int[] userColumn = new int[likes];
+        int position = 0;
+        for (int rank = 0; rank < filmsByRank.length; rank++) {
+            int start = random.nextInt(userIds.length);
+            int step = coprimeStep(userIds.length, random);
+            for (int k = 0; k < likesByRank[rank]; k++) {
+                filmColumn[position] = filmsByRank[rank];
+                userColumn[position++] = userIds[(int) ((start + (long) k * step) % userIds.length)];
+            }
+        }
+        batchInsertPairs(ADD_FILM_LIKE, filmColumn, userColumn, position);
+        return position;
+    }
+
+    /**
+     * Строит граф друзей предпочтительным присоединением (модель Барабаши-Альберт):
+     * каждый новый пользователь дружит с friendsPerUser прежними, выбранными с вероятностью,
+     * пропорциональной числу их друзей. У каждого прежнего пользователя уже есть друг, поэтому выбор всегда находит
+     * нужное число разных пользователей. Дружба записывается в обе стороны.
+     */
+    private int addFriendships(int[] userIds, int friendsPerUser, Random random) {
+        if (friendsPerUser == 0 || userIds.length < 2) {
+            return 0;
+        }
+        int maxEdges = userIds.length * friendsPerUser;
+        int[] endpoints = new int[maxEdges * 2];
+        int endpointsCount = 0;
+        int[] userColumn = new int[maxEdges * 2];
+        int[] friendColumn = new int[maxEdges * 2];
+        int position = 0;
+
+        for (int user = 1; user < userIds.length; user++) {
+            IntHashSet targets = new IntHashSet(friendsPerUser);
+            int targetsCount = Math.min(friendsPerUser, user);
+            while (targets.size() < targetsCount) {
+                targets.add(endpointsCount == 0 ? random.nextInt(user) : endpoints[random.nextInt(endpointsCount)]);
+            }
+            for (int target : targets.toIntArray()) {
+                endpoints[endpointsCount++] = user;
+                endpoints[endpointsCount++] = target;
+                userColumn[position] = userIds[user];
+                friendColumn[position++] = userIds[target];
+                userColumn[position] = userIds[target];
+                friendColumn[position++] = userIds[user];
+            }
+        }
+        batchInsertPairs(ADD_USER_FRIEND, userColumn, friendColumn, position);
+        return position;
+    }
+
+    /**
+     * Считает число лайков для каждого места по закону Ципфа.
+     * У фильма не может быть лайков больше, чем пользователей, излишек переходит следующим по популярности
+     */
+    private static int[] zipfCounts(int films, int maxPerFilm, int likes, double exponent) {
+        double[] weights = new double[films];
+        double weightsSum = 0;
+        for (int rank = 0; rank < films; rank++) {
+            weights[rank] = 1 / Math.pow(rank + 1, exponent);
+            weightsSum += weights[rank];
+        }
+
+        int[] counts = new int[films];
+        int assigned = 0;
+        for (int rank = 0; rank < films; rank++) {
+            counts[rank] = (int) Math.min(maxPerFilm, Math.floor(likes * weights[rank] / weightsSum));
+            assigned += counts[rank];
+        }
+        for (int rank = 0; assigned < likes; rank = (rank + 1) % films) {
+            if (counts[rank] < maxPerFilm) {
+                counts[rank]++;
+                assigned++;
+            }
+        }
+        return counts;
+    }
+
+    private static int[] shuffled(int[] values, Random random) {
+        int[] result = values.clone();
+        for (int i = result.length - 1; i > 0; i--) {
+            int j = random.nextInt(i + 1);
+            int value = result[i];
+            result[i] = result[j];
+            result[j] = value;
+        }
+        return result;
+    }
+
+    private static int coprimeStep(int modulus, Random random) {
+        if (modulus == 1) {
+            return 1;
+        }
+        int step = 1 + random.nextInt(modulus - 1);
+        while (gcd(step, modulus) != 1) {
+            step = step % (modulus - 1) + 1;
+        }
+        return step;
+    }
+
+    private static int gcd(int a, int b) {
+        return b == 0 ? a : gcd(b, a % b);
+    }
+
+    private int[] queryIds(String query) {
+        int[] ids = jdbc.queryForList(query, Integer.class).stream().mapToInt(Integer::intValue).toArray();
+        if (ids.length == 0) {
+            throw new IllegalStateException("Справочник для генерации данных пуст: " + query);
+        }
+        return ids;
+    }
+
+    private void batchInsertPairs(String query, int[] left, int[] right, int count) {
+        batchInsert(query, count, (ps, i) -> {
+            ps.setInt(1, left[i]);
+            ps.setInt(2, right[i]);
+        });
+    }
+
+    /**
+     * Записывает count строк пакетами по BATCH_SIZE, значения строки с номером i задаёт rowSetter
+     */
+    private void batchInsert(String query, int count, RowSetter rowSetter) {
+        for (int from = 0; from < count; from += BATCH_SIZE) {
+            int batchFrom = from;
+            int batchSize = Math.min(BATCH_SIZE, count - from);
+            jdbc.batchUpdate(query, new BatchPreparedStatementSetter() {
+                @Override
+                public void setValues(PreparedStatement ps, int i) throws SQLException {
+                    rowSetter.setValues(ps, batchFrom + i);
+                }
+
+                @Override
+                public int getBatchSize() {
+                    return batchSize;
+                }
+            });
+        }
+    }
+
+    @FunctionalInterface
+    private interface RowSetter {
+        void setValues(PreparedStatement ps, int row) throws SQLException;
+    }
+}
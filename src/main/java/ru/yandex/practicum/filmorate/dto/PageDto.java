@@ -0,0 +1,19 @@
+package ru.yandex.practicum.filmorate.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+import java.util.List;
+
+/**
+ * Страница списка при постраничной выдаче по ключу.
+ * nextCursor - id, с которого нужно запросить следующую страницу, или null, если страница последняя.
+ */
+@Data
+@AllArgsConstructor
+public class PageDto<T> {
+    public static final String NEXT_CURSOR_HEADER = "X-Next-Cursor";
+
+    private List<T> items;
+    private Integer nextCursor;
+}
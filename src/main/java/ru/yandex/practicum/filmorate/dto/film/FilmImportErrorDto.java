@@ -0,0 +1,17 @@
+package ru.yandex.practicum.filmorate.dto.film;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Ошибка импорта одного фильма.
+ * index - позиция фильма в переданном массиве.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class FilmImportErrorDto {
+    private int index;
+    private String message;
+}
@@ -0,0 +1,20 @@
+package ru.yandex.practicum.filmorate.dto.film;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+/**
+ * Результат пакетного импорта фильмов.
+ * ids - присвоенные id в порядке переданных фильмов, null для фильмов, которые не удалось добавить.
+ * errors - ошибки по каждому недобавленному фильму.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class FilmImportResultDto {
+    private List<Integer> ids;
+    private List<FilmImportErrorDto> errors;
+}
@@ -26,7 +26,7 @@ public class Film {
     @NotNull
     private Integer duration;
 
-    private Set<Integer> likes;
+    private IntHashSet likes;
     private Set<Genre> genres;
     private Mpa mpa;
 }
\ No newline at end of file
@@ -0,0 +1,332 @@
+package ru.yandex.practicum.filmorate.model;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.databind.DeserializationContext;
+import com.fasterxml.jackson.databind.SerializerProvider;
+import com.fasterxml.jackson.databind.annotation.JsonDeserialize;
+import com.fasterxml.jackson.databind.annotation.JsonSerialize;
+import com.fasterxml.jackson.databind.deser.std.StdDeserializer;
+import com.fasterxml.jackson.databind.ser.std.StdSerializer;
+
+import java.io.IOException;
+import java.util.AbstractSet;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.function.IntConsumer;
+import java.util.function.Predicate;
+
+/**
+ * Компактный набор целых чисел для id друзей и лайков.
+ * Значения хранятся в массиве int с открытой адресацией и линейным пробированием, без упаковки в Integer,
+ * поэтому на элемент уходит около 8 байт вместо 40+ у HashSet.
+ * Ноль хранится отдельным флагом, потому что в массиве он означает свободную ячейку.
+ * Итератор только читает набор, удаление идёт через remove и removeIf.
+ * В JSON набор записывается и читается как обычный массив чисел.
+ */
+@JsonSerialize(using = IntHashSet.Serializer.class)
+@JsonDeserialize(using = IntHashSet.Deserializer.class)
+public class IntHashSet extends AbstractSet<Integer> {
+    private static final int MIN_CAPACITY = 4;
+    private static final float LOAD_FACTOR = 0.75f;
+
+    private int[] keys;
+    private int mask;
+    private int resizeThreshold;
+    private boolean hasZero;
+    private int size;
+
+    public IntHashSet() {
+        this(0);
+    }
+
+    public IntHashSet(int expectedSize) {
+        allocate(capacityFor(expectedSize));
+    }
+
+    public IntHashSet(Collection<Integer> values) {
+        this(values.size());
+        values.forEach(this::add);
+    }
+
+    /**
+     * Создаёт набор из массива значений
+     */
+    public static IntHashSet of(int... values) {
+        IntHashSet set = new IntHashSet(values.length);
+        for (int value : values) {
+            set.add(value);
+        }
+        return set;
+    }
+
+    /**
+     * Добавляет значение, возвращает false, если оно уже было в наборе
+     */
+    public boolean add(int value) {
+        if (value == 0) {
+            if (hasZero) {
+                return false;
+            }
+            hasZero = true;
+            size++;
+            return true;
+        }
+
+        int index = indexOf(value);
+        while (keys[index] != 0) {
+            if (keys[index] == value) {
+                return false;
+            }
+            index = (index + 1) & mask;
+        }
+        keys[index] = value;
+        size++;
+        if (size > resizeThreshold) {
+            rehash(keys.length << 1);
+        }
+        return true;
+    }
+
+    /**
+     * Проверяет, есть ли значение в наборе
+     */
+    public boolean contains(int value) {
+        if (value == 0) {
+            return hasZero;
+        }
+
+        int index = indexOf(value);
+        while (keys[index] != 0) {
+            if (keys[index] == value) {
+                return true;
+            }
+            index = (index + 1) & mask;
+        }
+        return false;
+    }
+
+    /**
+     * Удаляет значение, возвращает false, если его не было в наборе.
+     * Следующие за удалённым значения сдвигаются назад, чтобы цепочки пробирования не рвались
+     */
+    public boolean remove(int value) {
+        if (value == 0) {
+            if (!hasZero) {
+                return false;
+            }
+            hasZero = false;
+            size--;
+            return true;
+        }
+
+        int gap = indexOf(value);
+        while (keys[gap] != value) {
+            if (keys[gap] == 0) {
+                return false;
+            }
+            gap = (gap + 1) & mask;
+        }
+
+        int next = (gap + 1) & mask;
+        while (keys[next] != 0) {
+            int home = indexOf(keys[next]);
+            if (((next - home) & mask) >= ((next - gap) & mask)) {
+                keys[gap] = keys[next];
+                gap = next;
+            }
+            next = (next + 1) & mask;
+        }
+        keys[gap] = 0;
+        size--;
+        return true;
+    }
+
+    /**
+     * Передаёт каждое значение набора без упаковки в Integer
+     */
+    public void forEachInt(IntConsumer action) {
+        if (hasZero) {
+            action.accept(0);
+        }
+        for (int key : keys) {
+            if (key != 0) {
+                action.accept(key);
+            }
+        }
+    }
+
+    /**
+     * Возвращает значения набора в виде массива int
+     */
+    public int[] toIntArray() {
+        int[] values = new int[size];
+        int position = 0;
+        if (hasZero) {
+            values[position++] = 0;
+        }
+        for (int key : keys) {
+            if (key != 0) {
+                values[position++] = key;
+            }
+        }
+        return values;
+    }
+
+    @Override
+    public boolean add(Integer value) {
+        return add(value.intValue());
+    }
+
+    @Override
+    public boolean contains(Object value) {
+        return value instanceof Integer intValue && contains(intValue.intValue());
+    }
+
+    @Override
+    public boolean remove(Object value) {
+        return value instanceof Integer intValue && remove(intValue.intValue());
+    }
+
+    @Override
+    public boolean removeIf(Predicate<? super Integer> filter) {
+        boolean removed = false;
+        for (int value : toIntArray()) {
+            if (filter.test(value)) {
+                remove(value);
+                removed = true;
+            }
+        }
+        return removed;
+    }
+
+    @Override
+    public boolean removeAll(Collection<?> values) {
+        return removeIf(values::contains);
+    }
+
+    @Override
+    public boolean retainAll(Collection<?> values) {
+        return removeIf(value -> !values.contains(value));
+    }
+
+    @Override
+    public void clear() {
+        allocate(MIN_CAPACITY);
+        hasZero = false;
+        size = 0;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public int hashCode() {
+        int hash = 0;
+        for (int key : keys) {
+            hash += key;
+        }
+        return hash;
+    }
+
+    @Override
+    public Iterator<Integer> iterator() {
+        return new Iterator<>() {
+            private boolean zeroReturned = !hasZero;
+            private int index = nextIndex(0);
+
+            @Override
+            public boolean hasNext() {
+                return !zeroReturned || index < keys.length;
+            }
+
+            @Override
+            public Integer next() {
+                if (!zeroReturned) {
+                    zeroReturned = true;
+                    return 0;
+                }
+                if (index >= keys.length) {
+                    throw new NoSuchElementException();
+                }
+                int value = keys[index];
+                index = nextIndex(index + 1);
+                return value;
+            }
+
+            private int nextIndex(int from) {
+                int current = from;
+                while (current < keys.length && keys[current] == 0) {
+                    current++;
+                }
+                return current;
+            }
+        };
+    }
+
+    private int indexOf(int value) {
+        int hash = value * 0x9E3779B9;
+        return (hash ^ (hash >>> 16)) & mask;
+    }
+
+    private void rehash(int capacity) {
+        int[] oldKeys = keys;
+        allocate(capacity);
+        for (int key : oldKeys) {
+            if (key != 0) {
+                int index = indexOf(key);
+                while (keys[index] != 0) {
+                    index = (index + 1) & mask;
+                }
+                keys[index] = key;
+            }
+        }
+    }
+
+    private void allocate(int capacity) {
+        keys = new int[capacity];
+        mask = capacity - 1;
+        resizeThreshold = (int) (capacity * LOAD_FACTOR);
+    }
+
+    private static int capacityFor(int expectedSize) {
+        int capacity = MIN_CAPACITY;
+        while (capacity * LOAD_FACTOR < expectedSize) {
+            capacity <<= 1;
+        }
+        return capacity;
+    }
+
+    /**
+     * Записывает набор в JSON массивом чисел без упаковки в Integer
+     */
+    public static class Serializer extends StdSerializer<IntHashSet> {
+        public Serializer() {
+            super(IntHashSet.class);
+        }
+
+        @Override
+        public void serialize(IntHashSet value, JsonGenerator generator, SerializerProvider provider)
+                throws IOException {
+            int[] values = value.toIntArray();
+            generator.writeArray(values, 0, values.length);
+        }
+    }
+
+    /**
+     * Читает набор из JSON массива чисел
+     */
+    public static class Deserializer extends StdDeserializer<IntHashSet> {
+        public Deserializer() {
+            super(IntHashSet.class);
+        }
+
+        @Override
+        public IntHashSet deserialize(JsonParser parser, DeserializationContext context) throws IOException {
+            return IntHashSet.of(parser.readValueAs(int[].class));
+        }
+    }
+}
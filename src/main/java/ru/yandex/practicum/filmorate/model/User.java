@@ -5,7 +5,6 @@ import jakarta.validation.constraints.NotBlank;
 import lombok.*;
 
 import java.time.LocalDate;
-import java.util.Set;
 
 @Data
 @Builder(toBuilder = true)
@@ -24,5 +23,5 @@ public class User {
 
     private LocalDate birthday;
 
-    Set<Integer> friends;
+    IntHashSet friends;
 }
\ No newline at end of file
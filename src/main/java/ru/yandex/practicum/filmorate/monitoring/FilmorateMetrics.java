@@ -0,0 +1,109 @@
+package ru.yandex.practicum.filmorate.monitoring;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.FunctionTimer;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.springframework.stereotype.Component;
+import ru.yandex.practicum.filmorate.service.FilmService;
+import ru.yandex.practicum.filmorate.service.SingleFlight;
+import ru.yandex.practicum.filmorate.service.UserService;
+import ru.yandex.practicum.filmorate.storage.cache.CachedFilmStorage;
+import ru.yandex.practicum.filmorate.storage.dao.FilmLikesWriteBuffer;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.function.ToDoubleFunction;
+
+/**
+ * Публикует в реестр метрик счётчики, которые приложение уже ведёт само:
+ * кэш фильмов (cache.gets, cache.evictions), объединение одинаковых запросов (filmorate.single.flight.*),
+ * буфер отложенной записи лайков (filmorate.likes.write.behind.pending) и запросы к БД из HTTP запросов
+ * (filmorate.db.queries, filmorate.db.rows, filmorate.db.requests.over.threshold).
+ * Значения читаются только при сборе метрик, поэтому на обработку запросов публикация не влияет.
+ */
+@Component
+public class FilmorateMetrics implements MeterBinder {
+    private static final String FILMS_CACHE = "films";
+
+    private final CachedFilmStorage filmStorage;
+    private final FilmService filmService;
+    private final UserService userService;
+    private final FilmLikesWriteBuffer likesWriteBuffer;
+    private final QueryStatsFilter queryStatsFilter;
+
+    public FilmorateMetrics(CachedFilmStorage filmStorage, FilmService filmService, UserService userService,
+                            FilmLikesWriteBuffer likesWriteBuffer, QueryStatsFilter queryStatsFilter) {
+        this.filmStorage = filmStorage;
+        this.filmService = filmService;
+        this.userService = userService;
+        this.likesWriteBuffer = likesWriteBuffer;
+        this.queryStatsFilter = queryStatsFilter;
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        bindFilmsCache(registry);
+        bindSingleFlights(registry, filmService, FilmService::getSingleFlightStats);
+        bindSingleFlights(registry, userService, UserService::getSingleFlightStats);
+        Gauge.builder("filmorate.likes.write.behind.pending", likesWriteBuffer, FilmLikesWriteBuffer::getPendingCount)
+                .description("Лайки, ещё не записанные в БД")
+                .register(registry);
+        bindQueryStats(registry);
+    }
+
+    private void bindFilmsCache(MeterRegistry registry) {
+        FunctionCounter.builder("cache.gets", filmStorage, storage -> storage.getCacheStats().hits())
+                .description("Чтения фильма по id, попавшие в кэш")
+                .tags("cache", FILMS_CACHE, "result", "hit")
+                .register(registry);
+        FunctionCounter.builder("cache.gets", filmStorage, storage -> storage.getCacheStats().misses())
+                .description("Чтения фильма по id, загрузившие фильм из БД")
+                .tags("cache", FILMS_CACHE, "result", "miss")
+                .register(registry);
+        FunctionCounter.builder("cache.evictions", filmStorage, storage -> storage.getCacheStats().evictions())
+                .description("Фильмы, вытесненные из кэша или устаревшие")
+                .tag("cache", FILMS_CACHE)
+                .register(registry);
+    }
+
+    /**
+     * Регистрирует счётчики каждого объединения вызовов сервиса с тегом flight.
+     * Метрика держит сервис по слабой ссылке, поэтому счётчики читаются через сам бин сервиса
+     */
+    private static <S> void bindSingleFlights(MeterRegistry registry, S service,
+                                              Function<S, Map<String, SingleFlight.Stats>> stats) {
+        for (String flight : stats.apply(service).keySet()) {
+            singleFlightCounter(registry, "filmorate.single.flight.calls", service, flight, stats,
+                    SingleFlight.Stats::calls);
+            singleFlightCounter(registry, "filmorate.single.flight.deduplicated", service, flight, stats,
+                    SingleFlight.Stats::deduplicated);
+            singleFlightCounter(registry, "filmorate.single.flight.timeouts", service, flight, stats,
+                    SingleFlight.Stats::timeouts);
+        }
+    }
+
+    private static <S> void singleFlightCounter(MeterRegistry registry, String name, S service, String flight,
+                                                Function<S, Map<String, SingleFlight.Stats>> stats,
+                                                ToDoubleFunction<SingleFlight.Stats> counter) {
+        FunctionCounter.builder(name, service, owner -> counter.applyAsDouble(stats.apply(owner).get(flight)))
+                .tag("flight", flight)
+                .register(registry);
+    }
+
+    private void bindQueryStats(MeterRegistry registry) {
+        FunctionTimer.builder("filmorate.db.queries", queryStatsFilter, filter -> filter.getStats().queries(),
+                        filter -> filter.getStats().dbNanos(), TimeUnit.NANOSECONDS)
+                .description("Запросы к БД из HTTP запросов и время их выполнения")
+                .register(registry);
+        FunctionCounter.builder("filmorate.db.rows", queryStatsFilter, filter -> filter.getStats().rows())
+                .description("Строки, прочитанные и изменённые запросами к БД из HTTP запросов")
+                .register(registry);
+        FunctionCounter.builder("filmorate.db.requests.over.threshold", queryStatsFilter,
+                        filter -> filter.getStats().overThreshold())
+                .description("HTTP запросы, выполнившие больше запросов к БД, чем разрешает порог")
+                .register(registry);
+    }
+}
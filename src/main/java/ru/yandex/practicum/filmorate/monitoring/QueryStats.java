@@ -0,0 +1,80 @@
+package ru.yandex.practicum.filmorate.monitoring;
+
+/**
+ * Счётчики запросов к БД, выполненных в текущем потоке между begin и end: обычно за один HTTP запрос.
+ * Запросы считает QueryStatsDataSource. Запросы из других потоков, например, из потока записи лайков
+ * или из потока выгрузки фильмов, в счётчики текущего потока не попадают.
+ * Счётчики меняет только поток, которому они принадлежат, поэтому они не синхронизированы.
+ */
+public final class QueryStats {
+    private static final ThreadLocal<QueryStats> CURRENT = new ThreadLocal<>();
+
+    private int queries;
+    private long rows;
+    private long dbNanos;
+
+    private QueryStats() {
+    }
+
+    /**
+     * Начинает подсчёт запросов в текущем потоке и возвращает его счётчики
+     */
+    public static QueryStats begin() {
+        QueryStats stats = new QueryStats();
+        CURRENT.set(stats);
+        return stats;
+    }
+
+    /**
+     * Заканчивает подсчёт запросов в текущем потоке
+     */
+    public static void end() {
+        CURRENT.remove();
+    }
+
+    /**
+     * Возвращает счётчики текущего потока или null, если подсчёт не начат
+     */
+    static QueryStats current() {
+        return CURRENT.get();
+    }
+
+    void recordQuery(long nanos) {
+        queries++;
+        dbNanos += nanos;
+    }
+
+    void recordRows(long count) {
+        rows += count;
+    }
+
+    /**
+     * Обнуляет счётчики, например, чтобы не считать подготовку данных в тесте
+     */
+    public void reset() {
+        queries = 0;
+        rows = 0;
+        dbNanos = 0;
+    }
+
+    /**
+     * Возвращает число выполненных запросов, пакет запросов считается одним запросом
+     */
+    public int getQueries() {
+        return queries;
+    }
+
+    /**
+     * Возвращает число прочитанных и изменённых строк
+     */
+    public long getRows() {
+        return rows;
+    }
+
+    /**
+     * Возвращает время выполнения запросов в БД без времени чтения результата
+     */
+    public long getDbNanos() {
+        return dbNanos;
+    }
+}
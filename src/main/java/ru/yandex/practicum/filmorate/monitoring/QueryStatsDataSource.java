@@ -0,0 +1,123 @@
+package ru.yandex.practicum.filmorate.monitoring;
+
+import org.springframework.jdbc.datasource.DelegatingDataSource;
+
+import javax.sql.DataSource;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Set;
+
+/**
+ * Источник данных, который считает запросы, строки и время в БД в QueryStats текущего потока.
+ * Запросы считаются только у запросов, подготовленных после QueryStats.begin: без подсчёта соединение отдаёт
+ * запросы и результаты без обёрток, поэтому фоновые задачи не тратят время на подсчёт.
+ */
+public class QueryStatsDataSource extends DelegatingDataSource implements AutoCloseable {
+    private static final Set<String> STATEMENT_METHODS = Set.of("prepareStatement", "createStatement",
+            "prepareCall");
+    private static final ClassLoader CLASS_LOADER = QueryStatsDataSource.class.getClassLoader();
+
+    public QueryStatsDataSource(DataSource dataSource) {
+        super(dataSource);
+    }
+
+    @Override
+    public Connection getConnection() throws SQLException {
+        return countingConnection(super.getConnection());
+    }
+
+    @Override
+    public Connection getConnection(String username, String password) throws SQLException {
+        return countingConnection(super.getConnection(username, password));
+    }
+
+    /**
+     * Закрывает исходный источник данных, например, пул соединений, при остановке приложения
+     */
+    @Override
+    public void close() throws Exception {
+        if (getTargetDataSource() instanceof AutoCloseable closeable) {
+            closeable.close();
+        }
+    }
+
+    private static Connection countingConnection(Connection connection) {
+        return (Connection) Proxy.newProxyInstance(CLASS_LOADER, new Class<?>[]{Connection.class},
+                (proxy, method, args) -> {
+                    Object result = invoke(connection, method, args);
+                    QueryStats stats = QueryStats.current();
+                    if (stats != null && STATEMENT_METHODS.contains(method.getName())) {
+                        return countingStatement((Statement) result, method.getReturnType(), stats);
+                    }
+                    return result;
+                });
+    }
+
+    private static Object countingStatement(Statement statement, Class<?> statementType, QueryStats stats) {
+        return Proxy.newProxyInstance(CLASS_LOADER, new Class<?>[]{statementType}, (proxy, method, args) -> {
+            String name = method.getName();
+            if (!name.startsWith("execute")) {
+                Object result = invoke(statement, method, args);
+                return name.equals("getResultSet") && result != null
+                        ? countingResultSet((ResultSet) result, stats) : result;
+            }
+
+            long start = System.nanoTime();
+            Object result;
+            try {
+                result = invoke(statement, method, args);
+            } finally {
+                stats.recordQuery(System.nanoTime() - start);
+            }
+            if (result instanceof ResultSet resultSet) {
+                return countingResultSet(resultSet, stats);
+            }
+            stats.recordRows(updatedRows(result));
+            return result;
+        });
+    }
+
+    private static ResultSet countingResultSet(ResultSet resultSet, QueryStats stats) {
+        return (ResultSet) Proxy.newProxyInstance(CLASS_LOADER, new Class<?>[]{ResultSet.class},
+                (proxy, method, args) -> {
+                    Object result = invoke(resultSet, method, args);
+                    if (Boolean.TRUE.equals(result) && method.getName().equals("next")) {
+                        stats.recordRows(1);
+                    }
+                    return result;
+                });
+    }
+
+    /**
+     * Считает изменённые строки по результату executeUpdate или executeBatch.
+     * Отрицательные значения означают, что драйвер не знает число строк, и не учитываются
+     */
+    private static long updatedRows(Object result) {
+        long rows = 0;
+        if (result instanceof Number count) {
+            rows = Math.max(0, count.longValue());
+        } else if (result instanceof int[] counts) {
+            for (int count : counts) {
+                rows += Math.max(0, count);
+            }
+        } else if (result instanceof long[] counts) {
+            for (long count : counts) {
+                rows += Math.max(0, count);
+            }
+        }
+        return rows;
+    }
+
+    private static Object invoke(Object target, Method method, Object[] args) throws Throwable {
+        try {
+            return method.invoke(target, args);
+        } catch (InvocationTargetException exception) {
+            throw exception.getTargetException();
+        }
+    }
+}
@@ -0,0 +1,22 @@
+package ru.yandex.practicum.filmorate.monitoring;
+
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.stereotype.Component;
+
+import javax.sql.DataSource;
+
+/**
+ * Оборачивает источник данных приложения в QueryStatsDataSource.
+ * Обёртка становится самим бином, поэтому через неё идут и JdbcTemplate хранилищ, и менеджер транзакций:
+ * соединение транзакции у них общее.
+ */
+@Component
+public class QueryStatsDataSourcePostProcessor implements BeanPostProcessor {
+    @Override
+    public Object postProcessAfterInitialization(Object bean, String beanName) {
+        if (bean instanceof DataSource dataSource && !(bean instanceof QueryStatsDataSource)) {
+            return new QueryStatsDataSource(dataSource);
+        }
+        return bean;
+    }
+}
@@ -0,0 +1,170 @@
+package ru.yandex.practicum.filmorate.monitoring;
+
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.ServletOutputStream;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import jakarta.servlet.http.HttpServletResponseWrapper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+import org.springframework.web.servlet.HandlerMapping;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Считает запросы к БД за каждый HTTP запрос.
+ * Если HTTP запрос выполнил больше warn-threshold запросов к БД, то пишется предупреждение с шаблоном пути:
+ * так видны обработчики, которые ходят в БД в цикле (N+1). Порог 0 выключает предупреждения.
+ * Для разработки счётчики можно отдавать в заголовках ответа X-Query-Count, X-Query-Rows и X-Query-Time-Micros.
+ * Заголовки пишутся перед телом ответа, поэтому запросы, выполненные во время записи тела, в них не попадают.
+ * Общие счётчики за всё время работы приложения возвращает getStats.
+ */
+@Component
+public class QueryStatsFilter extends OncePerRequestFilter {
+    public static final String QUERY_COUNT_HEADER = "X-Query-Count";
+    public static final String QUERY_ROWS_HEADER = "X-Query-Rows";
+    public static final String QUERY_TIME_HEADER = "X-Query-Time-Micros";
+
+    private static final Logger log = LoggerFactory.getLogger(QueryStatsFilter.class);
+
+    private final boolean headersEnabled;
+    private final int warnThreshold;
+    private final LongAdder requests = new LongAdder();
+    private final LongAdder queries = new LongAdder();
+    private final LongAdder rows = new LongAdder();
+    private final LongAdder dbNanos = new LongAdder();
+    private final LongAdder overThreshold = new LongAdder();
+
+    public QueryStatsFilter(@Value("${filmorate.query-stats.headers.enabled:false}") boolean headersEnabled,
+                            @Value("${filmorate.query-stats.warn-threshold:20}") int warnThreshold) {
+        if (warnThreshold < 0) {
+            throw new IllegalArgumentException("Порог числа запросов к БД не может быть отрицательным");
+        }
+        this.headersEnabled = headersEnabled;
+        this.warnThreshold = warnThreshold;
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain chain)
+            throws ServletException, IOException {
+        QueryStats stats = QueryStats.begin();
+        try {
+            if (headersEnabled) {
+                QueryStatsHeadersResponse statsResponse = new QueryStatsHeadersResponse(response, stats);
+                chain.doFilter(request, statsResponse);
+                statsResponse.writeHeaders();
+            } else {
+                chain.doFilter(request, response);
+            }
+        } finally {
+            QueryStats.end();
+            record(request, stats);
+        }
+    }
+
+    /**
+     * Возвращает общие счётчики HTTP запросов и запросов к БД с момента запуска приложения
+     */
+    public Stats getStats() {
+        return new Stats(requests.sum(), queries.sum(), rows.sum(), dbNanos.sum(), overThreshold.sum());
+    }
+
+    private void record(HttpServletRequest request, QueryStats stats) {
+        requests.increment();
+        queries.add(stats.getQueries());
+        rows.add(stats.getRows());
+        dbNanos.add(stats.getDbNanos());
+        if (warnThreshold > 0 && stats.getQueries() > warnThreshold) {
+            overThreshold.increment();
+            log.warn("{} {} выполнил {} запросов к БД при пороге {}: строк {}, время в БД {} мкс",
+                    request.getMethod(), endpoint(request), stats.getQueries(), warnThreshold, stats.getRows(),
+                    TimeUnit.NANOSECONDS.toMicros(stats.getDbNanos()));
+        }
+    }
+
+    /**
+     * Возвращает шаблон пути обработчика, например, /films/{id}, чтобы предупреждения группировались по обработчику
+     */
+    private static String endpoint(HttpServletRequest request) {
+        Object pattern = request.getAttribute(HandlerMapping.BEST_MATCHING_PATTERN_ATTRIBUTE);
+        return pattern != null ? pattern.toString() : request.getRequestURI();
+    }
+
+    /**
+     * Общие счётчики запросов к БД.
+     *
+     * @param requests      HTTP запросы
+     * @param queries       запросы к БД
+     * @param rows          прочитанные и изменённые строки
+     * @param dbNanos       время выполнения запросов в БД
+     * @param overThreshold HTTP запросы, превысившие порог числа запросов к БД
+     */
+    public record Stats(long requests, long queries, long rows, long dbNanos, long overThreshold) {
+    }
+
+    /**
+     * Ответ, который пишет заголовки со счётчиками перед тем, как ответ будет отправлен
+     */
+    private static final class QueryStatsHeadersResponse extends HttpServletResponseWrapper {
+        private final QueryStats stats;
+        private boolean headersWritten;
+
+        private QueryStatsHeadersResponse(HttpServletResponse response, QueryStats stats) {
+            super(response);
+            this.stats = stats;
+        }
+
+        @Override
+        public ServletOutputStream getOutputStream() throws IOException {
+            writeHeaders();
+            return super.getOutputStream();
+        }
+
+        @Override
+        public PrintWriter getWriter() throws IOException {
+            writeHeaders();
+            return super.getWriter();
+        }
+
+        @Override
+        public void flushBuffer() throws IOException {
+            writeHeaders();
+            super.flushBuffer();
+        }
+
+        @Override
+        public void sendError(int status) throws IOException {
+            writeHeaders();
+            super.sendError(status);
+        }
+
+        @Override
+        public void sendError(int status, String message) throws IOException {
+            writeHeaders();
+            super.sendError(status, message);
+        }
+
+        @Override
+        public void sendRedirect(String location) throws IOException {
+            writeHeaders();
+            super.sendRedirect(location);
+        }
+
+        private void writeHeaders() {
+            if (headersWritten || isCommitted()) {
+                return;
+            }
+            headersWritten = true;
+            setHeader(QUERY_COUNT_HEADER, String.valueOf(stats.getQueries()));
+            setHeader(QUERY_ROWS_HEADER, String.valueOf(stats.getRows()));
+            setHeader(QUERY_TIME_HEADER, String.valueOf(TimeUnit.NANOSECONDS.toMicros(stats.getDbNanos())));
+        }
+    }
+}
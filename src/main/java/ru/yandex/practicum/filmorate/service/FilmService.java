@@ -3,49 +3,89 @@ package ru.yandex.practicum.filmorate.service;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessException;
+import org.springframework.dao.DataIntegrityViolationException;
 import org.springframework.stereotype.Service;
 
+import ru.yandex.practicum.filmorate.dto.PageDto;
 import ru.yandex.practicum.filmorate.dto.film.FilmDto;
+import ru.yandex.practicum.filmorate.dto.film.FilmImportErrorDto;
+import ru.yandex.practicum.filmorate.dto.film.FilmImportResultDto;
 import ru.yandex.practicum.filmorate.dto.film.NewFilmRequest;
 import ru.yandex.practicum.filmorate.dto.film.UpdateFilmRequest;
+import ru.yandex.practicum.filmorate.exception.InternalServerException;
+import ru.yandex.practicum.filmorate.exception.NotFoundException;
 import ru.yandex.practicum.filmorate.exception.ValidationException;
 import ru.yandex.practicum.filmorate.mapper.FilmMapper;
 import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.Genre;
 import ru.yandex.practicum.filmorate.storage.FilmStorage;
+import ru.yandex.practicum.filmorate.storage.GenreStorage;
+import ru.yandex.practicum.filmorate.storage.MpaStorage;
 import ru.yandex.practicum.filmorate.storage.UserStorage;
 
 import java.time.LocalDate;
 import java.time.Month;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
 
 @Service
 public class FilmService {
     private static final int FILM_DESCRIPTION_LENGTH = 200;
+    private static final int MAX_PAGE_SIZE = 1000;
+    private static final int IMPORT_CHUNK_SIZE = 500;
     private static final LocalDate EARLIEST_RELEASE_DATE = LocalDate.of(1895, Month.DECEMBER, 28);
     private static final Logger log = LoggerFactory.getLogger(FilmService.class);
     private final FilmStorage filmStorage;
     private final UserStorage userStorage;
+    private final MpaStorage mpaStorage;
+    private final GenreStorage genreStorage;
+    private final SingleFlight<Integer, FilmDto> filmByIdFlight;
+    private final SingleFlight<Integer, List<FilmDto>> popularFilmsFlight;
 
     @Autowired
-    public FilmService(FilmStorage filmStorage, UserStorage userStorage) {
+    public FilmService(FilmStorage filmStorage, UserStorage userStorage, MpaStorage mpaStorage,
+                       GenreStorage genreStorage,
+                       @Value("${filmorate.single-flight.timeout-ms:1000}") long singleFlightTimeoutMs) {
         this.filmStorage = filmStorage;
         this.userStorage = userStorage;
+        this.mpaStorage = mpaStorage;
+        this.genreStorage = genreStorage;
+        this.filmByIdFlight = new SingleFlight<>("film-by-id", singleFlightTimeoutMs, TimeUnit.MILLISECONDS);
+        this.popularFilmsFlight = new SingleFlight<>("popular-films", singleFlightTimeoutMs, TimeUnit.MILLISECONDS);
     }
 
     /**
      * Возвращает фильм по id.
-     * Вызывает метод хранилища по получению фильма по id.
+     * Вызывает метод хранилища по получению фильма по id, одновременные запросы одного фильма объединяются.
      */
     public FilmDto getFilmById(int id) {
-        return FilmMapper.mapToFilmDto(filmStorage.getFilmById(id));
+        return filmByIdFlight.execute(id, () -> FilmMapper.mapToFilmDto(filmStorage.getFilmById(id)));
     }
 
     /**
-     * Возвращает все фильмы в виде списка.
-     * Вызывает метод хранилища по получению всех фильмов
+     * Возвращает страницу фильмов с id больше afterId.
+     * Вызывает метод хранилища по получению страницы фильмов
      */
-    public List<FilmDto> getFilms() {
-        return filmStorage.getFilms().stream().map(FilmMapper::mapToFilmDto).toList();
+    public PageDto<FilmDto> getFilms(int afterId, int limit) {
+        checkIsValidPage(afterId, limit);
+        List<FilmDto> films = filmStorage.getFilms(afterId, limit).stream().map(FilmMapper::mapToFilmDto).toList();
+        Integer nextCursor = films.size() == limit ? films.get(films.size() - 1).getId() : null;
+        return new PageDto<>(films, nextCursor);
+    }
+
+    /**
+     * Последовательно передаёт все фильмы, не собирая их в один список.
+     * Вызывает метод хранилища по потоковому чтению фильмов
+     */
+    public void streamFilms(Consumer<FilmDto> filmConsumer) {
+        filmStorage.streamFilms(films -> films.stream().map(FilmMapper::mapToFilmDto).forEach(filmConsumer));
     }
 
     /**
@@ -62,7 +102,59 @@ public class FilmService {
             throw exception;
         }
         log.trace("Данные фильма {} прошли валидацию при добавлении", newFilm.getId());
-        return FilmMapper.mapToFilmDto(filmStorage.addFilm(newFilm));
+        FilmDto addedFilm = FilmMapper.mapToFilmDto(filmStorage.addFilm(newFilm));
+        popularFilmsFlight.forgetAll();
+        return addedFilm;
+    }
+
+    /**
+     * Добавляет фильмы пакетом.
+     * Каждый фильм проверяется так же, как при добавлении по одному, ошибки собираются по позиции фильма.
+     * Прошедшие проверку фильмы передаются в хранилище частями по IMPORT_CHUNK_SIZE,
+     * каждая часть добавляется в своей транзакции: если часть не записалась, то ошибка ставится всем её фильмам.
+     *
+     * @param newFilmDtos фильмы, которые нужно добавить
+     * @return присвоенные id и ошибки по недобавленным фильмам
+     */
+    public FilmImportResultDto addFilms(List<NewFilmRequest> newFilmDtos) {
+        List<Integer> ids = new ArrayList<>(Collections.nCopies(newFilmDtos.size(), null));
+        List<FilmImportErrorDto> errors = new ArrayList<>();
+        List<Film> validFilms = new ArrayList<>();
+        List<Integer> validIndexes = new ArrayList<>();
+
+        for (int i = 0; i < newFilmDtos.size(); i++) {
+            NewFilmRequest newFilmDto = newFilmDtos.get(i);
+            try {
+                Film newFilm = newFilmDto == null ? null : FilmMapper.mapToFilm(newFilmDto);
+                checkIsValidFilm(newFilm);
+                checkFilmReferencesExist(newFilm);
+                validFilms.add(newFilm);
+                validIndexes.add(i);
+            } catch (ValidationException | NotFoundException exception) {
+                errors.add(new FilmImportErrorDto(i, exception.getMessage()));
+            }
+        }
+
+        for (int from = 0; from < validFilms.size(); from += IMPORT_CHUNK_SIZE) {
+            int to = Math.min(from + IMPORT_CHUNK_SIZE, validFilms.size());
+            List<Integer> chunkIndexes = validIndexes.subList(from, to);
+            try {
+                List<Film> addedFilms = filmStorage.addFilms(new ArrayList<>(validFilms.subList(from, to)));
+                for (int i = 0; i < addedFilms.size(); i++) {
+                    ids.set(chunkIndexes.get(i), addedFilms.get(i).getId());
+                }
+            } catch (DataAccessException | InternalServerException | NotFoundException exception) {
+                log.error("Не удалось добавить пакет из {} фильмов: {}", chunkIndexes.size(), exception.getMessage());
+                chunkIndexes.forEach(index -> errors.add(new FilmImportErrorDto(index,
+                        "Не удалось сохранить фильм: " + exception.getMessage())));
+            }
+        }
+
+        popularFilmsFlight.forgetAll();
+        errors.sort(Comparator.comparingInt(FilmImportErrorDto::getIndex));
+        log.info("Пакетный импорт фильмов: добавлено {}, с ошибками {}", newFilmDtos.size() - errors.size(),
+                errors.size());
+        return new FilmImportResultDto(ids, errors);
     }
 
     /**
@@ -80,45 +172,74 @@ public class FilmService {
             throw exception;
         }
         log.trace("Фильм {} прошёл валидацию для обновления", updatedFilm.getId());
-        return FilmMapper.mapToFilmDto(filmStorage.updateFilm(updatedFilm));
+        FilmDto savedFilm = FilmMapper.mapToFilmDto(filmStorage.updateFilm(updatedFilm));
+        filmByIdFlight.forget(savedFilm.getId());
+        popularFilmsFlight.forgetAll();
+        return savedFilm;
     }
 
     /**
      * Добавляет лайк к фильму.
-     * Если пользователь и фильм существуют, то добавляет id пользователя в список тех, кто его лайкнул.
-     * Вызывает метод хранилища по обновлению фильма.
+     * Сразу пишет лайк одним запросом: повторный лайк ничего не меняет.
+     * Фильм и пользователь читаются только если внешние ключи отклонили запись, чтобы вернуть понятную ошибку.
      */
     public void addLike(int filmId, int userId) {
-        userStorage.getUserById(userId);
-        log.trace("Пользователь {} найден для добавления лайка", userId);
-        filmStorage.getFilmById(filmId);
-        log.trace("Фильм {} найден для добавления лайка", filmId);
-
-        filmStorage.addLike(filmId, userId);
+        try {
+            if (!filmStorage.addLike(filmId, userId)) {
+                log.info("Лайк от пользователя {} для фильма {} уже был", userId, filmId);
+                return;
+            }
+        } catch (DataIntegrityViolationException exception) {
+            checkLikeParticipantsExist(filmId, userId);
+            throw exception;
+        }
+        popularFilmsFlight.forgetAll();
         log.info("Добавление лайка от пользователя {} для фильма {} выполнено", userId, filmId);
     }
 
     /**
      * Убирает лайк у фильма.
-     * Если фильм существу, то убирает id пользователя из списка тех, кто его лайкнул.
-     * Вызывает метод хранилища по обновлению фильма.
+     * Сразу удаляет лайк одним запросом. Если удалять было нечего, то проверяет, что фильм и пользователь существуют,
+     * иначе повторное удаление ничего не меняет.
      */
     public void removeLike(int filmId, int userId) {
-        userStorage.getUserById(userId);
-        log.trace("Пользователь {} найден для удаления лайка", userId);
-        Film film = filmStorage.getFilmById(filmId);
-        log.trace("Фильм {} найден для удаления лайка", filmId);
-
-        filmStorage.removeLike(filmId, userId);
+        if (!filmStorage.removeLike(filmId, userId)) {
+            checkLikeParticipantsExist(filmId, userId);
+            log.info("Лайка от пользователя {} для фильма {} не было", userId, filmId);
+            return;
+        }
+        popularFilmsFlight.forgetAll();
         log.info("Удаление лайка от пользователя {} для фильма {} выполнено", userId, filmId);
     }
 
     /**
      * Возвращает список самых популярных фильмов в виде списка.
-     * Вызывает метод хранилища по получению всех фильмов, сортирует их и фильтрует по количеству.
+     * Вызывает метод хранилища по получению ТОП фильмов, одновременные запросы одного ТОП объединяются.
      */
     public List<FilmDto> getMostPopularFilms(int count) {
-        return filmStorage.getMostPopularFilms(count).stream().map(FilmMapper::mapToFilmDto).toList();
+        return popularFilmsFlight.execute(count, () -> filmStorage.getMostPopularFilms(count).stream()
+                .map(FilmMapper::mapToFilmDto)
+                .toList());
+    }
+
+    /**
+     * Возвращает счётчики объединения одновременных запросов по названиям вычислений
+     */
+    public Map<String, SingleFlight.Stats> getSingleFlightStats() {
+        return Map.of("film-by-id", filmByIdFlight.getStats(), "popular-films", popularFilmsFlight.getStats());
+    }
+
+    /**
+     * Проверяет параметры страницы фильмов
+     */
+    private void checkIsValidPage(int afterId, int limit) throws ValidationException {
+        if (afterId < 0) {
+            throw new ValidationException("Id, после которого запрашиваются фильмы, не может быть отрицательным");
+        }
+
+        if (limit <= 0 || limit > MAX_PAGE_SIZE) {
+            throw new ValidationException("Размер страницы фильмов должен быть от 1 до " + MAX_PAGE_SIZE);
+        }
     }
 
     /**
@@ -130,20 +251,52 @@ public class FilmService {
             throw new ValidationException("Фильм для валидации входных параметров не найден");
         }
 
-        if (film.getName().isBlank()) {
+        if (film.getName() == null || film.getName().isBlank()) {
             throw new ValidationException("Название фильма не может быть пустым");
         }
 
-        if (film.getDescription().length() > FILM_DESCRIPTION_LENGTH) {
+        if (film.getDescription() != null && film.getDescription().length() > FILM_DESCRIPTION_LENGTH) {
             throw new ValidationException("Описание фильма не может быть больше 200 символов");
         }
 
-        if (film.getReleaseDate().isBefore(EARLIEST_RELEASE_DATE)) {
+        if (film.getReleaseDate() == null || film.getReleaseDate().isBefore(EARLIEST_RELEASE_DATE)) {
             throw new ValidationException("Дата релиза фильма не может быть раньше 28 декабря 1895 года");
         }
 
-        if (film.getDuration() <= 0) {
+        if (film.getDuration() == null || film.getDuration() <= 0) {
             throw new ValidationException("Продолжительность фильма должна быть положительным числом");
         }
     }
+
+    /**
+     * Проверяет, что MPA рейтинг и жанры фильма есть в справочниках.
+     * Если чего-то нет, то выбрасывается ошибка
+     */
+    private void checkFilmReferencesExist(Film film) throws NotFoundException {
+        if (film.getMpa() != null) {
+            mpaStorage.getMpaById(film.getMpa().getId());
+        }
+
+        if (film.getGenres() != null) {
+            film.getGenres().stream().map(Genre::getId).forEach(genreStorage::getGenreById);
+        }
+    }
+
+    /**
+     * Проверяет, что пользователь и фильм из лайка существуют, иначе выбрасывает NotFoundException.
+     * Наличие проверяется запросами по первичному ключу, без загрузки друзей пользователя и жанров фильма
+     */
+    private void checkLikeParticipantsExist(int filmId, int userId) throws NotFoundException {
+        if (!userStorage.existsUser(userId)) {
+            String userNotFound = "Пользователь с id = " + userId + " не найден";
+            log.error(userNotFound);
+            throw new NotFoundException(userNotFound);
+        }
+
+        if (!filmStorage.existsFilm(filmId)) {
+            String filmNotFound = "Фильм с id = " + filmId + " не найден";
+            log.error(filmNotFound);
+            throw new NotFoundException(filmNotFound);
+        }
+    }
 }
@@ -0,0 +1,127 @@
+package ru.yandex.practicum.filmorate.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * Объединяет одинаковые параллельные вызовы (single flight).
+ * Первый вызов по ключу выполняет вычисление, а вызовы с тем же ключом, пришедшие до его окончания,
+ * ждут и получают тот же результат или ту же ошибку. Поэтому, например, после сброса кэша популярного фильма
+ * сотни одновременных запросов делают к БД один запрос, а не сотни.
+ * Вызов ждёт чужое вычисление не дольше timeout, после чего выполняет его сам.
+ * Результат общий для всех объединённых вызовов, поэтому вызывающий код не должен его изменять.
+ * Запись, которая меняет данные ключа, должна вызвать forget: иначе следующий вызов может получить результат
+ * вычисления, начатого до записи.
+ */
+public class SingleFlight<K, V> {
+    private static final Logger log = LoggerFactory.getLogger(SingleFlight.class);
+
+    private final String name;
+    private final long timeoutNanos;
+    private final Map<K, CompletableFuture<V>> inFlight = new ConcurrentHashMap<>();
+    private final LongAdder calls = new LongAdder();
+    private final LongAdder deduplicated = new LongAdder();
+    private final LongAdder timeouts = new LongAdder();
+
+    public SingleFlight(String name, long timeout, TimeUnit timeoutUnit) {
+        if (timeout <= 0) {
+            throw new IllegalArgumentException("Время ожидания объединённого вызова должно быть положительным");
+        }
+        this.name = name;
+        this.timeoutNanos = timeoutUnit.toNanos(timeout);
+    }
+
+    /**
+     * Возвращает результат вычисления по ключу: своего или уже выполняемого другим вызовом
+     */
+    public V execute(K key, Supplier<V> computation) {
+        CompletableFuture<V> flight = new CompletableFuture<>();
+        CompletableFuture<V> existing = inFlight.putIfAbsent(key, flight);
+        calls.increment();
+        if (existing == null) {
+            return lead(key, flight, computation);
+        }
+
+        try {
+            V result = existing.get(timeoutNanos, TimeUnit.NANOSECONDS);
+            deduplicated.increment();
+            return result;
+        } catch (ExecutionException exception) {
+            deduplicated.increment();
+            throw unwrap(exception);
+        } catch (TimeoutException exception) {
+            timeouts.increment();
+            log.warn("Вычисление {} по ключу {} не закончилось за отведённое время, выполняем его отдельно", name,
+                    key);
+            return computation.get();
+        } catch (InterruptedException exception) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Ожидание вычисления " + name + " прервано", exception);
+        }
+    }
+
+    /**
+     * Отвязывает выполняемое по ключу вычисление: следующие вызовы начнут новое.
+     * Уже ждущие вызовы получат результат отвязанного вычисления
+     */
+    public void forget(K key) {
+        inFlight.remove(key);
+    }
+
+    /**
+     * Отвязывает все выполняемые вычисления
+     */
+    public void forgetAll() {
+        inFlight.clear();
+    }
+
+    /**
+     * Возвращает счётчики вызовов с момента создания
+     */
+    public Stats getStats() {
+        return new Stats(calls.sum(), deduplicated.sum(), timeouts.sum());
+    }
+
+    private V lead(K key, CompletableFuture<V> flight, Supplier<V> computation) {
+        try {
+            V result = computation.get();
+            flight.complete(result);
+            return result;
+        } catch (RuntimeException | Error exception) {
+            flight.completeExceptionally(exception);
+            throw exception;
+        } finally {
+            inFlight.remove(key, flight);
+        }
+    }
+
+    private static RuntimeException unwrap(ExecutionException exception) {
+        Throwable cause = exception.getCause();
+        if (cause instanceof RuntimeException runtimeException) {
+            return runtimeException;
+        }
+        if (cause instanceof Error error) {
+            throw error;
+        }
+        return new IllegalStateException(cause);
+    }
+
+    /**
+     * Счётчики объединения вызовов.
+     *
+     * @param calls        все вызовы
+     * @param deduplicated вызовы, получившие результат чужого вычисления
+     * @param timeouts     вызовы, не дождавшиеся чужого вычисления и выполнившие его сами
+     */
+    public record Stats(long calls, long deduplicated, long timeouts) {
+    }
+}
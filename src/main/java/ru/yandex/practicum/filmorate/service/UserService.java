@@ -3,27 +3,37 @@ package ru.yandex.practicum.filmorate.service;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataIntegrityViolationException;
 import org.springframework.stereotype.Service;
+import ru.yandex.practicum.filmorate.dto.PageDto;
 import ru.yandex.practicum.filmorate.dto.user.NewUserRequest;
 import ru.yandex.practicum.filmorate.dto.user.UpdateUserRequest;
 import ru.yandex.practicum.filmorate.dto.user.UserDto;
 import ru.yandex.practicum.filmorate.exception.NotFoundException;
 import ru.yandex.practicum.filmorate.exception.ValidationException;
 import ru.yandex.practicum.filmorate.mapper.UserMapper;
+import ru.yandex.practicum.filmorate.model.IntHashSet;
 import ru.yandex.practicum.filmorate.model.User;
 import ru.yandex.practicum.filmorate.storage.UserStorage;
 
 import java.time.LocalDate;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
 
 @Service
 public class UserService {
+    private static final int MAX_PAGE_SIZE = 1000;
     private final UserStorage userStorage;
     private static final Logger log = LoggerFactory.getLogger(UserService.class);
+    private final SingleFlight<Integer, List<UserDto>> userFriendsFlight;
 
     @Autowired
-    public UserService(UserStorage userStorage) {
+    public UserService(UserStorage userStorage,
+                       @Value("${filmorate.single-flight.timeout-ms:1000}") long singleFlightTimeoutMs) {
         this.userStorage = userStorage;
+        this.userFriendsFlight = new SingleFlight<>("user-friends", singleFlightTimeoutMs, TimeUnit.MILLISECONDS);
     }
 
     /**
@@ -35,11 +45,14 @@ public class UserService {
     }
 
     /**
-     * Возвращает всех пользователей в виде списка.
+     * Возвращает страницу пользователей с id больше afterId.
      * Вызывает соответствующий метод хранилища.
      */
-    public List<UserDto> getUsers() {
-        return userStorage.getUsers().stream().map(UserMapper::mapToUserDto).toList();
+    public PageDto<UserDto> getUsers(int afterId, int limit) {
+        checkIsValidPage(afterId, limit);
+        List<UserDto> users = userStorage.getUsers(afterId, limit).stream().map(UserMapper::mapToUserDto).toList();
+        Integer nextCursor = users.size() == limit ? users.get(users.size() - 1).getId() : null;
+        return new PageDto<>(users, nextCursor);
     }
 
     /**
@@ -89,62 +102,85 @@ public class UserService {
 
     /**
      * Добавляет пользователей в друзья.
-     * Если оба пользователя существуют, то обновляет их списки друзей и обновляет пользователей в хранилище.
+     * Сразу пишет дружбу одним запросом: повторное добавление ничего не меняет.
+     * Пользователи читаются только если внешние ключи отклонили запись, чтобы вернуть понятную ошибку.
      */
     public void addFriends(int firstUserId, int secondUserId) {
-        User firstUser = userStorage.getUserById(firstUserId);
-        log.trace("Пользователь {} найден для добавления в друзья", firstUserId);
-        User secondUser = userStorage.getUserById(secondUserId);
-        log.trace("Пользователь {} найден для добавления в друзья", secondUserId);
-
-        if (firstUser.getFriends().contains(secondUserId)) {
-            throw new ValidationException("Пользователь уже добавлен в друзья");
+        try {
+            if (!userStorage.addFriends(firstUserId, secondUserId)) {
+                log.trace("Пользователь {} уже в друзьях у {}", secondUserId, firstUserId);
+                return;
+            }
+        } catch (DataIntegrityViolationException exception) {
+            checkUsersExist(firstUserId, secondUserId);
+            throw exception;
         }
-
-        userStorage.addFriends(firstUserId, secondUserId);
+        userFriendsFlight.forget(firstUserId);
         log.trace("Пользователи обновлены в хранилище.");
     }
 
     /**
      * Удаляет пользователей из друзей.
-     * Если оба пользователя существуют, то обновляет их списки друзей и передаёт обновлённых пользователей в мапу.
+     * Сразу удаляет дружбу одним запросом. Если удалять было нечего, то проверяет, что оба пользователя существуют,
+     * иначе повторное удаление ничего не меняет.
      */
     public void removeFriends(int firstUserId, int secondUserId) {
-        User firstUser = userStorage.getUserById(firstUserId);
-        log.trace("Пользователь {} найден для удаления мз друзей", firstUserId);
-        User secondUser = userStorage.getUserById(secondUserId);
-        log.trace("Пользователь {} найден для удаления мз друзей", secondUserId);
-
-        userStorage.removeFriends(firstUserId, secondUserId);
+        if (!userStorage.removeFriends(firstUserId, secondUserId)) {
+            checkUsersExist(firstUserId, secondUserId);
+            log.trace("Пользователя {} не было в друзьях у {}", secondUserId, firstUserId);
+            return;
+        }
+        userFriendsFlight.forget(firstUserId);
         log.trace("Пользователи обновлены в хранилище.");
     }
 
     /**
      * Ищет общих друзей у пользователей
-     * Если оба пользователя существуют, то возвращает список общих друзей.
+     * Если оба пользователя существуют, то находит id общих друзей и загружает только их одним пакетом.
      */
     public List<UserDto> getCommonFriends(int firstUserId, int secondUserId) {
-        List<UserDto> firstFriends = getUserFriendsById(firstUserId);
-        List<UserDto> secondFriends = getUserFriendsById(secondUserId);
-        log.trace("Списки друзей пользователей для поиска общих друзей составлены", secondUserId);
+        checkUsersExist(firstUserId, secondUserId);
+        log.trace("Пользователи {} и {} найдены для поиска общих друзей", firstUserId, secondUserId);
 
-        return firstFriends.stream()
-                .filter(secondFriends::contains)
+        return userStorage.getUsersByIds(userStorage.getCommonFriendIds(firstUserId, secondUserId)).stream()
+                .map(UserMapper::mapToUserDto)
                 .toList();
     }
 
     /**
      * Возвращает всех друзей пользователя
-     * Если пользователь существуюет, то возвращает список по id
+     * Если пользователь существуюет, то загружает всех его друзей из хранилища одним запросом.
+     * Одновременные запросы друзей одного пользователя объединяются.
      */
     public List<UserDto> getUserFriendsById(int userId) {
-        User user = userStorage.getUserById(userId);
-        log.trace("Пользователь {} найден для поиска всех его друзей", userId);
+        return userFriendsFlight.execute(userId, () -> {
+            checkUsersExist(userId);
+            log.trace("Пользователь {} найден для поиска всех его друзей", userId);
+
+            return userStorage.getUserFriendUsers(userId).stream()
+                    .map(UserMapper::mapToUserDto)
+                    .toList();
+        });
+    }
 
-        return user.getFriends().stream()
-                .map(id -> userStorage.getUserById(id))
-                .map(UserMapper::mapToUserDto)
-                .toList();
+    /**
+     * Возвращает счётчики объединения одновременных запросов по названиям вычислений
+     */
+    public Map<String, SingleFlight.Stats> getSingleFlightStats() {
+        return Map.of("user-friends", userFriendsFlight.getStats());
+    }
+
+    /**
+     * Проверяет параметры страницы пользователей
+     */
+    private void checkIsValidPage(int afterId, int limit) throws ValidationException {
+        if (afterId < 0) {
+            throw new ValidationException("Id, после которого запрашиваются пользователи, не может быть отрицательным");
+        }
+
+        if (limit <= 0 || limit > MAX_PAGE_SIZE) {
+            throw new ValidationException("Размер страницы пользователей должен быть от 1 до " + MAX_PAGE_SIZE);
+        }
     }
 
     /**
@@ -168,4 +204,19 @@ public class UserService {
             user.setName(user.getLogin());
         }
     }
+
+    /**
+     * Проверяет, что все пользователи существуют, иначе выбрасывает NotFoundException.
+     * Наличие проверяется одним запросом по первичному ключу, без загрузки пользователей и их друзей
+     */
+    private void checkUsersExist(int... userIds) throws NotFoundException {
+        IntHashSet existingIds = userStorage.getExistingUserIds(IntHashSet.of(userIds));
+        for (int userId : userIds) {
+            if (!existingIds.contains(userId)) {
+                String userNotFound = "Пользователь с id = " + userId + " не найден";
+                log.error(userNotFound);
+                throw new NotFoundException(userNotFound);
+            }
+        }
+    }
 }
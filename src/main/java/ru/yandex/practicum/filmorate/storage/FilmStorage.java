@@ -2,6 +2,7 @@ package ru.yandex.practicum.filmorate.storage;
 
 import ru.yandex.practicum.filmorate.model.Film;
 import java.util.List;
+import java.util.function.Consumer;
 
 public interface FilmStorage {
     /**
@@ -9,30 +10,50 @@ public interface FilmStorage {
      */
     Film getFilmById(int id);
 
+    /**
+     * Проверяет, есть ли фильм с указанным id, не загружая его
+     */
+    boolean existsFilm(int id);
+
     /**
      * Возвращает все фильмы в виде списка
      */
     List<Film> getFilms();
 
+    /**
+     * Возвращает страницу фильмов с id больше afterId, упорядоченных по id
+     */
+    List<Film> getFilms(int afterId, int limit);
+
+    /**
+     * Последовательно передаёт все фильмы пачками, не собирая их в один список
+     */
+    void streamFilms(Consumer<List<Film>> batchConsumer);
+
     /**
      * Добавляет новый фильм.
      */
     Film addFilm(Film newFilm);
 
+    /**
+     * Добавляет несколько новых фильмов за один раз.
+     */
+    List<Film> addFilms(List<Film> newFilms);
+
     /**
      * Обновляет фильм.
      */
     Film updateFilm(Film updatedFilm);
 
     /**
-     * Добавляет лайк.
+     * Добавляет лайк, если его ещё нет. Возвращает false, если лайк уже был.
      */
-    void addLike(int filmId, int userId);
+    boolean addLike(int filmId, int userId);
 
     /**
-     * Удаляет лайк.
+     * Удаляет лайк. Возвращает false, если лайка не было.
      */
-    void removeLike(int filmId, int userId);
+    boolean removeLike(int filmId, int userId);
 
     /**
      * Возвращает популярные фильмы
@@ -2,47 +2,118 @@ package ru.yandex.practicum.filmorate.storage;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.dao.DataIntegrityViolationException;
 import org.springframework.stereotype.Component;
 import ru.yandex.practicum.filmorate.exception.NotFoundException;
 import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.Genre;
+import ru.yandex.practicum.filmorate.model.IntHashSet;
 
 import java.util.ArrayList;
-import java.util.HashMap;
-import java.util.HashSet;
+import java.util.Comparator;
+import java.util.LinkedHashSet;
 import java.util.List;
-
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+
+/**
+ * Хранилище фильмов в памяти приложения.
+ * Безопасно при параллельных запросах: фильмы и лайки лежат в ConcurrentHashMap, id выдаёт AtomicInteger.
+ * Лайки хранятся отдельно от фильмов, поэтому обновление фильма их не затирает.
+ * Хранилище держит собственные копии фильмов и отдаёт наружу только копии с актуальными лайками, как и хранилище в БД.
+ * Пользователей, которые ставят лайки, проверяет по хранилищу пользователей в памяти - как внешний ключ в БД.
+ */
 @Component
 public class InMemoryFilmStorage implements FilmStorage {
-    private final HashMap<Integer, Film> films = new HashMap<>();
+    private static final int STREAM_BATCH_SIZE = 500;
+    private static final Comparator<FilmLikes> POPULARITY_ORDER = Comparator
+            .comparingInt(FilmLikes::likes).reversed()
+            .thenComparingInt(filmLikes -> filmLikes.film().getId());
+
+    private final Map<Integer, Film> films = new ConcurrentHashMap<>();
+    private final Map<Integer, Set<Integer>> likesByFilm = new ConcurrentHashMap<>();
+    private final AtomicInteger idSequence = new AtomicInteger();
+    private final InMemoryUserStorage userStorage;
     private static final Logger log = LoggerFactory.getLogger(InMemoryFilmStorage.class);
 
+    public InMemoryFilmStorage(InMemoryUserStorage userStorage) {
+        this.userStorage = userStorage;
+    }
+
     /**
-     * Возвращает фильм по id
+     * Возвращает копию фильма по id вместе с его лайками.
+     * Изменение копии, например, отклонённое валидацией обновление, не меняет фильм в хранилище.
      */
     @Override
     public Film getFilmById(int id) {
-        if (films.get(id) == null) {
+        Film film = films.get(id);
+        if (film == null) {
             String filmNotFound = "Фильм по указанному id " + id + " не найден.";
             log.error(filmNotFound);
             throw new NotFoundException(filmNotFound);
         }
-        return films.get(id);
+        return copyWithLikes(film);
     }
 
     /**
-     * Возвращает все фильмы в виде списка
+     * Проверяет, есть ли фильм с указанным id
+     */
+    @Override
+    public boolean existsFilm(int id) {
+        return films.containsKey(id);
+    }
+
+    /**
+     * Возвращает копии всех фильмов с их лайками в виде списка
      */
     @Override
     public List<Film> getFilms() {
-        return new ArrayList<>(films.values());
+        return films.values().stream().map(this::copyWithLikes).collect(Collectors.toCollection(ArrayList::new));
+    }
+
+    /**
+     * Возвращает страницу фильмов с id больше afterId, упорядоченных по id
+     */
+    @Override
+    public List<Film> getFilms(int afterId, int limit) {
+        return films.values().stream()
+                .filter(film -> film.getId() > afterId)
+                .sorted(Comparator.comparingInt(Film::getId))
+                .limit(limit)
+                .map(this::copyWithLikes)
+                .toList();
+    }
+
+    /**
+     * Последовательно передаёт копии всех фильмов с их лайками пачками
+     */
+    @Override
+    public void streamFilms(Consumer<List<Film>> batchConsumer) {
+        List<Film> batch = new ArrayList<>(STREAM_BATCH_SIZE);
+        for (Film film : films.values()) {
+            batch.add(copyWithLikes(film));
+            if (batch.size() == STREAM_BATCH_SIZE) {
+                batchConsumer.accept(batch);
+                batch = new ArrayList<>(STREAM_BATCH_SIZE);
+            }
+        }
+        if (!batch.isEmpty()) {
+            batchConsumer.accept(batch);
+        }
     }
 
     /**
      * Добавляет новый фильм.
-     * Создаёт копию переданного фильма, присваивает уникальный ID и сохраняет в набор фильмов.
+     * Присваивает переданному фильму уникальный ID и сохраняет в набор фильмов его копию,
+     * поэтому дальнейшие изменения переданного объекта хранилище не затрагивают.
+     * Лайки переданного фильма не сохраняются: лайки ставятся только через addLike.
      *
      * @param newFilm объект фильма, который нужно добавить
-     * @return созданный фильм с присвоенным ID
+     * @return копия созданного фильма с присвоенным ID
      */
     @Override
     public Film addFilm(Film newFilm) {
@@ -52,25 +123,30 @@ public class InMemoryFilmStorage implements FilmStorage {
             throw new NotFoundException(filmNotFound);
         }
 
-        newFilm.setId(getNextId());
+        newFilm.setId(idSequence.incrementAndGet());
         log.info("Фильму {} присвоен id {}", newFilm.getName(), newFilm.getId());
 
-        if (newFilm.getLikes() == null) {
-            newFilm.setLikes(new HashSet<>());
-        }
-
-        films.put(newFilm.getId(), newFilm);
+        Film storedFilm = copy(newFilm, null);
+        films.put(storedFilm.getId(), storedFilm);
         log.info("Фильм {} добавлен в хранилище", newFilm.getId());
-        return newFilm;
+        return copyWithLikes(storedFilm);
+    }
+
+    /**
+     * Добавляет несколько новых фильмов по одному
+     */
+    @Override
+    public List<Film> addFilms(List<Film> newFilms) {
+        return newFilms.stream().map(this::addFilm).toList();
     }
 
     /**
      * Обновляет фильм.
-     * Проверяет поля переданного фильма на соответствие.
-     * Если всё хорошо и переданный фильм существует в контроллере, то создаёт копию и сохраняет в контроллер.
+     * Если фильм существует в хранилище, то сохраняет вместо него копию переданного фильма.
+     * Лайки переданного фильма не сохраняются: они хранятся отдельно и обновлением не меняются.
      *
      * @param updatedFilm объект фильма, который нужно обновить
-     * @return копия обновлённого фильма
+     * @return копия обновлённого фильма с его лайками
      */
     @Override
     public Film updateFilm(Film updatedFilm) {
@@ -80,52 +156,82 @@ public class InMemoryFilmStorage implements FilmStorage {
             throw new NotFoundException(filmNotFound);
         }
 
-        if (!films.containsKey(updatedFilm.getId())) {
+        Film storedFilm = copy(updatedFilm, null);
+        if (films.replace(storedFilm.getId(), storedFilm) == null) {
             String filmNotFoundInStorage = "Фильм " + updatedFilm.getId() + " для обновления не найден в хранилище";
             log.error(filmNotFoundInStorage);
             throw new NotFoundException(filmNotFoundInStorage);
         }
+        log.info("Фильм {} обновлён в хранилище", updatedFilm.getId());
+        return copyWithLikes(storedFilm);
+    }
 
-        if (updatedFilm.getLikes() == null) {
-            updatedFilm.setLikes(new HashSet<>());
+    /**
+     * Добавляет лайк, если его ещё нет. Возвращает false, если лайк уже был.
+     * Несуществующий фильм или пользователь отсекаются так же, как внешними ключами в БД.
+     */
+    @Override
+    public boolean addLike(int filmId, int userId) {
+        if (!films.containsKey(filmId) || !userStorage.existsUser(userId)) {
+            throw new DataIntegrityViolationException("Фильм " + filmId + " или пользователь " + userId +
+                    " не найден");
         }
-
-        films.put(updatedFilm.getId(), updatedFilm);
-        log.info("Фильм {} обновлён в хранилище", updatedFilm.getId());
-        return updatedFilm;
+        return likesByFilm.computeIfAbsent(filmId, id -> ConcurrentHashMap.newKeySet()).add(userId);
     }
 
     /**
-     * Генерирует следующий Id.
-     * Находит максимальный текущй Id и увеличивает его.
+     * Удаляет лайк. Возвращает false, если лайка не было.
      */
-    private int getNextId() {
-        int currentMaxId = films.keySet()
-                .stream()
-                .mapToInt(id -> id)
-                .max()
-                .orElse(0);
-        return ++currentMaxId;
+    @Override
+    public boolean removeLike(int filmId, int userId) {
+        Set<Integer> likes = likesByFilm.get(filmId);
+        return likes != null && likes.remove(userId);
     }
 
     /**
-     * Добавляет лайк.
+     * Возвращает ТОП фильмов по числу лайков: по убыванию лайков, при равенстве - по возрастанию id.
+     * Лайки каждого фильма копируются один раз, чтобы параллельные лайки не ломали сортировку
+     * и возвращённые лайки совпадали с порядком ТОП.
      */
-    public void addLike(int filmId, int userId) {
-        throw new NotFoundException("Метод не поддерживается");
+    @Override
+    public List<Film> getMostPopularFilms(int count) {
+        if (count <= 0) {
+            return List.of();
+        }
+        return films.values().stream()
+                .map(this::copyWithLikes)
+                .map(film -> new FilmLikes(film, film.getLikes().size()))
+                .sorted(POPULARITY_ORDER)
+                .limit(count)
+                .map(FilmLikes::film)
+                .toList();
     }
 
     /**
-     * Удаляет лайк.
+     * Копирует фильм из хранилища и заполняет его текущими лайками
      */
-    public void removeLike(int filmId, int userId) {
-        throw new NotFoundException("Метод не поддерживается");
+    private Film copyWithLikes(Film film) {
+        return copy(film, new IntHashSet(likesByFilm.getOrDefault(film.getId(), Set.of())));
     }
 
     /**
-     * Возвращает популярные фильмы
+     * Копирует фильм вместе с изменяемыми полями, чтобы копии не делили жанры и MPA рейтинг
      */
-    public List<Film> getMostPopularFilms(int count) {
-        throw new NotFoundException("Метод не поддерживается");
+    private static Film copy(Film film, IntHashSet likes) {
+        Set<Genre> genres = null;
+        if (film.getGenres() != null) {
+            genres = new LinkedHashSet<>();
+            for (Genre genre : film.getGenres()) {
+                genres.add(genre.toBuilder().build());
+            }
+        }
+        return film.toBuilder()
+                .genres(genres)
+                .mpa(film.getMpa() == null ? null : film.getMpa().toBuilder().build())
+                .likes(likes)
+                .build();
+    }
+
+    private record FilmLikes(Film film, int likes) {
     }
 }
@@ -2,29 +2,59 @@ package ru.yandex.practicum.filmorate.storage;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.dao.DataIntegrityViolationException;
 import org.springframework.stereotype.Component;
 import ru.yandex.practicum.filmorate.exception.NotFoundException;
+import ru.yandex.practicum.filmorate.model.IntHashSet;
 import ru.yandex.practicum.filmorate.model.User;
 
 import java.util.*;
-
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Хранилище пользователей в памяти приложения.
+ * Безопасно при параллельных запросах: пользователи и дружба лежат в ConcurrentHashMap, id выдаёт AtomicInteger.
+ * Друзья хранятся отдельно от пользователей, а пользователь по id возвращается со снимком набора друзей, как из БД.
+ */
 @Component
 public class InMemoryUserStorage implements UserStorage {
     private static final Logger log = LoggerFactory.getLogger(InMemoryUserStorage.class);
-    private final HashMap<Integer, User> users = new HashMap<>();
+    private final Map<Integer, User> users = new ConcurrentHashMap<>();
+    private final Map<Integer, Set<Integer>> friendsByUser = new ConcurrentHashMap<>();
+    private final AtomicInteger idSequence = new AtomicInteger();
 
     /**
      * Возвращает пользователя по id
      */
     @Override
     public User getUserById(int id) {
-        if (users.get(id) == null) {
+        User user = users.get(id);
+        if (user == null) {
             String userNotFound = "Пользователь с id = " + id + " не найден";
             log.error(userNotFound);
             throw new NotFoundException(userNotFound);
         }
 
-        return users.get(id);
+        return user.toBuilder().friends(getUserFriends(id)).build();
+    }
+
+    /**
+     * Проверяет, есть ли пользователь с указанным id
+     */
+    @Override
+    public boolean existsUser(int id) {
+        return users.containsKey(id);
+    }
+
+    /**
+     * Возвращает те id из переданных, для которых есть пользователи
+     */
+    @Override
+    public IntHashSet getExistingUserIds(Collection<Integer> userIds) {
+        IntHashSet existingIds = new IntHashSet();
+        userIds.stream().filter(users::containsKey).forEach(existingIds::add);
+        return existingIds;
     }
 
     /**
@@ -35,6 +65,30 @@ public class InMemoryUserStorage implements UserStorage {
         return new ArrayList<>(users.values());
     }
 
+    /**
+     * Возвращает страницу пользователей с id больше afterId, упорядоченных по id
+     */
+    @Override
+    public List<User> getUsers(int afterId, int limit) {
+        return users.values().stream()
+                .filter(user -> user.getId() > afterId)
+                .sorted(Comparator.comparingInt(User::getId))
+                .limit(limit)
+                .toList();
+    }
+
+    /**
+     * Возвращает пользователей с переданными id, упорядоченных по id
+     */
+    @Override
+    public List<User> getUsersByIds(Collection<Integer> userIds) {
+        return new HashSet<>(userIds).stream()
+                .map(users::get)
+                .filter(Objects::nonNull)
+                .sorted(Comparator.comparingInt(User::getId))
+                .toList();
+    }
+
     /**
      * Добавляет нового пользователя.
      * Присваивает уникальный ID и сохраняет в набор пользователей.
@@ -50,11 +104,11 @@ public class InMemoryUserStorage implements UserStorage {
             throw new NotFoundException(userNotFound);
         }
 
-        newUser.setId(getNextId());
+        newUser.setId(idSequence.incrementAndGet());
         log.info("Пользователю с логином {} присвоен id {}", newUser.getLogin(), newUser.getId());
 
         if (newUser.getFriends() == null) {
-            newUser.setFriends(new HashSet<>());
+            newUser.setFriends(new IntHashSet());
         }
 
         users.put(newUser.getId(), newUser);
@@ -77,56 +131,69 @@ public class InMemoryUserStorage implements UserStorage {
             throw new NotFoundException(userNotFound);
         }
 
-        if (!users.containsKey(updatedUser.getId())) {
+        if (updatedUser.getFriends() == null) {
+            updatedUser.setFriends(new IntHashSet());
+        }
+
+        if (users.replace(updatedUser.getId(), updatedUser) == null) {
             String userNotFound = "Пользователь " + updatedUser.getId() + " для обновления не найден в хранилище";
             log.error(userNotFound);
             throw new NotFoundException(userNotFound);
         }
-
-        if (updatedUser.getFriends() == null) {
-            updatedUser.setFriends(new HashSet<>());
-        }
-
-        users.put(updatedUser.getId(), updatedUser);
         log.info("Пользователь {} обновлён", updatedUser.getId());
 
         return updatedUser;
     }
 
     /**
-     * Генерирует следующий Id.
-     * Находит максимальный текущй Id и увеличивает его.
+     * Добавляет пользователя в друзья, если его там ещё нет. Возвращает false, если он уже был в друзьях.
+     * Несуществующие пользователи отсекаются так же, как внешними ключами в БД.
+     */
+    @Override
+    public boolean addFriends(int userId, int friendId) {
+        if (!users.containsKey(userId) || !users.containsKey(friendId)) {
+            throw new DataIntegrityViolationException("Пользователь " + userId + " или " + friendId + " не найден");
+        }
+        return friendsByUser.computeIfAbsent(userId, id -> ConcurrentHashMap.newKeySet()).add(friendId);
+    }
+
+    /**
+     * Удаляет пользователя из друзей. Возвращает false, если его не было в друзьях
      */
-    private int getNextId() {
-        int currentMaxId = users.keySet()
-                .stream()
-                .mapToInt(id -> id)
-                .max()
-                .orElse(0);
-        return ++currentMaxId;
+    @Override
+    public boolean removeFriends(int userId, int friendId) {
+        Set<Integer> friends = friendsByUser.get(userId);
+        return friends != null && friends.remove(friendId);
     }
 
     /**
-     * Заглушка для метода добавления в друзья
+     * Возвращает снимок id друзей пользователя
      */
     @Override
-    public void addFriends(int userId, int friendId) {
-        throw new NotFoundException("Метод не поддерживается");
+    public IntHashSet getUserFriends(Integer userId) {
+        return new IntHashSet(friendsByUser.getOrDefault(userId, Set.of()));
     }
 
     /**
-     * Заглушка для метода удаления из друзей
+     * Возвращает друзей пользователя по снимку набора id друзей
      */
     @Override
-    public void removeFriends(int userId, int friendId) {
-        throw new NotFoundException("Метод не поддерживается");
+    public List<User> getUserFriendUsers(int userId) {
+        return getUsersByIds(getUserFriends(userId));
     }
 
     /**
-     * Заглушка для метода получения друзей пользователя в виде списка id
+     * Возвращает id общих друзей двух пользователей пересечением их наборов id друзей
      */
     @Override
-    public Set<Integer> getUserFriends(Integer userId) {
-        throw new NotFoundException("Метод не поддерживается");
+    public IntHashSet getCommonFriendIds(int firstUserId, int secondUserId) {
+        IntHashSet secondFriends = getUserFriends(secondUserId);
+        IntHashSet commonFriendIds = new IntHashSet();
+        getUserFriends(firstUserId).forEachInt(friendId -> {
+            if (secondFriends.contains(friendId)) {
+                commonFriendIds.add(friendId);
+            }
+        });
+        return commonFriendIds;
     }
-}
\ No newline at end of file
+}
@@ -1,9 +1,10 @@
 package ru.yandex.practicum.filmorate.storage;
 
+import ru.yandex.practicum.filmorate.model.IntHashSet;
 import ru.yandex.practicum.filmorate.model.User;
 
+import java.util.Collection;
 import java.util.List;
-import java.util.Set;
 
 public interface UserStorage {
     /**
@@ -11,11 +12,32 @@ public interface UserStorage {
      */
     User getUserById(int id);
 
+    /**
+     * Проверяет, есть ли пользователь с указанным id, не загружая его
+     */
+    boolean existsUser(int id);
+
+    /**
+     * Возвращает те id из переданных, для которых есть пользователи
+     */
+    IntHashSet getExistingUserIds(Collection<Integer> userIds);
+
     /**
      * Возвращает всех пользователей в виде списка
      */
     List<User> getUsers();
 
+    /**
+     * Возвращает страницу пользователей с id больше afterId, упорядоченных по id
+     */
+    List<User> getUsers(int afterId, int limit);
+
+    /**
+     * Возвращает пользователей с переданными id, упорядоченных по id.
+     * Несуществующие id пропускаются, друзья пользователей не загружаются
+     */
+    List<User> getUsersByIds(Collection<Integer> userIds);
+
     /**
      * Добавляет нового пользователя.
      * Проверяет поля пользователя на соответствие.
@@ -37,17 +59,28 @@ public interface UserStorage {
     User updateUser(User updatedUser);
 
     /**
-     * Добавляет пользователя в друзья
+     * Добавляет пользователя в друзья, если его там ещё нет. Возвращает false, если он уже был в друзьях
      */
-    void addFriends(int userId, int friendId);
+    boolean addFriends(int userId, int friendId);
 
     /**
-     * Удаляет пользователя из друзей
+     * Удаляет пользователя из друзей. Возвращает false, если его не было в друзьях
      */
-    void removeFriends(int userId, int friendId);
+    boolean removeFriends(int userId, int friendId);
 
     /**
      * Возвращает друзей пользователя в виде списка id
      */
-     Set<Integer> getUserFriends(Integer userId);
+     IntHashSet getUserFriends(Integer userId);
+
+    /**
+     * Возвращает друзей пользователя в виде списка пользователей, упорядоченных по id.
+     * Друзья самих друзей не загружаются
+     */
+    List<User> getUserFriendUsers(int userId);
+
+    /**
+     * Возвращает id общих друзей двух пользователей
+     */
+    IntHashSet getCommonFriendIds(int firstUserId, int secondUserId);
 }
@@ -0,0 +1,136 @@
+package ru.yandex.practicum.filmorate.storage.cache;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.Genre;
+import ru.yandex.practicum.filmorate.model.IntHashSet;
+import ru.yandex.practicum.filmorate.storage.FilmStorage;
+import ru.yandex.practicum.filmorate.storage.dao.FilmDbStorage;
+
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Хранилище фильмов с кэшем фильмов по id поверх БД.
+ * Фильм по id читается из кэша ExpiringLruCache, остальные методы идут в БД.
+ * Обновление фильма, в том числе его жанров и MPA рейтинга, сбрасывает фильм в кэше.
+ * Лайки кэш не сбрасывают: в фильме из БД их нет, счётчик лайков живёт отдельно.
+ * Размер кэша и время жизни фильма задаются настройками filmorate.cache.films.*, размер 0 выключает кэш.
+ */
+@Component
+public class CachedFilmStorage implements FilmStorage {
+    private final FilmDbStorage filmDbStorage;
+    private final ExpiringLruCache<Film> cache;
+
+    public CachedFilmStorage(FilmDbStorage filmDbStorage,
+                             @Value("${filmorate.cache.films.max-size:10000}") int maxSize,
+                             @Value("${filmorate.cache.films.ttl-seconds:60}") long ttlSeconds) {
+        this.filmDbStorage = filmDbStorage;
+        this.cache = new ExpiringLruCache<>(maxSize, ttlSeconds, TimeUnit.SECONDS, filmDbStorage::getFilmById,
+                CachedFilmStorage::copy);
+    }
+
+    /**
+     * Возвращает копию фильма по id из кэша, при промахе фильм читается из БД
+     */
+    @Override
+    public Film getFilmById(int id) {
+        return cache.get(id);
+    }
+
+    @Override
+    public boolean existsFilm(int id) {
+        return filmDbStorage.existsFilm(id);
+    }
+
+    @Override
+    public List<Film> getFilms() {
+        return filmDbStorage.getFilms();
+    }
+
+    @Override
+    public List<Film> getFilms(int afterId, int limit) {
+        return filmDbStorage.getFilms(afterId, limit);
+    }
+
+    @Override
+    public void streamFilms(Consumer<List<Film>> batchConsumer) {
+        filmDbStorage.streamFilms(batchConsumer);
+    }
+
+    @Override
+    public Film addFilm(Film newFilm) {
+        return filmDbStorage.addFilm(newFilm);
+    }
+
+    @Override
+    public List<Film> addFilms(List<Film> newFilms) {
+        return filmDbStorage.addFilms(newFilms);
+    }
+
+    /**
+     * Обновляет фильм в БД и сбрасывает его в кэше.
+     * Фильм сбрасывается и при ошибке: часть изменений могла успеть записаться
+     */
+    @Override
+    public Film updateFilm(Film updatedFilm) {
+        try {
+            return filmDbStorage.updateFilm(updatedFilm);
+        } finally {
+            if (updatedFilm != null) {
+                cache.invalidate(updatedFilm.getId());
+            }
+        }
+    }
+
+    @Override
+    public boolean addLike(int filmId, int userId) {
+        return filmDbStorage.addLike(filmId, userId);
+    }
+
+    @Override
+    public boolean removeLike(int filmId, int userId) {
+        return filmDbStorage.removeLike(filmId, userId);
+    }
+
+    @Override
+    public List<Film> getMostPopularFilms(int count) {
+        return filmDbStorage.getMostPopularFilms(count);
+    }
+
+    /**
+     * Сбрасывает кэш фильмов, например, после изменений в БД в обход хранилища
+     */
+    public void invalidate() {
+        cache.invalidateAll();
+    }
+
+    /**
+     * Возвращает счётчики попаданий, промахов и вытеснений кэша фильмов
+     */
+    public ExpiringLruCache.Stats getCacheStats() {
+        return cache.getStats();
+    }
+
+    /**
+     * Копирует фильм вместе с изменяемыми полями, чтобы копии не делили жанры, MPA рейтинг и лайки
+     */
+    private static Film copy(Film film) {
+        Set<Genre> genres = null;
+        if (film.getGenres() != null) {
+            genres = new LinkedHashSet<>();
+            for (Genre genre : film.getGenres()) {
+                genres.add(genre.toBuilder().build());
+            }
+        }
+        return film.toBuilder()
+                .genres(genres)
+                .mpa(film.getMpa() == null ? null : film.getMpa().toBuilder().build())
+                .likes(film.getLikes() == null ? null : IntHashSet.of(film.getLikes().toIntArray()))
+                .build();
+    }
+}
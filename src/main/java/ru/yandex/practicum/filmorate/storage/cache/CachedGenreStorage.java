@@ -0,0 +1,65 @@
+package ru.yandex.practicum.filmorate.storage.cache;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.context.annotation.Primary;
+import org.springframework.stereotype.Component;
+import ru.yandex.practicum.filmorate.exception.NotFoundException;
+import ru.yandex.practicum.filmorate.model.Genre;
+import ru.yandex.practicum.filmorate.storage.GenreStorage;
+import ru.yandex.practicum.filmorate.storage.dao.GenreDbStorage;
+
+import java.util.List;
+
+/**
+ * Хранилище жанров с кэшем в памяти поверх БД.
+ * Жанры загружаются из БД один раз и дальше отдаются из кэша.
+ */
+@Primary
+@Component
+public class CachedGenreStorage implements GenreStorage {
+    private static final Logger log = LoggerFactory.getLogger(CachedGenreStorage.class);
+    private final ReferenceDataCache<Genre> cache;
+
+    public CachedGenreStorage(GenreDbStorage genreDbStorage) {
+        this.cache = new ReferenceDataCache<>(genreDbStorage::getGenres, Genre::getId,
+                genre -> genre.toBuilder().build());
+    }
+
+    /**
+     * Возвращает жанр по id из кэша
+     */
+    @Override
+    public Genre getGenreById(int id) {
+        Genre genre = cache.getById(id);
+        if (genre == null) {
+            String genreNotFound = "Жанр с id = " + id + " не найден";
+            log.error(genreNotFound);
+            throw new NotFoundException(genreNotFound);
+        }
+        return genre;
+    }
+
+    /**
+     * Возвращает все жанры из кэша в виде списка
+     */
+    @Override
+    public List<Genre> getGenres() {
+        return cache.getAll();
+    }
+
+    /**
+     * Перечитывает жанры из БД
+     */
+    public void refresh() {
+        cache.refresh();
+        log.info("Кэш жанров обновлён");
+    }
+
+    /**
+     * Сбрасывает кэш жанров
+     */
+    public void invalidate() {
+        cache.invalidate();
+    }
+}
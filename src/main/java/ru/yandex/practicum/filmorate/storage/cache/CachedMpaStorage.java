@@ -0,0 +1,65 @@
+package ru.yandex.practicum.filmorate.storage.cache;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.context.annotation.Primary;
+import org.springframework.stereotype.Component;
+import ru.yandex.practicum.filmorate.exception.NotFoundException;
+import ru.yandex.practicum.filmorate.model.Mpa;
+import ru.yandex.practicum.filmorate.storage.MpaStorage;
+import ru.yandex.practicum.filmorate.storage.dao.MpaDbStorage;
+
+import java.util.List;
+
+/**
+ * Хранилище MPA рейтингов с кэшем в памяти поверх БД.
+ * MPA рейтинги загружаются из БД один раз и дальше отдаются из кэша.
+ */
+@Primary
+@Component
+public class CachedMpaStorage implements MpaStorage {
+    private static final Logger log = LoggerFactory.getLogger(CachedMpaStorage.class);
+    private final ReferenceDataCache<Mpa> cache;
+
+    public CachedMpaStorage(MpaDbStorage mpaDbStorage) {
+        this.cache = new ReferenceDataCache<>(mpaDbStorage::getMpaList, Mpa::getId,
+                mpa -> mpa.toBuilder().build());
+    }
+
+    /**
+     * Возвращает MPA рейтинг по id из кэша
+     */
+    @Override
+    public Mpa getMpaById(int id) {
+        Mpa mpa = cache.getById(id);
+        if (mpa == null) {
+            String mpaNotFound = "MPA рейтинг с id = " + id + " не найден";
+            log.error(mpaNotFound);
+            throw new NotFoundException(mpaNotFound);
+        }
+        return mpa;
+    }
+
+    /**
+     * Возвращает все MPA рейтинги из кэша в виде списка
+     */
+    @Override
+    public List<Mpa> getMpaList() {
+        return cache.getAll();
+    }
+
+    /**
+     * Перечитывает MPA рейтинги из БД
+     */
+    public void refresh() {
+        cache.refresh();
+        log.info("Кэш MPA рейтингов обновлён");
+    }
+
+    /**
+     * Сбрасывает кэш MPA рейтингов
+     */
+    public void invalidate() {
+        cache.invalidate();
+    }
+}
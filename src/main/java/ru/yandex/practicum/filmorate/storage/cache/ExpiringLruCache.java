@@ -0,0 +1,164 @@
+package ru.yandex.practicum.filmorate.storage.cache;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.IntFunction;
+import java.util.function.LongSupplier;
+import java.util.function.UnaryOperator;
+
+/**
+ * Ограниченный по размеру кэш с вытеснением давно не читанных элементов (LRU) и временем жизни элемента.
+ * Ключи разбиты на сегменты со своей блокировкой, поэтому параллельные чтения разных ключей не ждут друг друга.
+ * Элемент загружается при первом чтении (read-through). В кэше хранится копия, наружу отдаются копии,
+ * чтобы изменения у вызывающего кода не портили кэш.
+ * Если ключ сбросили, пока элемент загружался, то загруженный элемент не кладётся в кэш: он мог устареть.
+ */
+public class ExpiringLruCache<V> {
+    private static final int SEGMENTS_COUNT = 16;
+
+    private final Segment<V>[] segments;
+    private final IntFunction<V> loader;
+    private final UnaryOperator<V> copier;
+    private final long ttlNanos;
+    private final LongSupplier nanoTime;
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    public ExpiringLruCache(int maxSize, long ttl, TimeUnit ttlUnit, IntFunction<V> loader, UnaryOperator<V> copier) {
+        this(maxSize, ttl, ttlUnit, loader, copier, System::nanoTime);
+    }
+
+    @SuppressWarnings("unchecked")
+    ExpiringLruCache(int maxSize, long ttl, TimeUnit ttlUnit, IntFunction<V> loader, UnaryOperator<V> copier,
+                     LongSupplier nanoTime) {
+        if (maxSize < 0 || ttl <= 0) {
+            throw new IllegalArgumentException("Размер кэша не может быть отрицательным, а время жизни - " +
+                    "неположительным");
+        }
+        int segmentsCount = Math.max(1, Math.min(SEGMENTS_COUNT, maxSize));
+        this.segments = new Segment[segmentsCount];
+        for (int i = 0; i < segmentsCount; i++) {
+            // Остаток от деления размера достаётся первым сегментам, чтобы в сумме было ровно maxSize
+            segments[i] = new Segment<>(maxSize / segmentsCount + (i < maxSize % segmentsCount ? 1 : 0));
+        }
+        this.loader = loader;
+        this.copier = copier;
+        this.ttlNanos = ttlUnit.toNanos(ttl);
+        this.nanoTime = nanoTime;
+    }
+
+    /**
+     * Возвращает копию элемента по ключу. Если элемента нет в кэше или он устарел, то загружает его.
+     * Ошибки загрузки, например, отсутствие элемента, пробрасываются вызывающему коду и не кэшируются.
+     */
+    public V get(int key) {
+        Segment<V> segment = segmentFor(key);
+        long now = nanoTime.getAsLong();
+        long generation;
+        V hit = null;
+        synchronized (segment) {
+            Entry<V> entry = segment.entries.get(key);
+            if (entry != null && now - entry.loadedAt() < ttlNanos) {
+                hit = entry.value();
+            } else if (entry != null) {
+                segment.entries.remove(key);
+                evictions.increment();
+            }
+            generation = segment.generation;
+        }
+        if (hit != null) {
+            // Элемент в кэше не меняется, поэтому копируется уже без блокировки
+            hits.increment();
+            return copier.apply(hit);
+        }
+
+        misses.increment();
+        V value = loader.apply(key);
+        V cached = copier.apply(value);
+        synchronized (segment) {
+            if (segment.generation == generation && segment.maxSize > 0) {
+                segment.entries.put(key, new Entry<>(cached, now));
+                if (segment.entries.size() > segment.maxSize) {
+                    Iterator<Entry<V>> eldest = segment.entries.values().iterator();
+                    eldest.next();
+                    eldest.remove();
+                    evictions.increment();
+                }
+            }
+        }
+        return copier.apply(cached);
+    }
+
+    /**
+     * Сбрасывает элемент по ключу, например, после его изменения в БД
+     */
+    public void invalidate(int key) {
+        Segment<V> segment = segmentFor(key);
+        synchronized (segment) {
+            segment.entries.remove(key);
+            segment.generation++;
+        }
+    }
+
+    /**
+     * Сбрасывает все элементы кэша
+     */
+    public void invalidateAll() {
+        for (Segment<V> segment : segments) {
+            synchronized (segment) {
+                segment.entries.clear();
+                segment.generation++;
+            }
+        }
+    }
+
+    /**
+     * Возвращает число элементов в кэше
+     */
+    public int size() {
+        int size = 0;
+        for (Segment<V> segment : segments) {
+            synchronized (segment) {
+                size += segment.entries.size();
+            }
+        }
+        return size;
+    }
+
+    /**
+     * Возвращает счётчики попаданий, промахов и вытеснений с момента создания кэша
+     */
+    public Stats getStats() {
+        return new Stats(hits.sum(), misses.sum(), evictions.sum());
+    }
+
+    private Segment<V> segmentFor(int key) {
+        return segments[Math.floorMod(Integer.hashCode(key) * 0x9E3779B9, segments.length)];
+    }
+
+    /**
+     * Счётчики кэша. Вытеснения включают и элементы, удалённые по истечении времени жизни
+     */
+    public record Stats(long hits, long misses, long evictions) {
+    }
+
+    private record Entry<V>(V value, long loadedAt) {
+    }
+
+    /**
+     * Сегмент кэша: LinkedHashMap в порядке обращений, первый элемент - давно не читанный.
+     * Поколение увеличивается при каждом сбросе и защищает от записи в кэш устаревшего элемента
+     */
+    private static final class Segment<V> {
+        private final int maxSize;
+        private final LinkedHashMap<Integer, Entry<V>> entries = new LinkedHashMap<>(16, 0.75f, true);
+        private long generation;
+
+        private Segment(int maxSize) {
+            this.maxSize = maxSize;
+        }
+    }
+}
@@ -0,0 +1,81 @@
+package ru.yandex.practicum.filmorate.storage.cache;
+
+import java.util.List;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.function.UnaryOperator;
+
+/**
+ * Кэш небольшого, почти неизменного справочника в памяти.
+ * Элементы хранятся в массиве, индекс которого - id элемента, поэтому поиск по id не требует запросов к БД.
+ * Наружу отдаются только копии элементов, чтобы изменения у вызывающего кода не портили кэш.
+ */
+public class ReferenceDataCache<T> {
+    private final Supplier<List<T>> loader;
+    private final Function<T, Integer> idGetter;
+    private final UnaryOperator<T> copier;
+    private volatile Snapshot<T> snapshot;
+
+    public ReferenceDataCache(Supplier<List<T>> loader, Function<T, Integer> idGetter, UnaryOperator<T> copier) {
+        this.loader = loader;
+        this.idGetter = idGetter;
+        this.copier = copier;
+    }
+
+    /**
+     * Возвращает копию элемента по id или null, если такого элемента нет в кэше.
+     * Промах не перечитывает справочник из БД, иначе запросы с несуществующими id каждый раз читали бы всю таблицу.
+     * Новые элементы появляются в кэше только после refresh или invalidate.
+     */
+    public T getById(int id) {
+        T item = getSnapshot().get(id);
+        return item == null ? null : copier.apply(item);
+    }
+
+    /**
+     * Возвращает копии всех элементов в порядке загрузки
+     */
+    public List<T> getAll() {
+        return getSnapshot().items().stream().map(copier).toList();
+    }
+
+    /**
+     * Перечитывает справочник из БД
+     */
+    public void refresh() {
+        load();
+    }
+
+    /**
+     * Сбрасывает кэш, при следующем обращении справочник будет перечитан из БД
+     */
+    public void invalidate() {
+        snapshot = null;
+    }
+
+    private Snapshot<T> load() {
+        List<T> items = List.copyOf(loader.get());
+        int maxId = items.stream().mapToInt(idGetter::apply).max().orElse(0);
+        Object[] itemsById = new Object[maxId + 1];
+        items.forEach(item -> itemsById[idGetter.apply(item)] = item);
+
+        Snapshot<T> loaded = new Snapshot<>(itemsById, items);
+        snapshot = loaded;
+        return loaded;
+    }
+
+    private Snapshot<T> getSnapshot() {
+        Snapshot<T> current = snapshot;
+        return current == null ? load() : current;
+    }
+
+    /**
+     * Неизменяемый снимок справочника
+     */
+    private record Snapshot<T>(Object[] itemsById, List<T> items) {
+        @SuppressWarnings("unchecked")
+        T get(int id) {
+            return id >= 0 && id < itemsById.length ? (T) itemsById[id] : null;
+        }
+    }
+}
@@ -9,11 +9,16 @@ import ru.yandex.practicum.filmorate.exception.InternalServerException;
 
 import java.sql.PreparedStatement;
 import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.List;
 import java.util.Optional;
 
 @RequiredArgsConstructor
 public class BaseStorage<T> {
+    protected static final int IN_CHUNK_SIZE = 1000;
+
     protected final JdbcTemplate jdbc;
     protected final RowMapper<T> mapper;
 
@@ -35,11 +40,12 @@ public class BaseStorage<T> {
         return rowsDeleted > 0;
     }
 
-    protected void update(String query, Object... params) {
+    protected int update(String query, Object... params) {
         int rowsUpdated = jdbc.update(query, params);
         if (rowsUpdated == 0) {
             throw new InternalServerException("Не удалось обновить данные");
         }
+        return rowsUpdated;
     }
 
     protected int insert(String query, Object... params) {
@@ -62,4 +68,23 @@ public class BaseStorage<T> {
             throw new InternalServerException("Не удалось сохранить данные");
         }
     }
-}
\ No newline at end of file
+
+    /**
+     * Формирует список плейсхолдеров для условия IN, например "?, ?, ?"
+     */
+    protected static String inPlaceholders(int count) {
+        return String.join(", ", Collections.nCopies(count, "?"));
+    }
+
+    /**
+     * Делит набор id на части не больше IN_CHUNK_SIZE, чтобы не упираться в ограничения длины запроса
+     */
+    protected static List<List<Integer>> chunks(Collection<Integer> ids) {
+        List<Integer> idList = new ArrayList<>(ids);
+        List<List<Integer>> chunks = new ArrayList<>();
+        for (int from = 0; from < idList.size(); from += IN_CHUNK_SIZE) {
+            chunks.add(idList.subList(from, Math.min(from + IN_CHUNK_SIZE, idList.size())));
+        }
+        return chunks;
+    }
+}
@@ -2,31 +2,63 @@ package ru.yandex.practicum.filmorate.storage.dao;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import org.springframework.context.annotation.Primary;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.jdbc.core.BatchPreparedStatementSetter;
 import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.support.GeneratedKeyHolder;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
 import ru.yandex.practicum.filmorate.exception.InternalServerException;
 import ru.yandex.practicum.filmorate.exception.NotFoundException;
 import ru.yandex.practicum.filmorate.model.Film;
 import ru.yandex.practicum.filmorate.model.Genre;
+import ru.yandex.practicum.filmorate.model.IntHashSet;
 import ru.yandex.practicum.filmorate.model.Mpa;
 import ru.yandex.practicum.filmorate.storage.FilmStorage;
 import ru.yandex.practicum.filmorate.storage.GenreStorage;
 import ru.yandex.practicum.filmorate.storage.MpaStorage;
 import ru.yandex.practicum.filmorate.storage.dao.mapper.FilmRowMapper;
+import ru.yandex.practicum.filmorate.storage.dao.mapper.FilmWithGenresExtractor;
 
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Types;
 import java.util.*;
+import java.util.function.Consumer;
 
-@Primary
 @Repository
 public class FilmDbStorage extends BaseStorage<Film> implements FilmStorage {
     private final MpaStorage mpaStorage;
     private final GenreStorage genreStorage;
+    private final FilmWithGenresExtractor filmWithGenresExtractor;
+    private final FilmPopularityIndex popularityIndex;
+    private final FilmLikesWriteBuffer likesWriteBuffer;
+    private final TransactionTemplate transactionTemplate;
+    private final TransactionTemplate readOnlyTransactionTemplate;
 
     private static final Logger log = LoggerFactory.getLogger(FilmDbStorage.class);
+    private static final int STREAM_BATCH_SIZE = 500;
 
-    private static final String GET_FILM_BY_ID = "SELECT * FROM films WHERE id = ?;";
-    private static final String GET_FILMS = "SELECT * FROM films;";
+    private static final String GET_FILM_BY_ID = "SELECT f.*, m.name AS mpa_name, " +
+            "g.id AS genre_id, g.name AS genre_name FROM films f " +
+            "LEFT JOIN mpa_ratings m ON f.mpa_rating_id = m.id " +
+            "LEFT JOIN films_genres fg ON f.id = fg.film_id " +
+            "LEFT JOIN genres g ON fg.genre_id = g.id " +
+            "WHERE f.id = ? " +
+            "ORDER BY g.id;";
+    private static final String GET_FILMS = "SELECT f.*, m.name AS mpa_name FROM films f " +
+            "LEFT JOIN mpa_ratings m ON f.mpa_rating_id = m.id " +
+            "ORDER BY f.id;";
+    private static final String GET_FILMS_PAGE = "SELECT f.*, m.name AS mpa_name FROM films f " +
+            "LEFT JOIN mpa_ratings m ON f.mpa_rating_id = m.id " +
+            "WHERE f.id > ? " +
+            "ORDER BY f.id " +
+            "LIMIT ?;";
     private static final String ADD_FILM = "INSERT INTO films (name, description, duration, release_date, " +
             "mpa_rating_id) VALUES (?, ?, ?, ?, ?);";
     private static final String ADD_FILM_SIMPLE = "INSERT INTO films (name, description, duration, release_date) " +
@@ -35,44 +67,64 @@ public class FilmDbStorage extends BaseStorage<Film> implements FilmStorage {
             "release_date = ?, mpa_rating_id = ? WHERE id = ?;";
     private static final String UPDATE_FILM_SHORT = "UPDATE films SET name = ?,description = ?, duration = ?, " +
             "release_date = ? WHERE id = ?;";
-    private static final String GET_POPULAR_FILMS = "SELECT f.*, COUNT(fl.user_id) as likes_count FROM films f " +
-            "LEFT JOIN films_likes fl ON f.id = fl.film_id " +
-            "GROUP BY f.id " +
-            "ORDER BY likes_count DESC " +
+    private static final String GET_POPULAR_FILMS = "SELECT f.*, m.name AS mpa_name FROM films f " +
+            "LEFT JOIN mpa_ratings m ON f.mpa_rating_id = m.id " +
+            "ORDER BY f.likes_count DESC, f.id " +
             "LIMIT ?;";
+    private static final String GET_FILMS_BY_IDS = "SELECT f.*, m.name AS mpa_name FROM films f " +
+            "LEFT JOIN mpa_ratings m ON f.mpa_rating_id = m.id " +
+            "WHERE f.id IN (%s);";
 
-    private static final String GET_GENRES_ID = "SELECT genre_id FROM films_genres WHERE film_id = ?;";
-    private static final String GET_GENRE_NAME = "SELECT name FROM genres WHERE id = ?;";
+    private static final String GET_FILMS_GENRES = "SELECT film_id, genre_id FROM films_genres " +
+            "WHERE film_id IN (%s) " +
+            "ORDER BY film_id, genre_id;";
     private static final String ADD_GENRE = "INSERT INTO films_genres (film_id, genre_id) " +
             "VALUES (?, ?);";
     private static final String DELETE_GENRES = "DELETE FROM films_genres WHERE film_id = ?;";
 
-    private static final String GET_MPA_ID = "SELECT mpa_rating_id FROM films WHERE id = ?;";
-    private static final String GET_MPA_NAME = "SELECT name FROM mpa_ratings WHERE id = ?;";
-
-    private static final String ADD_USER_LIKE = "INSERT INTO films_likes (film_id, user_id) VALUES (?, ?);";
+    private static final String FILM_EXISTS = "SELECT EXISTS (SELECT 1 FROM films WHERE id = ?);";
+    private static final String ADD_USER_LIKE = "INSERT INTO films_likes (film_id, user_id) SELECT ?, ? " +
+            "WHERE NOT EXISTS (SELECT 1 FROM films_likes WHERE film_id = ? AND user_id = ?);";
     private static final String DELETE_USER_LIKE = "DELETE FROM films_likes WHERE film_id = ? " +
             "AND user_id = ?;";
+    private static final String CHANGE_LIKES_COUNT = "UPDATE films SET likes_count = likes_count + ? WHERE id = ?;";
 
 
-    public FilmDbStorage(JdbcTemplate jdbc, FilmRowMapper mapper, MpaStorage mpaStorage, GenreStorage genreStorage) {
+    public FilmDbStorage(JdbcTemplate jdbc, FilmRowMapper mapper, MpaStorage mpaStorage, GenreStorage genreStorage,
+                         FilmWithGenresExtractor filmWithGenresExtractor, FilmPopularityIndex popularityIndex,
+                         FilmLikesWriteBuffer likesWriteBuffer, PlatformTransactionManager transactionManager) {
         super(jdbc, mapper);
         this.mpaStorage = mpaStorage;
         this.genreStorage = genreStorage;
+        this.filmWithGenresExtractor = filmWithGenresExtractor;
+        this.popularityIndex = popularityIndex;
+        this.likesWriteBuffer = likesWriteBuffer;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.readOnlyTransactionTemplate = new TransactionTemplate(transactionManager);
+        this.readOnlyTransactionTemplate.setReadOnly(true);
     }
 
     /**
-     * Возвращает фильм по id из БД
+     * Возвращает фильм по id из БД.
+     * Фильм, его MPA рейтинг и жанры загружаются одним запросом.
      */
     @Override
     public Film getFilmById(int id) {
-        Film film = findOne(GET_FILM_BY_ID, id).orElseThrow(() -> {
+        List<Film> films = jdbc.query(GET_FILM_BY_ID, filmWithGenresExtractor, id);
+        if (films == null || films.isEmpty()) {
             String filmNotFound = "Фильм с id = " + id + " не найден";
             log.error(filmNotFound);
-            return new NotFoundException(filmNotFound);
-        });
-        enrichFilmByAdditionalInfo(film);
-        return film;
+            throw new NotFoundException(filmNotFound);
+        }
+        return films.get(0);
+    }
+
+    /**
+     * Проверяет наличие фильма одним запросом по первичному ключу, без MPA рейтинга и жанров
+     */
+    @Override
+    public boolean existsFilm(int id) {
+        return Boolean.TRUE.equals(jdbc.queryForObject(FILM_EXISTS, Boolean.class, id));
     }
 
     /**
@@ -80,16 +132,56 @@ public class FilmDbStorage extends BaseStorage<Film> implements FilmStorage {
      */
     @Override
     public List<Film> getFilms() {
-        return findMany(GET_FILMS).stream().peek(this::enrichFilmByAdditionalInfo).toList();
+        return enrichFilmsByAdditionalInfo(findMany(GET_FILMS));
+    }
+
+    /**
+     * Возвращает из БД страницу фильмов с id больше afterId.
+     * Поиск идёт по первичному ключу, поэтому стоимость запроса не зависит от номера страницы.
+     */
+    @Override
+    public List<Film> getFilms(int afterId, int limit) {
+        return enrichFilmsByAdditionalInfo(findMany(GET_FILMS_PAGE, afterId, limit));
     }
 
     /**
-     * Добавляет новый фильм в БД
+     * Последовательно передаёт все фильмы из БД пачками по STREAM_BATCH_SIZE.
+     * Фильмы читаются однонаправленным курсором с fetch size, жанры загружаются одним запросом на пачку,
+     * поэтому в памяти одновременно находится только одна пачка фильмов.
+     * Выгрузка идёт в транзакции только для чтения: жанры читаются через то же соединение, что и курсор,
+     * поэтому одна выгрузка занимает одно соединение из пула и видит один снимок данных.
+     */
+    @Override
+    public void streamFilms(Consumer<List<Film>> batchConsumer) {
+        readOnlyTransactionTemplate.executeWithoutResult(status -> {
+            List<Film> batch = new ArrayList<>(STREAM_BATCH_SIZE);
+            jdbc.query(connection -> {
+                PreparedStatement statement = connection.prepareStatement(GET_FILMS, ResultSet.TYPE_FORWARD_ONLY,
+                        ResultSet.CONCUR_READ_ONLY);
+                statement.setFetchSize(STREAM_BATCH_SIZE);
+                return statement;
+            }, resultSet -> {
+                batch.add(mapper.mapRow(resultSet, batch.size()));
+                if (batch.size() == STREAM_BATCH_SIZE) {
+                    batchConsumer.accept(enrichFilmsByAdditionalInfo(new ArrayList<>(batch)));
+                    batch.clear();
+                }
+            });
+            if (!batch.isEmpty()) {
+                batchConsumer.accept(enrichFilmsByAdditionalInfo(batch));
+            }
+        });
+    }
+
+    /**
+     * Добавляет новый фильм в БД.
+     * Строка фильма и его жанры записываются в одной транзакции, жанры - одним пакетным запросом.
      *
      * @param newFilm объект фильма, который нужно добавить
      * @return созданный фильм с присвоенным ID
      */
     @Override
+    @Transactional
     public Film addFilm(Film newFilm) {
         if (newFilm == null) {
             String filmNotFound = "Фильм для добавления не найден";
@@ -108,25 +200,83 @@ public class FilmDbStorage extends BaseStorage<Film> implements FilmStorage {
                     newFilm.getReleaseDate(), newFilm.getMpa().getId());
         }
         newFilm.setId(id);
-
         log.info("Фильму {} присвоен id {}", newFilm.getName(), newFilm.getId());
-        if (newFilm.getGenres() != null && !newFilm.getGenres().isEmpty()) {
-            newFilm.getGenres().forEach(genre -> insert(ADD_GENRE, newFilm.getId(), genre.getId()));
-        }
+
+        addFilmsGenres(List.of(newFilm));
+        afterCommit(() -> popularityIndex.addFilm(id));
 
         enrichFilmByAdditionalInfo(newFilm);
         return newFilm;
     }
 
+    /**
+     * Добавляет несколько новых фильмов в БД в одной транзакции.
+     * Строки фильмов записываются одним пакетным запросом с получением сгенерированных id,
+     * жанры всех фильмов - вторым пакетным запросом.
+     *
+     * @param newFilms фильмы, которые нужно добавить
+     * @return добавленные фильмы с присвоенными ID в том же порядке
+     */
+    @Override
+    @Transactional
+    public List<Film> addFilms(List<Film> newFilms) {
+        if (newFilms.isEmpty()) {
+            return newFilms;
+        }
+        newFilms.forEach(film -> {
+            checkFilmMpaValid(film);
+            checkFilmGenresValid(film);
+        });
+
+        GeneratedKeyHolder keyHolder = new GeneratedKeyHolder();
+        jdbc.batchUpdate(connection -> connection.prepareStatement(ADD_FILM, new String[]{"id"}),
+                new BatchPreparedStatementSetter() {
+                    @Override
+                    public void setValues(PreparedStatement ps, int i) throws SQLException {
+                        Film film = newFilms.get(i);
+                        ps.setString(1, film.getName());
+                        ps.setString(2, film.getDescription());
+                        ps.setInt(3, film.getDuration());
+                        ps.setObject(4, film.getReleaseDate());
+                        if (film.getMpa() == null) {
+                            ps.setNull(5, Types.INTEGER);
+                        } else {
+                            ps.setInt(5, film.getMpa().getId());
+                        }
+                    }
+
+                    @Override
+                    public int getBatchSize() {
+                        return newFilms.size();
+                    }
+                }, keyHolder);
+
+        List<Map<String, Object>> keys = keyHolder.getKeyList();
+        if (keys.size() != newFilms.size()) {
+            throw new InternalServerException("Не удалось сохранить данные");
+        }
+        for (int i = 0; i < newFilms.size(); i++) {
+            newFilms.get(i).setId(((Number) keys.get(i).values().iterator().next()).intValue());
+        }
+
+        addFilmsGenres(newFilms);
+        List<Integer> addedIds = newFilms.stream().map(Film::getId).toList();
+        afterCommit(() -> addedIds.forEach(popularityIndex::addFilm));
+        log.info("Пакетно добавлено фильмов: {}", newFilms.size());
+        return newFilms;
+    }
+
     /**
      * Обновляет фильм.
      * Проверяет поля переданного фильма на соответствие.
      * Если всё хорошо и переданный фильм существует в контроллере, то создаёт копию и сохраняет в контроллер.
+     * Строка фильма и его жанры обновляются в одной транзакции, жанры - одним пакетным запросом.
      *
      * @param updatedFilm объект фильма, который нужно обновить
      * @return копия обновлённого фильма
      */
     @Override
+    @Transactional
     public Film updateFilm(Film updatedFilm) {
         try {
             checkFilmMpaValid(updatedFilm);
@@ -142,8 +292,7 @@ public class FilmDbStorage extends BaseStorage<Film> implements FilmStorage {
 
             if (updatedFilm.getGenres() != null && !updatedFilm.getGenres().isEmpty()) {
                 update(DELETE_GENRES, updatedFilm.getId());
-                updatedFilm.getGenres().forEach(genre ->
-                        update(ADD_GENRE, updatedFilm.getId(), genre.getId()));
+                addFilmsGenres(List.of(updatedFilm));
             }
             enrichFilmByAdditionalInfo(updatedFilm);
             log.info("Фильм {} обновлён в хранилище", updatedFilm.getId());
@@ -155,36 +304,84 @@ public class FilmDbStorage extends BaseStorage<Film> implements FilmStorage {
     }
 
     /**
-     * Добавляет лайк от пользователя.
-     * Делает запись в БД.
+     * Добавляет лайк от пользователя, если его ещё нет.
+     * Вставка и проверка наличия идут одним запросом, а в той же транзакции увеличивается счётчик лайков фильма.
+     * При включённой отложенной записи лайк ставится в буфер и попадает в БД со следующим пакетом.
+     * Транзакция открывается только при записи сразу, чтобы ожидание места в буфере не занимало соединение с БД.
+     * Возвращает false, если лайк уже был: повторный запрос ничего не меняет.
+     * Несуществующий фильм или пользователь отсекаются внешними ключами.
      */
-    public void addLike(int filmId, int userId) {
-        try {
-            update(ADD_USER_LIKE, filmId, userId);
-        } catch (InternalServerException exception) {
-            log.error("Не удалось добавить лайк для фильма {} от пользователя {}", filmId, userId);
-            throw exception;
+    @Override
+    public boolean addLike(int filmId, int userId) {
+        if (likesWriteBuffer.isEnabled()) {
+            return likesWriteBuffer.like(filmId, userId);
         }
+        return Boolean.TRUE.equals(transactionTemplate.execute(status ->
+                popularityIndex.writeLikes(filmId, () -> writeLike(filmId, userId) ? 1 : 0) != 0));
     }
 
     /**
      * Удаляет лайк от пользователя.
-     * Делает запись в БД.
+     * Делает запись в БД и в той же транзакции уменьшает счётчик лайков фильма.
+     * При включённой отложенной записи удаление ставится в буфер и попадает в БД со следующим пакетом.
+     * Возвращает false, если лайка не было: повторный запрос ничего не меняет.
      */
-    public void removeLike(int filmId, int userId) {
-        try {
-            update(DELETE_USER_LIKE, filmId, userId);
-        } catch (InternalServerException exception) {
-            log.error("Не удалось удалить лайк для фильма {} от пользователя {}", filmId, userId);
-            throw exception;
+    @Override
+    public boolean removeLike(int filmId, int userId) {
+        if (likesWriteBuffer.isEnabled()) {
+            return likesWriteBuffer.unlike(filmId, userId);
         }
+        return Boolean.TRUE.equals(transactionTemplate.execute(status ->
+                popularityIndex.writeLikes(filmId, () -> -deleteLike(filmId, userId)) != 0));
     }
 
     /**
-     * Возвращает ТОП фильмов по числу лайков
+     * Возвращает ТОП фильмов по числу лайков.
+     * Если индекс популярности в памяти выключен, то фильмы читаются из БД по индексу на счётчике лайков.
      */
+    @Override
     public List<Film> getMostPopularFilms(int count) {
-        return findMany(GET_POPULAR_FILMS, count).stream().peek(this::enrichFilmByAdditionalInfo).toList();
+        if (!popularityIndex.isEnabled()) {
+            return enrichFilmsByAdditionalInfo(findMany(GET_POPULAR_FILMS, count));
+        }
+        return getMostPopularFilmsFromIndex(count);
+    }
+
+    /**
+     * Возвращает ТОП фильмов из индекса популярности в памяти.
+     * Порядок фильмов берётся из индекса, из БД загружаются только сами фильмы.
+     * Фильмы, которых не нашлось в БД, например, ещё не закоммиченные, пропускаются только в этом ответе:
+     * индекс меняется лишь закоммиченными записями. Вместо пропущенных из индекса берутся следующие фильмы.
+     */
+    private List<Film> getMostPopularFilmsFromIndex(int count) {
+        Map<Integer, Film> films = new HashMap<>();
+        Set<Integer> checkedFilmIds = new HashSet<>();
+        int requested = count;
+        while (true) {
+            List<Integer> topFilmIds = popularityIndex.getTopFilmIds(requested);
+            films.putAll(getFilmsByIds(topFilmIds.stream().filter(checkedFilmIds::add).toList()));
+            List<Film> topFilms = topFilmIds.stream()
+                    .map(films::get)
+                    .filter(Objects::nonNull)
+                    .limit(count)
+                    .toList();
+            if (topFilms.size() == count || topFilmIds.size() < requested) {
+                return enrichFilmsByAdditionalInfo(topFilms);
+            }
+            requested += count - topFilms.size();
+        }
+    }
+
+    /**
+     * Загружает фильмы по набору id в виде мапы id фильма - фильм
+     */
+    private Map<Integer, Film> getFilmsByIds(Collection<Integer> filmIds) {
+        Map<Integer, Film> films = new HashMap<>();
+        for (List<Integer> chunk : chunks(filmIds)) {
+            String query = String.format(GET_FILMS_BY_IDS, inPlaceholders(chunk.size()));
+            findMany(query, chunk.toArray()).forEach(film -> films.put(film.getId(), film));
+        }
+        return films;
     }
 
     /**
@@ -196,76 +393,136 @@ public class FilmDbStorage extends BaseStorage<Film> implements FilmStorage {
             log.error(filmNotFound);
             throw new NotFoundException(filmNotFound);
         }
-        film.setGenres(new LinkedHashSet<>(getFilmGenres(film.getId())));
-        film.setMpa(getFilmMpaRating(film.getId()));
+        enrichFilmsByAdditionalInfo(List.of(film));
+        return film;
+    }
 
-        if (film.getLikes() == null) {
-            film.setLikes(new HashSet<>());
+    /**
+     * Обогащает список фильмов дополнительной информацией.
+     * Id жанров всех фильмов загружаются одним запросом на каждые IN_CHUNK_SIZE фильмов,
+     * названия жанров берутся из справочника, MPA рейтинг уже присоединён к строке фильма.
+     */
+    private List<Film> enrichFilmsByAdditionalInfo(List<Film> films) {
+        if (films.isEmpty()) {
+            return films;
         }
+        Map<Integer, Set<Genre>> filmsGenres = getFilmsGenres(films.stream().map(Film::getId).toList());
 
-        return film;
+        films.forEach(film -> {
+            film.setGenres(filmsGenres.getOrDefault(film.getId(), new LinkedHashSet<>()));
+            if (film.getLikes() == null) {
+                film.setLikes(new IntHashSet());
+            }
+        });
+        return films;
     }
 
     /**
-     * Формирует список жанров фильма
+     * Формирует жанры для набора фильмов в виде мапы id фильма - упорядоченные по id жанры
      */
-    private List<Genre> getFilmGenres(int filmId) {
-        List<Integer> genreIdList = jdbc.queryForList(GET_GENRES_ID, Integer.class, filmId);
-
-        if (genreIdList.isEmpty()) {
-            return new ArrayList<>();
+    private Map<Integer, Set<Genre>> getFilmsGenres(Collection<Integer> filmIds) {
+        Map<Integer, Set<Genre>> filmsGenres = new HashMap<>();
+        for (List<Integer> chunk : chunks(filmIds)) {
+            String query = String.format(GET_FILMS_GENRES, inPlaceholders(chunk.size()));
+            jdbc.query(query, resultSet -> {
+                Genre genre = genreStorage.getGenreById(resultSet.getInt("genre_id"));
+                filmsGenres.computeIfAbsent(resultSet.getInt("film_id"), filmId -> new LinkedHashSet<>())
+                        .add(genre);
+            }, chunk.toArray());
         }
-
-        return genreIdList.stream()
-                .map(genreId -> {
-                    Genre genre = new Genre();
-                    genre.setId(genreId);
-                    return genre;
-                }).peek(genre -> {
-                    String genreName = jdbc.queryForObject(GET_GENRE_NAME, String.class, genre.getId());
-                    genre.setName(genreName);
-                })
-                .sorted(Comparator.comparing(Genre::getId))
-                .toList();
+        return filmsGenres;
     }
 
     /**
-     * Формирует объект MPA рейтинга
+     * Записывает жанры фильмов в БД одним пакетным запросом
      */
-    private Mpa getFilmMpaRating(int filmId) {
-        Integer mpaRatingId = jdbc.queryForObject(GET_MPA_ID, Integer.class, filmId);
-        if (mpaRatingId == null) {
-            return null;
+    private void addFilmsGenres(List<Film> films) {
+        List<Object[]> batchArgs = films.stream()
+                .filter(film -> film.getGenres() != null)
+                .flatMap(film -> film.getGenres().stream().map(genre -> new Object[]{film.getId(), genre.getId()}))
+                .toList();
+        if (!batchArgs.isEmpty()) {
+            jdbc.batchUpdate(ADD_GENRE, batchArgs);
         }
-        String mpaName = jdbc.queryForObject(GET_MPA_NAME, String.class, mpaRatingId);
-        return new Mpa(mpaRatingId, mpaName);
     }
 
     /**
-     * Проверяет, что MPA рейтинг фильма существует
+     * Проверяет, что MPA рейтинг фильма существует, и подставляет его название из справочника
      */
     private void checkFilmMpaValid(Film film) {
         Mpa filmMpa = film.getMpa();
         if (filmMpa == null) {
             return;
         }
-        if (!mpaStorage.getMpaList().contains(filmMpa)) {
-            throw new NotFoundException("MPA рейтинг " + filmMpa.getId() + " не найден");
-        }
+        film.setMpa(mpaStorage.getMpaById(filmMpa.getId()));
     }
 
     /**
-     * Проверяет, что каждый жанр фильма существует
+     * Проверяет, что каждый жанр фильма существует, и подставляет названия жанров из справочника
      */
     private void checkFilmGenresValid(Film film) {
         Set<Genre> filmGenres = film.getGenres();
         if (filmGenres == null || filmGenres.isEmpty()) {
             return;
         }
-        filmGenres.forEach(genre -> {
-            if (!genreStorage.getGenres().contains(genre)) {
-                throw new NotFoundException("MPA рейтинг " + genre.getId() + " не найден");
+        Set<Genre> storedGenres = new LinkedHashSet<>();
+        filmGenres.forEach(genre -> storedGenres.add(genreStorage.getGenreById(genre.getId())));
+        film.setGenres(storedGenres);
+    }
+
+    /**
+     * Сразу записывает лайк в БД и увеличивает счётчик лайков фильма
+     */
+    private boolean writeLike(int filmId, int userId) {
+        try {
+            if (jdbc.update(ADD_USER_LIKE, filmId, userId, filmId, userId) == 0) {
+                log.debug("Лайк пользователя {} фильму {} уже поставлен", userId, filmId);
+                return false;
+            }
+            update(CHANGE_LIKES_COUNT, 1, filmId);
+            return true;
+        } catch (DuplicateKeyException exception) {
+            log.debug("Лайк пользователя {} фильму {} поставлен параллельным запросом", userId, filmId);
+            return false;
+        } catch (InternalServerException exception) {
+            log.error("Не удалось добавить лайк для фильма {} от пользователя {}", filmId, userId);
+            throw exception;
+        }
+    }
+
+    /**
+     * Сразу удаляет лайк из БД и уменьшает счётчик лайков фильма. Возвращает число удалённых лайков
+     */
+    private int deleteLike(int filmId, int userId) {
+        try {
+            int likesDeleted = jdbc.update(DELETE_USER_LIKE, filmId, userId);
+            if (likesDeleted == 0) {
+                log.debug("Лайка пользователя {} у фильма {} нет", userId, filmId);
+                return 0;
+            }
+            update(CHANGE_LIKES_COUNT, -likesDeleted, filmId);
+            return likesDeleted;
+        } catch (InternalServerException exception) {
+            log.error("Не удалось удалить лайк для фильма {} от пользователя {}", filmId, userId);
+            throw exception;
+        }
+    }
+
+    /**
+     * Применяет изменение индекса популярности после фиксации текущей транзакции.
+     * При откате транзакции индекс не меняется, поэтому в нём не появляются фильмы и лайки, которых нет в БД.
+     * Вне транзакции изменение применяется сразу
+     */
+    private static void afterCommit(Runnable indexChange) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            indexChange.run();
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                indexChange.run();
             }
         });
     }
-}
\ No newline at end of file
+}
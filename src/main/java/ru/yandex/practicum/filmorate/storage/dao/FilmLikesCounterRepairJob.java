@@ -0,0 +1,51 @@
+package ru.yandex.practicum.filmorate.storage.dao;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+/**
+ * Восстанавливает счётчики лайков films.likes_count по таблице films_likes.
+ * Счётчики могут разойтись с лайками, например, при каскадном удалении пользователей
+ * или ручных правках в БД. Запускается по расписанию filmorate.popularity.repair-cron.
+ */
+@Component
+public class FilmLikesCounterRepairJob {
+    private static final Logger log = LoggerFactory.getLogger(FilmLikesCounterRepairJob.class);
+
+    private static final String REPAIR_LIKES_COUNT = "UPDATE films f SET likes_count = " +
+            "(SELECT COUNT(*) FROM films_likes fl WHERE fl.film_id = f.id) " +
+            "WHERE likes_count <> (SELECT COUNT(*) FROM films_likes fl WHERE fl.film_id = f.id);";
+
+    private final JdbcTemplate jdbc;
+    private final FilmPopularityIndex popularityIndex;
+    private final FilmLikesWriteBuffer likesWriteBuffer;
+
+    public FilmLikesCounterRepairJob(JdbcTemplate jdbc, FilmPopularityIndex popularityIndex,
+                                     FilmLikesWriteBuffer likesWriteBuffer) {
+        this.jdbc = jdbc;
+        this.popularityIndex = popularityIndex;
+        this.likesWriteBuffer = likesWriteBuffer;
+    }
+
+    /**
+     * Пересчитывает разошедшиеся счётчики лайков и заново заполняет индекс популярности.
+     * Перед пересчётом дописывает в БД буфер отложенной записи лайков и не принимает новые лайки до его конца,
+     * иначе заполненный заново индекс потерял бы ещё не записанные лайки.
+     *
+     * @return количество исправленных фильмов
+     */
+    @Scheduled(cron = "${filmorate.popularity.repair-cron:0 0 4 * * *}")
+    public int repair() {
+        return likesWriteBuffer.flushAndRun(() -> {
+            int filmsRepaired = jdbc.update(REPAIR_LIKES_COUNT);
+            if (filmsRepaired > 0) {
+                log.warn("Счётчики лайков исправлены у {} фильмов", filmsRepaired);
+            }
+            popularityIndex.rebuild();
+            return filmsRepaired;
+        });
+    }
+}
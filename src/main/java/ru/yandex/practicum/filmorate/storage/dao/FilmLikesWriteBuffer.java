@@ -0,0 +1,470 @@
+package ru.yandex.practicum.filmorate.storage.dao;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Supplier;
+
+/**
+ * Буфер отложенной записи лайков.
+ * Лайки и их удаления копятся в памяти и пишутся в БД пакетами: когда в буфере набирается batch-size изменений
+ * или раз в flush-interval-ms. Изменения одной пары фильм-пользователь схлопываются: лайк с последующим удалением
+ * взаимно уничтожаются и в БД не попадают. Если буфер заполнен до capacity, то запрос ждёт записи пакета.
+ * Индекс популярности меняется сразу, поэтому ТОП фильмов видит ещё не записанные лайки.
+ * Пакет забирается из буфера под блокировкой, а пишется в БД без неё, поэтому запись не задерживает новые лайки.
+ * Не записанный из-за недоступности БД пакет возвращается в буфер, лайки к удалённым фильмам и пользователям
+ * отбрасываются. При остановке приложения буфер дописывается в БД, при аварийном завершении незаписанные
+ * лайки теряются.
+ * Включается настройкой filmorate.likes.write-behind.enabled и требует индекса популярности в памяти.
+ */
+@Component
+public class FilmLikesWriteBuffer {
+    private static final Logger log = LoggerFactory.getLogger(FilmLikesWriteBuffer.class);
+
+    private static final String GET_LIKE_STATE = "SELECT EXISTS (SELECT 1 FROM films WHERE id = ?) AS film_exists, " +
+            "EXISTS (SELECT 1 FROM users WHERE id = ?) AS user_exists, " +
+            "EXISTS (SELECT 1 FROM films_likes WHERE film_id = ? AND user_id = ?) AS liked;";
+    private static final String ADD_USER_LIKE = "INSERT INTO films_likes (film_id, user_id) SELECT ?, ? " +
+            "WHERE NOT EXISTS (SELECT 1 FROM films_likes WHERE film_id = ? AND user_id = ?);";
+    private static final String DELETE_USER_LIKE = "DELETE FROM films_likes WHERE film_id = ? " +
+            "AND user_id = ?;";
+    private static final String CHANGE_LIKES_COUNT = "UPDATE films SET likes_count = likes_count + ? WHERE id = ?;";
+
+    private final JdbcTemplate jdbc;
+    private final TransactionTemplate transactionTemplate;
+    private final FilmPopularityIndex popularityIndex;
+    private final boolean enabled;
+    private final int capacity;
+    private final int batchSize;
+    private final long flushIntervalNanos;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition flushRequested = lock.newCondition();
+    private final Condition notFull = lock.newCondition();
+    private final Condition flushDone = lock.newCondition();
+    private Map<Long, PendingLike> pending = new LinkedHashMap<>();
+    private Map<Long, PendingLike> inFlight = Map.of();
+    private boolean flushing;
+    private long flushes;
+    private boolean running;
+    private Thread flusher;
+
+    public FilmLikesWriteBuffer(JdbcTemplate jdbc, PlatformTransactionManager transactionManager,
+                                FilmPopularityIndex popularityIndex,
+                                @Value("${filmorate.likes.write-behind.enabled:false}") boolean enabled,
+                                @Value("${filmorate.likes.write-behind.capacity:10000}") int capacity,
+                                @Value("${filmorate.likes.write-behind.batch-size:500}") int batchSize,
+                                @Value("${filmorate.likes.write-behind.flush-interval-ms:200}") long flushIntervalMs) {
+        if (enabled && !popularityIndex.isEnabled()) {
+            throw new IllegalStateException("Отложенная запись лайков требует индекса популярности в памяти");
+        }
+        if (capacity <= 0 || batchSize <= 0 || flushIntervalMs <= 0) {
+            throw new IllegalArgumentException("Размеры буфера лайков и интервал записи должны быть положительными");
+        }
+        this.jdbc = jdbc;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.popularityIndex = popularityIndex;
+        this.enabled = enabled;
+        this.capacity = capacity;
+        this.batchSize = Math.min(batchSize, capacity);
+        this.flushIntervalNanos = TimeUnit.MILLISECONDS.toNanos(flushIntervalMs);
+    }
+
+    /**
+     * Возвращает, пишутся ли лайки через буфер
+     */
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Запускает фоновую запись буфера в БД
+     */
+    @PostConstruct
+    public void start() {
+        if (!enabled) {
+            return;
+        }
+        lock.lock();
+        try {
+            running = true;
+            flusher = new Thread(this::runFlusher, "film-likes-flusher");
+            flusher.setDaemon(true);
+            flusher.start();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Останавливает фоновую запись и дописывает в БД всё, что осталось в буфере
+     */
+    @PreDestroy
+    public void shutdown() throws InterruptedException {
+        Thread stoppedFlusher;
+        lock.lock();
+        try {
+            running = false;
+            flushRequested.signal();
+            stoppedFlusher = flusher;
+        } finally {
+            lock.unlock();
+        }
+        if (stoppedFlusher != null) {
+            stoppedFlusher.join();
+        }
+
+        lock.lock();
+        try {
+            int drained = pending.size();
+            drainLocked();
+            if (!pending.isEmpty()) {
+                log.error("При остановке в БД не записано {} изменений лайков из буфера", pending.size());
+            } else if (drained > 0) {
+                log.info("При остановке в БД записано {} изменений лайков из буфера", drained);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Ставит в буфер лайк от пользователя.
+     * Возвращает false, если лайк уже есть в БД или в буфере.
+     * Несуществующий фильм или пользователь отсекаются сразу, как и внешними ключами при записи в БД.
+     */
+    public boolean like(int filmId, int userId) {
+        return change(filmId, userId, true);
+    }
+
+    /**
+     * Ставит в буфер удаление лайка от пользователя.
+     * Возвращает false, если лайка нет ни в БД, ни в буфере.
+     */
+    public boolean unlike(int filmId, int userId) {
+        return change(filmId, userId, false);
+    }
+
+    /**
+     * Возвращает число ещё не записанных в БД изменений лайков, включая записываемый сейчас пакет
+     */
+    public int getPendingCount() {
+        lock.lock();
+        try {
+            return pending.size() + inFlight.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Записывает в БД всё, что накопилось в буфере.
+     * Если БД недоступна, то не записанные изменения остаются в буфере
+     */
+    public void flush() {
+        lock.lock();
+        try {
+            drainLocked();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Записывает буфер в БД и выполняет action, не принимая новых изменений лайков до его завершения.
+     * Нужен операциям, которые читают лайки из БД и должны видеть все поставленные лайки.
+     */
+    public <T> T flushAndRun(Supplier<T> action) {
+        if (!enabled) {
+            return action.get();
+        }
+        lock.lock();
+        try {
+            drainLocked();
+            return action.get();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private boolean change(int filmId, int userId, boolean liked) {
+        // Изменения применяются к индексу сразу, поэтому он должен быть заполнен из БД до них
+        popularityIndex.ensureLoaded();
+        long key = key(filmId, userId);
+        while (true) {
+            long probedAfterFlushes;
+            lock.lock();
+            try {
+                PendingLike pendingLike = findPendingLocked(key);
+                if (pendingLike != null) {
+                    return applyLocked(key, filmId, userId, pendingLike.liked(), liked);
+                }
+                probedAfterFlushes = flushes;
+            } finally {
+                lock.unlock();
+            }
+
+            LikeState state = jdbc.queryForObject(GET_LIKE_STATE, (resultSet, rowNum) -> new LikeState(
+                    resultSet.getBoolean("film_exists") && resultSet.getBoolean("user_exists"),
+                    resultSet.getBoolean("liked")), filmId, userId, filmId, userId);
+            if (state == null || !state.participantsExist()) {
+                if (liked) {
+                    throw new DataIntegrityViolationException("Фильм " + filmId + " или пользователь " + userId +
+                            " не найден");
+                }
+                return false;
+            }
+
+            lock.lock();
+            try {
+                awaitCapacityLocked();
+                PendingLike pendingLike = findPendingLocked(key);
+                if (pendingLike != null) {
+                    return applyLocked(key, filmId, userId, pendingLike.liked(), liked);
+                }
+                if (flushes == probedAfterFlushes) {
+                    return applyLocked(key, filmId, userId, state.liked(), liked);
+                }
+                // Пока читали состояние, буфер записали в БД - прочитанное могло устареть
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    /**
+     * Ищет изменение лайка в буфере, а затем в записываемом пакете: после записи пакета лайк в БД будет
+     * в состоянии из пакета, поэтому читать его из БД до конца записи нельзя
+     */
+    private PendingLike findPendingLocked(long key) {
+        PendingLike pendingLike = pending.get(key);
+        return pendingLike != null ? pendingLike : inFlight.get(key);
+    }
+
+    private boolean applyLocked(long key, int filmId, int userId, boolean currentlyLiked, boolean liked) {
+        if (currentlyLiked == liked) {
+            return false;
+        }
+        if (pending.remove(key) == null) {
+            pending.put(key, new PendingLike(filmId, userId, liked));
+            if (pending.size() >= batchSize) {
+                flushRequested.signal();
+            }
+        }
+        popularityIndex.changeLikes(filmId, liked ? 1 : -1);
+        return true;
+    }
+
+    private void awaitCapacityLocked() {
+        while (pending.size() >= capacity) {
+            flushRequested.signal();
+            try {
+                if (notFull.awaitNanos(flushIntervalNanos) <= 0 && pending.size() >= capacity
+                        && !flushLocked()) {
+                    // Фоновая запись не успевает или не запущена, а пакет, записанный самим запросом,
+                    // вернулся в буфер: БД недоступна, и ждать места в буфере бессмысленно
+                    throw new IllegalStateException("Буфер лайков заполнен, а записать его в БД не удалось");
+                }
+            } catch (InterruptedException exception) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Ожидание места в буфере лайков прервано", exception);
+            }
+        }
+    }
+
+    private void runFlusher() {
+        lock.lock();
+        try {
+            boolean written = true;
+            while (running) {
+                // После неудачной записи ждём интервал и при полном пакете, чтобы не повторять запись без пауз
+                if (!written || pending.size() < batchSize) {
+                    flushRequested.awaitNanos(flushIntervalNanos);
+                }
+                written = flushLocked();
+            }
+        } catch (InterruptedException exception) {
+            Thread.currentThread().interrupt();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Записывает буфер, пока он не опустеет или пока запись не вернёт изменения в буфер
+     */
+    private void drainLocked() {
+        boolean written = flushLocked();
+        while (written && !pending.isEmpty()) {
+            written = flushLocked();
+        }
+    }
+
+    /**
+     * Дожидается записи пакета, начатой другим потоком, и записывает накопленный буфер.
+     * На время записи в БД блокировка отпускается. Возвращает false, если часть изменений вернулась в буфер.
+     * Вызывается под блокировкой, взятой один раз.
+     */
+    private boolean flushLocked() {
+        while (flushing) {
+            flushDone.awaitUninterruptibly();
+        }
+        if (pending.isEmpty()) {
+            return true;
+        }
+        inFlight = pending;
+        pending = new LinkedHashMap<>();
+        flushing = true;
+        List<PendingLike> batch = new ArrayList<>(inFlight.values());
+        List<PendingLike> requeued = new ArrayList<>();
+        List<PendingLike> lost = new ArrayList<>();
+        lock.unlock();
+        try {
+            writeBatch(batch, requeued, lost);
+        } finally {
+            lock.lock();
+            requeued.forEach(this::requeueLocked);
+            lost.forEach(this::discardLocked);
+            inFlight = Map.of();
+            flushing = false;
+            flushes++;
+            flushDone.signalAll();
+            notFull.signalAll();
+        }
+        log.debug("В БД записано {} изменений лайков", batch.size() - requeued.size() - lost.size());
+        return requeued.isEmpty();
+    }
+
+    /**
+     * Пишет пакет в БД. Если пакет отклонён внешними ключами, то пишет изменения по одному:
+     * отклонённые попадают в lost. Изменения, не записанные из-за недоступности БД, попадают в requeued
+     */
+    private void writeBatch(List<PendingLike> batch, List<PendingLike> requeued, List<PendingLike> lost) {
+        try {
+            applyCorrections(transactionTemplate.execute(status -> write(batch)));
+        } catch (DataIntegrityViolationException exception) {
+            log.warn("Пакет из {} изменений лайков не записан, записываем по одному", batch.size(), exception);
+            for (PendingLike like : batch) {
+                try {
+                    applyCorrections(transactionTemplate.execute(status -> write(List.of(like))));
+                } catch (DataIntegrityViolationException likeException) {
+                    log.error("Изменение лайка пользователя {} фильму {} потеряно", like.userId(), like.filmId(),
+                            likeException);
+                    lost.add(like);
+                } catch (RuntimeException likeException) {
+                    requeued.add(like);
+                }
+            }
+            if (!requeued.isEmpty()) {
+                log.warn("{} изменений лайков не записаны и возвращены в буфер", requeued.size());
+            }
+        } catch (RuntimeException exception) {
+            log.warn("Пакет из {} изменений лайков не записан и возвращён в буфер", batch.size(), exception);
+            requeued.addAll(batch);
+        }
+    }
+
+    /**
+     * Возвращает не записанное изменение в буфер.
+     * Если за время записи лайк изменили обратно, то изменения взаимно уничтожаются
+     */
+    private void requeueLocked(PendingLike like) {
+        long key = key(like.filmId(), like.userId());
+        if (pending.remove(key) == null) {
+            pending.put(key, like);
+        }
+    }
+
+    /**
+     * Отбрасывает изменение, отклонённое БД, и откатывает его в индексе популярности.
+     * Если за время записи лайк изменили обратно, то в БД и в индексе уже нужное состояние
+     */
+    private void discardLocked(PendingLike like) {
+        if (pending.remove(key(like.filmId(), like.userId())) == null) {
+            popularityIndex.changeLikes(like.filmId(), like.liked() ? -1 : 1);
+        }
+    }
+
+    /**
+     * Пишет пакет изменений лайков и счётчиков лайков фильмов.
+     * Возвращает расхождения по фильмам между тем, что уже учтено в индексе популярности, и тем,
+     * что изменилось в БД, например, если лайк параллельно изменили в обход буфера.
+     */
+    private Map<Integer, Integer> write(List<PendingLike> batch) {
+        List<PendingLike> likes = batch.stream().filter(PendingLike::liked).toList();
+        List<PendingLike> unlikes = batch.stream().filter(like -> !like.liked()).toList();
+        int[] inserted = batchUpdate(ADD_USER_LIKE, likes.stream()
+                .map(like -> new Object[]{like.filmId(), like.userId(), like.filmId(), like.userId()})
+                .toList());
+        int[] deleted = batchUpdate(DELETE_USER_LIKE, unlikes.stream()
+                .map(like -> new Object[]{like.filmId(), like.userId()})
+                .toList());
+
+        Map<Integer, Integer> deltas = new HashMap<>();
+        Map<Integer, Integer> corrections = new HashMap<>();
+        collectDeltas(likes, inserted, 1, deltas, corrections);
+        collectDeltas(unlikes, deleted, -1, deltas, corrections);
+        batchUpdate(CHANGE_LIKES_COUNT, deltas.entrySet().stream()
+                .filter(delta -> delta.getValue() != 0)
+                .map(delta -> new Object[]{delta.getValue(), delta.getKey()})
+                .toList());
+        return corrections;
+    }
+
+    private int[] batchUpdate(String query, List<Object[]> batchArgs) {
+        return batchArgs.isEmpty() ? new int[0] : jdbc.batchUpdate(query, batchArgs);
+    }
+
+    private void collectDeltas(List<PendingLike> changes, int[] rowsAffected, int expectedDelta,
+                               Map<Integer, Integer> deltas, Map<Integer, Integer> corrections) {
+        for (int i = 0; i < changes.size(); i++) {
+            int filmId = changes.get(i).filmId();
+            // Отрицательное значение - драйвер не сообщил число строк, считаем, что изменение применилось
+            int delta = rowsAffected[i] == 0 ? 0 : expectedDelta;
+            deltas.merge(filmId, delta, Integer::sum);
+            if (delta != expectedDelta) {
+                corrections.merge(filmId, delta - expectedDelta, Integer::sum);
+            }
+        }
+    }
+
+    private void applyCorrections(Map<Integer, Integer> corrections) {
+        if (corrections == null) {
+            return;
+        }
+        corrections.forEach((filmId, correction) -> {
+            log.warn("Лайки фильма {} изменились в обход буфера, поправка индекса популярности: {}", filmId,
+                    correction);
+            popularityIndex.changeLikes(filmId, correction);
+        });
+    }
+
+    private static long key(int filmId, int userId) {
+        return ((long) filmId << Integer.SIZE) | (userId & 0xFFFFFFFFL);
+    }
+
+    /**
+     * Изменение лайка, которое ещё не записано в БД. В БД лайк сейчас в противоположном состоянии
+     */
+    private record PendingLike(int filmId, int userId, boolean liked) {
+    }
+
+    private record LikeState(boolean participantsExist, boolean liked) {
+    }
+}
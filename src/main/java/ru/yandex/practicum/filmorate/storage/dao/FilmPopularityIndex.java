@@ -0,0 +1,236 @@
+package ru.yandex.practicum.filmorate.storage.dao;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.IntSupplier;
+
+/**
+ * Индекс популярности фильмов в памяти приложения.
+ * Хранит число лайков каждого фильма и упорядоченный по убыванию лайков набор фильмов,
+ * поэтому ТОП из count фильмов возвращается за O(count) без агрегирующего запроса к БД.
+ * Заполняется из счётчика films.likes_count при старте приложения (или при первом обращении)
+ * и дальше обновляется при добавлении и удалении лайков.
+ * Записи лайков в БД и повторное заполнение индекса не пересекаются: каждый лайк учитывается ровно один раз -
+ * либо в прочитанном из БД счётчике, либо изменением после коммита.
+ * Подходит только для одного экземпляра приложения, поэтому может быть выключен настройкой
+ * filmorate.popularity.in-memory-index.enabled - тогда ТОП читается из БД по индексу на likes_count.
+ */
+@Component
+public class FilmPopularityIndex {
+    private static final Logger log = LoggerFactory.getLogger(FilmPopularityIndex.class);
+
+    private static final String GET_FILMS_LIKES_COUNT = "SELECT id, likes_count FROM films;";
+
+    private static final Comparator<FilmLikes> POPULARITY_ORDER = Comparator
+            .comparingInt(FilmLikes::likes).reversed()
+            .thenComparingInt(FilmLikes::filmId);
+
+    private final JdbcTemplate jdbc;
+    private final boolean enabled;
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    // Записи лайков держат его на чтение до конца транзакции, повторное заполнение индекса - на запись
+    private final ReentrantReadWriteLock likesWritesGate = new ReentrantReadWriteLock();
+    private final Map<Integer, Integer> likesByFilm = new HashMap<>();
+    private final TreeSet<FilmLikes> filmsByPopularity = new TreeSet<>(POPULARITY_ORDER);
+    private volatile boolean loaded;
+
+    public FilmPopularityIndex(JdbcTemplate jdbc,
+                               @Value("${filmorate.popularity.in-memory-index.enabled:true}") boolean enabled) {
+        this.jdbc = jdbc;
+        this.enabled = enabled;
+    }
+
+    /**
+     * Возвращает, используется ли индекс в памяти
+     */
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Возвращает id самых популярных фильмов: по убыванию лайков, при равенстве - по возрастанию id
+     */
+    public List<Integer> getTopFilmIds(int count) {
+        if (count <= 0) {
+            return List.of();
+        }
+        ensureLoaded();
+        lock.readLock().lock();
+        try {
+            List<Integer> filmIds = new ArrayList<>(Math.min(count, filmsByPopularity.size()));
+            Iterator<FilmLikes> iterator = filmsByPopularity.iterator();
+            while (iterator.hasNext() && filmIds.size() < count) {
+                filmIds.add(iterator.next().filmId());
+            }
+            return filmIds;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Возвращает число лайков фильма
+     */
+    public int getLikes(int filmId) {
+        ensureLoaded();
+        lock.readLock().lock();
+        try {
+            return likesByFilm.getOrDefault(filmId, 0);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Добавляет в индекс новый фильм без лайков
+     */
+    public void addFilm(int filmId) {
+        changeLikes(filmId, 0);
+    }
+
+    /**
+     * Изменяет число лайков фильма на delta
+     */
+    public void changeLikes(int filmId, int delta) {
+        lock.writeLock().lock();
+        try {
+            // Проверяется под блокировкой: изменение, пришедшее во время заполнения, ждёт его конца
+            if (!loaded) {
+                // Индекс ещё не заполнен: изменение уже есть в БД и попадёт в него при заполнении
+                return;
+            }
+            Integer likes = likesByFilm.get(filmId);
+            if (likes != null) {
+                filmsByPopularity.remove(new FilmLikes(filmId, likes));
+            }
+            int newLikes = Math.max(0, (likes == null ? 0 : likes) + delta);
+            likesByFilm.put(filmId, newLikes);
+            filmsByPopularity.add(new FilmLikes(filmId, newLikes));
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Выполняет запись лайков фильма в БД и применяет к индексу изменение числа лайков, которое она вернула,
+     * после коммита транзакции. Индекс заполняется до записи, а повторное заполнение ждёт конца транзакции записи,
+     * поэтому прочитанный при заполнении счётчик и изменение не учитывают лайк дважды и не теряют его.
+     */
+    public int writeLikes(int filmId, IntSupplier likesWrite) {
+        if (!enabled) {
+            return likesWrite.getAsInt();
+        }
+        ensureLoaded();
+        likesWritesGate.readLock().lock();
+        boolean releaseOnCompletion = false;
+        try {
+            int delta = likesWrite.getAsInt();
+            if (delta == 0 || !TransactionSynchronizationManager.isSynchronizationActive()) {
+                changeLikes(filmId, delta);
+                return delta;
+            }
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    changeLikes(filmId, delta);
+                }
+
+                @Override
+                public void afterCompletion(int status) {
+                    likesWritesGate.readLock().unlock();
+                }
+            });
+            releaseOnCompletion = true;
+            return delta;
+        } finally {
+            if (!releaseOnCompletion) {
+                likesWritesGate.readLock().unlock();
+            }
+        }
+    }
+
+    /**
+     * Заполняет индекс при старте приложения, чтобы первый запрос популярных фильмов не ждал загрузки
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void onApplicationReady() {
+        if (enabled) {
+            ensureLoaded();
+        }
+    }
+
+    /**
+     * Заново заполняет индекс из БД.
+     * Используется для восстановления индекса, если он разошёлся с БД.
+     * Ждёт завершения транзакций, записавших лайки через writeLikes, и не даёт начать новые записи до конца заполнения.
+     */
+    public void rebuild() {
+        if (!enabled) {
+            return;
+        }
+        if (likesWritesGate.getReadHoldCount() > 0) {
+            throw new IllegalStateException("Индекс популярности нельзя заполнить заново в транзакции, " +
+                    "записавшей лайки");
+        }
+        likesWritesGate.writeLock().lock();
+        try {
+            lock.writeLock().lock();
+            try {
+                load();
+            } finally {
+                lock.writeLock().unlock();
+            }
+        } finally {
+            likesWritesGate.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Заполняет индекс из БД, если он ещё не заполнен
+     */
+    public void ensureLoaded() {
+        if (loaded) {
+            return;
+        }
+        lock.writeLock().lock();
+        try {
+            if (!loaded) {
+                load();
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private void load() {
+        likesByFilm.clear();
+        filmsByPopularity.clear();
+        jdbc.query(GET_FILMS_LIKES_COUNT, resultSet -> {
+            FilmLikes filmLikes = new FilmLikes(resultSet.getInt("id"), resultSet.getInt("likes_count"));
+            likesByFilm.put(filmLikes.filmId(), filmLikes.likes());
+            filmsByPopularity.add(filmLikes);
+        });
+        loaded = true;
+        log.info("Индекс популярности заполнен, фильмов в индексе: {}", likesByFilm.size());
+    }
+
+    private record FilmLikes(int filmId, int likes) {
+    }
+}
@@ -3,32 +3,46 @@ package ru.yandex.practicum.filmorate.storage.dao;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.context.annotation.Primary;
+import org.springframework.dao.DuplicateKeyException;
 import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.stereotype.Repository;
 import ru.yandex.practicum.filmorate.exception.InternalServerException;
 import ru.yandex.practicum.filmorate.exception.NotFoundException;
+import ru.yandex.practicum.filmorate.model.IntHashSet;
 import ru.yandex.practicum.filmorate.model.User;
 import ru.yandex.practicum.filmorate.storage.UserStorage;
 import ru.yandex.practicum.filmorate.storage.dao.mapper.UserRowMapper;
 
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
 import java.util.HashSet;
 import java.util.List;
-import java.util.Set;
 
-@Primary
 @Repository("userDbStorage")
 public class UserDbStorage extends BaseStorage<User> implements UserStorage {
     private static final Logger log = LoggerFactory.getLogger(UserDbStorage.class);
 
     private static final String GET_USER_BY_ID_QUERY = "SELECT * FROM users WHERE id = ?;";
     private static final String GET_USERS_QUERY = "SELECT * FROM users;";
+    private static final String GET_USERS_PAGE_QUERY = "SELECT * FROM users WHERE id > ? ORDER BY id LIMIT ?;";
     private static final String ADD_USER_QUERY = "INSERT INTO users (name, email, login, birthday)" +
             "VALUES (?, ?, ?, ?);";
     private static final String UPDATE_USER_QUERY = "UPDATE users SET name = ?, email = ?, login = ?, birthday = ? " +
             "WHERE id = ?;";
+    private static final String USER_EXISTS_QUERY = "SELECT EXISTS (SELECT 1 FROM users WHERE id = ?);";
+    private static final String GET_EXISTING_USER_IDS_QUERY = "SELECT id FROM users WHERE id IN (%s);";
+    private static final String GET_USERS_BY_IDS_QUERY = "SELECT * FROM users WHERE id IN (%s) ORDER BY id;";
     private static final String GET_USER_FRIENDS = "SELECT friend_id FROM users_friendship WHERE user_id = ?;";
-    private static final String ADD_USER_FRIEND = "INSERT INTO users_friendship (user_id, friend_id) VALUES (?, ?);";
+    private static final String GET_USER_FRIEND_USERS = "SELECT u.* FROM users_friendship uf " +
+            "JOIN users u ON uf.friend_id = u.id " +
+            "WHERE uf.user_id = ? " +
+            "ORDER BY u.id;";
+    private static final String GET_COMMON_FRIEND_IDS = "SELECT f1.friend_id FROM users_friendship f1 " +
+            "JOIN users_friendship f2 ON f1.friend_id = f2.friend_id " +
+            "WHERE f1.user_id = ? AND f2.user_id = ?;";
+    private static final String ADD_USER_FRIEND = "INSERT INTO users_friendship (user_id, friend_id) SELECT ?, ? " +
+            "WHERE NOT EXISTS (SELECT 1 FROM users_friendship WHERE user_id = ? AND friend_id = ?);";
     private static final String DELETE_USER_FRIEND = "DELETE FROM users_friendship WHERE user_id = ? " +
             "AND friend_id = ?;";
 
@@ -51,6 +65,30 @@ public class UserDbStorage extends BaseStorage<User> implements UserStorage {
         return user;
     }
 
+    /**
+     * Проверяет наличие пользователя одним запросом по первичному ключу, без загрузки друзей
+     */
+    @Override
+    public boolean existsUser(int id) {
+        return Boolean.TRUE.equals(jdbc.queryForObject(USER_EXISTS_QUERY, Boolean.class, id));
+    }
+
+    /**
+     * Возвращает те id из переданных, для которых есть пользователи.
+     * Читает только первичный ключ, по одному запросу на каждую часть из IN_CHUNK_SIZE id.
+     */
+    @Override
+    public IntHashSet getExistingUserIds(Collection<Integer> userIds) {
+        IntHashSet existingIds = new IntHashSet();
+        for (List<Integer> chunk : chunks(new HashSet<>(userIds))) {
+            String query = String.format(GET_EXISTING_USER_IDS_QUERY, inPlaceholders(chunk.size()));
+            jdbc.query(query, resultSet -> {
+                existingIds.add(resultSet.getInt("id"));
+            }, chunk.toArray());
+        }
+        return existingIds;
+    }
+
     /**
      * Возвращает из БД всех пользователей в виде списка
      */
@@ -64,6 +102,29 @@ public class UserDbStorage extends BaseStorage<User> implements UserStorage {
         }
     }
 
+    /**
+     * Возвращает из БД страницу пользователей с id больше afterId
+     */
+    @Override
+    public List<User> getUsers(int afterId, int limit) {
+        return findMany(GET_USERS_PAGE_QUERY, afterId, limit);
+    }
+
+    /**
+     * Возвращает из БД пользователей с переданными id.
+     * Пользователи загружаются одним запросом на каждые IN_CHUNK_SIZE id, друзья пользователей не загружаются
+     */
+    @Override
+    public List<User> getUsersByIds(Collection<Integer> userIds) {
+        List<User> users = new ArrayList<>();
+        for (List<Integer> chunk : chunks(new HashSet<>(userIds))) {
+            String query = String.format(GET_USERS_BY_IDS_QUERY, inPlaceholders(chunk.size()));
+            users.addAll(findMany(query, chunk.toArray()));
+        }
+        users.sort(Comparator.comparingInt(User::getId));
+        return users;
+    }
+
     /**
      * Добавляет нового пользователя.
      * Присваивает уникальный ID и сохраняет в БД.
@@ -79,7 +140,7 @@ public class UserDbStorage extends BaseStorage<User> implements UserStorage {
         log.info("Пользователю с логином {} присвоен id {}", newUser.getLogin(), newUser.getId());
 
         if (newUser.getFriends() == null) {
-            newUser.setFriends(new HashSet<>());
+            newUser.setFriends(new IntHashSet());
         }
 
         log.info("Пользователь {} добавлен в базу", newUser.getId());
@@ -99,7 +160,7 @@ public class UserDbStorage extends BaseStorage<User> implements UserStorage {
                     updatedUser.getBirthday(), updatedUser.getId());
 
             if (updatedUser.getFriends() == null) {
-                updatedUser.setFriends(new HashSet<>());
+                updatedUser.setFriends(new IntHashSet());
             }
 
             log.info("Пользователь {} обновлён", updatedUser.getId());
@@ -111,44 +172,70 @@ public class UserDbStorage extends BaseStorage<User> implements UserStorage {
     }
 
     /**
-     * Добавляет в друзья пользователя другому пользователю.
-     * Делает запись в БД.
+     * Добавляет в друзья пользователя другому пользователю, если его там ещё нет.
+     * Вставка и проверка наличия идут одним запросом.
+     * Возвращает false, если пользователь уже в друзьях: повторный запрос ничего не меняет.
+     * Несуществующие пользователи отсекаются внешними ключами.
      */
     @Override
-    public void addFriends(int userId, int friendId) {
+    public boolean addFriends(int userId, int friendId) {
         try {
-            jdbc.update(ADD_USER_FRIEND, userId, friendId);
-        } catch (InternalServerException exception) {
-            log.error("Не удалось добавить пользователя {} в друзья {}", friendId, userId);
-            throw exception;
+            if (jdbc.update(ADD_USER_FRIEND, userId, friendId, userId, friendId) == 0) {
+                log.debug("Пользователь {} уже в друзьях у {}", friendId, userId);
+                return false;
+            }
+            return true;
+        } catch (DuplicateKeyException exception) {
+            log.debug("Пользователь {} добавлен в друзья {} параллельным запросом", friendId, userId);
+            return false;
         }
     }
 
     /**
      * Удаляет одного пользователя из друзей второго пользователя.
-     * Делает запись в БД.
+     * Возвращает false, если пользователя не было в друзьях: повторный запрос ничего не меняет.
      */
     @Override
-    public void removeFriends(int userId, int friendId) {
-        try {
-            jdbc.update(DELETE_USER_FRIEND, userId, friendId);
-        } catch (InternalServerException exception) {
-            log.error("Не удалось удалить пользователя {} из друзей {}", friendId, userId);
-            throw exception;
-        }
+    public boolean removeFriends(int userId, int friendId) {
+        return jdbc.update(DELETE_USER_FRIEND, userId, friendId) > 0;
     }
 
     /**
      * Возвращает список друзей пользователя в виде списка id
      */
     @Override
-    public Set<Integer> getUserFriends(Integer userId) {
+    public IntHashSet getUserFriends(Integer userId) {
         try {
-            return new HashSet<>(jdbc.queryForList(GET_USER_FRIENDS, Integer.class, userId));
+            IntHashSet friends = new IntHashSet();
+            jdbc.query(GET_USER_FRIENDS, resultSet -> {
+                friends.add(resultSet.getInt("friend_id"));
+            }, userId);
+            return friends;
         } catch (InternalServerException exception) {
             String getFriendsError = "Не удалось получить друзей пользователя " + userId;
             log.error(getFriendsError);
             throw exception;
         }
     }
-}
\ No newline at end of file
+
+    /**
+     * Возвращает из БД друзей пользователя одним запросом, соединяя дружбу с пользователями
+     */
+    @Override
+    public List<User> getUserFriendUsers(int userId) {
+        return findMany(GET_USER_FRIEND_USERS, userId);
+    }
+
+    /**
+     * Возвращает id общих друзей двух пользователей.
+     * Пересечение считается в БД соединением таблицы дружбы самой с собой, строки пользователей не загружаются
+     */
+    @Override
+    public IntHashSet getCommonFriendIds(int firstUserId, int secondUserId) {
+        IntHashSet commonFriendIds = new IntHashSet();
+        jdbc.query(GET_COMMON_FRIEND_IDS, resultSet -> {
+            commonFriendIds.add(resultSet.getInt("friend_id"));
+        }, firstUserId, secondUserId);
+        return commonFriendIds;
+    }
+}
@@ -3,6 +3,7 @@ package ru.yandex.practicum.filmorate.storage.dao.mapper;
 import org.springframework.jdbc.core.RowMapper;
 import org.springframework.stereotype.Component;
 import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.Mpa;
 
 import java.sql.ResultSet;
 import java.sql.SQLException;
@@ -17,6 +18,7 @@ public class FilmRowMapper implements RowMapper<Film> {
         String description = resultSet.getString("description");
         int duration = resultSet.getInt("duration");
         LocalDate releaseDate = resultSet.getDate("release_date").toLocalDate();
+        Mpa mpa = mapMpa(resultSet);
 
         return Film.builder()
                 .id(id)
@@ -24,6 +26,18 @@ public class FilmRowMapper implements RowMapper<Film> {
                 .description(description)
                 .duration(duration)
                 .releaseDate(releaseDate)
+                .mpa(mpa)
                 .build();
     }
-}
\ No newline at end of file
+
+    /**
+     * Формирует MPA рейтинг из присоединённых к фильму колонок mpa_rating_id и mpa_name
+     */
+    private Mpa mapMpa(ResultSet resultSet) throws SQLException {
+        int mpaId = resultSet.getInt("mpa_rating_id");
+        if (resultSet.wasNull()) {
+            return null;
+        }
+        return new Mpa(mpaId, resultSet.getString("mpa_name"));
+    }
+}
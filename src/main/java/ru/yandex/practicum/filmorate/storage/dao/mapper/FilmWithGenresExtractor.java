@@ -0,0 +1,52 @@
+package ru.yandex.practicum.filmorate.storage.dao.mapper;
+
+import org.springframework.jdbc.core.ResultSetExtractor;
+import org.springframework.stereotype.Component;
+import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.Genre;
+import ru.yandex.practicum.filmorate.model.IntHashSet;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Собирает фильмы из результата запроса, где фильм присоединён к своим жанрам.
+ * Каждому жанру фильма соответствует отдельная строка с колонками genre_id и genre_name,
+ * строки одного фильма схлопываются в один объект с упорядоченным набором жанров.
+ */
+@Component
+public class FilmWithGenresExtractor implements ResultSetExtractor<List<Film>> {
+    private final FilmRowMapper filmRowMapper;
+
+    public FilmWithGenresExtractor(FilmRowMapper filmRowMapper) {
+        this.filmRowMapper = filmRowMapper;
+    }
+
+    @Override
+    public List<Film> extractData(ResultSet resultSet) throws SQLException {
+        Map<Integer, Film> films = new LinkedHashMap<>();
+        int rowNum = 0;
+        while (resultSet.next()) {
+            int filmId = resultSet.getInt("id");
+            Film film = films.get(filmId);
+            if (film == null) {
+                film = filmRowMapper.mapRow(resultSet, rowNum);
+                film.setGenres(new LinkedHashSet<>());
+                film.setLikes(new IntHashSet());
+                films.put(filmId, film);
+            }
+
+            int genreId = resultSet.getInt("genre_id");
+            if (!resultSet.wasNull()) {
+                film.getGenres().add(new Genre(genreId, resultSet.getString("genre_name")));
+            }
+            rowNum++;
+        }
+        return new ArrayList<>(films.values());
+    }
+}
@@ -2,13 +2,12 @@ package ru.yandex.practicum.filmorate.storage.dao.mapper;
 
 import org.springframework.jdbc.core.RowMapper;
 import org.springframework.stereotype.Component;
+import ru.yandex.practicum.filmorate.model.IntHashSet;
 import ru.yandex.practicum.filmorate.model.User;
 
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.time.LocalDate;
-import java.util.HashSet;
-import java.util.Set;
 
 @Component
 public class UserRowMapper implements RowMapper<User> {
@@ -19,7 +18,7 @@ public class UserRowMapper implements RowMapper<User> {
         String email = resultSet.getString("email");
         String login = resultSet.getString("login");
         LocalDate birthday = resultSet.getDate("birthday").toLocalDate();
-        Set<Integer> friends = new HashSet<>();
+        IntHashSet friends = new IntHashSet();
 
         return User.builder()
                 .id(id)
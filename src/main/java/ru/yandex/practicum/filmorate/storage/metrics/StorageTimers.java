@@ -0,0 +1,32 @@
+package ru.yandex.practicum.filmorate.storage.metrics;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Metrics;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.beans.factory.ObjectProvider;
+
+/**
+ * Таймеры методов хранилища: метрика filmorate.storage с тегами storage и method.
+ * Таймеры создаются один раз при создании хранилища, поэтому вызов метода не ищет таймер в реестре.
+ * Если реестра метрик в контексте нет, например, в тестах срезов @JdbcTest, то таймеры регистрируются
+ * в глобальном реестре Micrometer, который без подключённых реестров ничего не записывает.
+ */
+final class StorageTimers {
+    static final String METRIC_NAME = "filmorate.storage";
+
+    private final MeterRegistry registry;
+    private final String storage;
+
+    StorageTimers(ObjectProvider<MeterRegistry> registry, String storage) {
+        this.registry = registry.getIfAvailable(() -> Metrics.globalRegistry);
+        this.storage = storage;
+    }
+
+    Timer timer(String method) {
+        return Timer.builder(METRIC_NAME)
+                .description("Время выполнения метода хранилища")
+                .tag("storage", storage)
+                .tag("method", method)
+                .register(registry);
+    }
+}
@@ -0,0 +1,106 @@
+package ru.yandex.practicum.filmorate.storage.metrics;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.context.annotation.Primary;
+import org.springframework.stereotype.Component;
+import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.storage.FilmStorage;
+import ru.yandex.practicum.filmorate.storage.cache.CachedFilmStorage;
+
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Хранилище фильмов, которое замеряет время каждого метода хранилища с кэшем фильмов.
+ * Время пишется в таймер filmorate.storage с тегами storage=films и method, в том числе при ошибке.
+ * Время getFilmById включает и попадания в кэш, промахи видны по метрикам кэша.
+ */
+@Primary
+@Component
+public class TimedFilmStorage implements FilmStorage {
+    private final CachedFilmStorage filmStorage;
+    private final Timer getFilmByIdTimer;
+    private final Timer existsFilmTimer;
+    private final Timer getFilmsTimer;
+    private final Timer getFilmsPageTimer;
+    private final Timer streamFilmsTimer;
+    private final Timer addFilmTimer;
+    private final Timer addFilmsTimer;
+    private final Timer updateFilmTimer;
+    private final Timer addLikeTimer;
+    private final Timer removeLikeTimer;
+    private final Timer getMostPopularFilmsTimer;
+
+    public TimedFilmStorage(CachedFilmStorage filmStorage, ObjectProvider<MeterRegistry> meterRegistry) {
+        this.filmStorage = filmStorage;
+        StorageTimers timers = new StorageTimers(meterRegistry, "films");
+        this.getFilmByIdTimer = timers.timer("getFilmById");
+        this.existsFilmTimer = timers.timer("existsFilm");
+        this.getFilmsTimer = timers.timer("getFilms");
+        this.getFilmsPageTimer = timers.timer("getFilmsPage");
+        this.streamFilmsTimer = timers.timer("streamFilms");
+        this.addFilmTimer = timers.timer("addFilm");
+        this.addFilmsTimer = timers.timer("addFilms");
+        this.updateFilmTimer = timers.timer("updateFilm");
+        this.addLikeTimer = timers.timer("addLike");
+        this.removeLikeTimer = timers.timer("removeLike");
+        this.getMostPopularFilmsTimer = timers.timer("getMostPopularFilms");
+    }
+
+    @Override
+    public Film getFilmById(int id) {
+        return getFilmByIdTimer.record(() -> filmStorage.getFilmById(id));
+    }
+
+    @Override
+    public boolean existsFilm(int id) {
+        return existsFilmTimer.record(() -> filmStorage.existsFilm(id));
+    }
+
+    @Override
+    public List<Film> getFilms() {
+        return getFilmsTimer.record(() -> filmStorage.getFilms());
+    }
+
+    @Override
+    public List<Film> getFilms(int afterId, int limit) {
+        return getFilmsPageTimer.record(() -> filmStorage.getFilms(afterId, limit));
+    }
+
+    @Override
+    public void streamFilms(Consumer<List<Film>> batchConsumer) {
+        streamFilmsTimer.record(() -> filmStorage.streamFilms(batchConsumer));
+    }
+
+    @Override
+    public Film addFilm(Film newFilm) {
+        return addFilmTimer.record(() -> filmStorage.addFilm(newFilm));
+    }
+
+    @Override
+    public List<Film> addFilms(List<Film> newFilms) {
+        return addFilmsTimer.record(() -> filmStorage.addFilms(newFilms));
+    }
+
+    @Override
+    public Film updateFilm(Film updatedFilm) {
+        return updateFilmTimer.record(() -> filmStorage.updateFilm(updatedFilm));
+    }
+
+    @Override
+    public boolean addLike(int filmId, int userId) {
+        return addLikeTimer.record(() -> filmStorage.addLike(filmId, userId));
+    }
+
+    @Override
+    public boolean removeLike(int filmId, int userId) {
+        return removeLikeTimer.record(() -> filmStorage.removeLike(filmId, userId));
+    }
+
+    @Override
+    public List<Film> getMostPopularFilms(int count) {
+        return getMostPopularFilmsTimer.record(() -> filmStorage.getMostPopularFilms(count));
+    }
+}
@@ -0,0 +1,120 @@
+package ru.yandex.practicum.filmorate.storage.metrics;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.context.annotation.Primary;
+import org.springframework.stereotype.Component;
+import ru.yandex.practicum.filmorate.model.IntHashSet;
+import ru.yandex.practicum.filmorate.model.User;
+import ru.yandex.practicum.filmorate.storage.UserStorage;
+import ru.yandex.practicum.filmorate.storage.dao.UserDbStorage;
+
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Хранилище пользователей, которое замеряет время каждого метода хранилища пользователей в БД.
+ * Время пишется в таймер filmorate.storage с тегами storage=users и method, в том числе при ошибке.
+ */
+@Primary
+@Component
+public class TimedUserStorage implements UserStorage {
+    private final UserDbStorage userStorage;
+    private final Timer getUserByIdTimer;
+    private final Timer existsUserTimer;
+    private final Timer getExistingUserIdsTimer;
+    private final Timer getUsersTimer;
+    private final Timer getUsersPageTimer;
+    private final Timer getUsersByIdsTimer;
+    private final Timer addUserTimer;
+    private final Timer updateUserTimer;
+    private final Timer addFriendsTimer;
+    private final Timer removeFriendsTimer;
+    private final Timer getUserFriendsTimer;
+    private final Timer getUserFriendUsersTimer;
+    private final Timer getCommonFriendIdsTimer;
+
+    public TimedUserStorage(UserDbStorage userStorage, ObjectProvider<MeterRegistry> meterRegistry) {
+        this.userStorage = userStorage;
+        StorageTimers timers = new StorageTimers(meterRegistry, "users");
+        this.getUserByIdTimer = timers.timer("getUserById");
+        this.existsUserTimer = timers.timer("existsUser");
+        this.getExistingUserIdsTimer = timers.timer("getExistingUserIds");
+        this.getUsersTimer = timers.timer("getUsers");
+        this.getUsersPageTimer = timers.timer("getUsersPage");
+        this.getUsersByIdsTimer = timers.timer("getUsersByIds");
+        this.addUserTimer = timers.timer("addUser");
+        this.updateUserTimer = timers.timer("updateUser");
+        this.addFriendsTimer = timers.timer("addFriends");
+        this.removeFriendsTimer = timers.timer("removeFriends");
+        this.getUserFriendsTimer = timers.timer("getUserFriends");
+        this.getUserFriendUsersTimer = timers.timer("getUserFriendUsers");
+        this.getCommonFriendIdsTimer = timers.timer("getCommonFriendIds");
+    }
+
+    @Override
+    public User getUserById(int id) {
+        return getUserByIdTimer.record(() -> userStorage.getUserById(id));
+    }
+
+    @Override
+    public boolean existsUser(int id) {
+        return existsUserTimer.record(() -> userStorage.existsUser(id));
+    }
+
+    @Override
+    public IntHashSet getExistingUserIds(Collection<Integer> userIds) {
+        return getExistingUserIdsTimer.record(() -> userStorage.getExistingUserIds(userIds));
+    }
+
+    @Override
+    public List<User> getUsers() {
+        return getUsersTimer.record(() -> userStorage.getUsers());
+    }
+
+    @Override
+    public List<User> getUsers(int afterId, int limit) {
+        return getUsersPageTimer.record(() -> userStorage.getUsers(afterId, limit));
+    }
+
+    @Override
+    public List<User> getUsersByIds(Collection<Integer> userIds) {
+        return getUsersByIdsTimer.record(() -> userStorage.getUsersByIds(userIds));
+    }
+
+    @Override
+    public User addUser(User newUser) {
+        return addUserTimer.record(() -> userStorage.addUser(newUser));
+    }
+
+    @Override
+    public User updateUser(User updatedUser) {
+        return updateUserTimer.record(() -> userStorage.updateUser(updatedUser));
+    }
+
+    @Override
+    public boolean addFriends(int userId, int friendId) {
+        return addFriendsTimer.record(() -> userStorage.addFriends(userId, friendId));
+    }
+
+    @Override
+    public boolean removeFriends(int userId, int friendId) {
+        return removeFriendsTimer.record(() -> userStorage.removeFriends(userId, friendId));
+    }
+
+    @Override
+    public IntHashSet getUserFriends(Integer userId) {
+        return getUserFriendsTimer.record(() -> userStorage.getUserFriends(userId));
+    }
+
+    @Override
+    public List<User> getUserFriendUsers(int userId) {
+        return getUserFriendUsersTimer.record(() -> userStorage.getUserFriendUsers(userId));
+    }
+
+    @Override
+    public IntHashSet getCommonFriendIds(int firstUserId, int secondUserId) {
+        return getCommonFriendIdsTimer.record(() -> userStorage.getCommonFriendIds(firstUserId, secondUserId));
+    }
+}
@@ -26,9 +26,14 @@ CREATE TABLE IF NOT EXISTS films (
   duration INTEGER NOT NULL CHECK (duration > 0),
   release_date DATE NOT NULL,
   mpa_rating_id INTEGER REFERENCES mpa_ratings(id) ON DELETE SET NULL,
+  likes_count INTEGER NOT NULL DEFAULT 0,
   CONSTRAINT release_date_chk CHECK (release_date >= '1895-12-28')
 );
 
+-- Для БД, созданных до появления счётчика лайков, столбец добавляется пустым и заполняется ниже
+ALTER TABLE films ADD COLUMN IF NOT EXISTS likes_count INTEGER;
+CREATE INDEX IF NOT EXISTS idx_films_likes_count ON films (likes_count DESC, id);
+
 CREATE TABLE IF NOT EXISTS films_genres (
   id INTEGER GENERATED BY DEFAULT AS IDENTITY PRIMARY KEY,
   film_id INTEGER NOT NULL REFERENCES films(id) ON DELETE CASCADE,
@@ -46,4 +51,32 @@ CREATE TABLE IF NOT EXISTS users_friendship (
   user_id INTEGER NOT NULL REFERENCES users(id) ON DELETE CASCADE,
   friend_id INTEGER NOT NULL REFERENCES users(id) ON DELETE CASCADE,
   CONSTRAINT no_self_friendship_chk CHECK (user_id != friend_id)
-);
\ No newline at end of file
+);
+
+-- Связи уникальны: для БД, созданных до появления уникальных индексов, удаляем дубликаты.
+-- Подзапрос no_index пуст, как только индекс создан, и тогда таблица связей даже не читается
+DELETE FROM films_likes WHERE id IN (
+  SELECT t.id FROM (SELECT 1 FROM INFORMATION_SCHEMA.INDEXES WHERE INDEX_NAME = 'UQ_FILMS_LIKES_FILM_USER' HAVING COUNT(*) = 0) no_index
+  JOIN films_likes t ON TRUE
+  WHERE t.id NOT IN (SELECT MIN(id) FROM films_likes GROUP BY film_id, user_id));
+DELETE FROM films_genres WHERE id IN (
+  SELECT t.id FROM (SELECT 1 FROM INFORMATION_SCHEMA.INDEXES WHERE INDEX_NAME = 'UQ_FILMS_GENRES_FILM_GENRE' HAVING COUNT(*) = 0) no_index
+  JOIN films_genres t ON TRUE
+  WHERE t.id NOT IN (SELECT MIN(id) FROM films_genres GROUP BY film_id, genre_id));
+DELETE FROM users_friendship WHERE id IN (
+  SELECT t.id FROM (SELECT 1 FROM INFORMATION_SCHEMA.INDEXES WHERE INDEX_NAME = 'UQ_USERS_FRIENDSHIP_USER_FRIEND' HAVING COUNT(*) = 0) no_index
+  JOIN users_friendship t ON TRUE
+  WHERE t.id NOT IN (SELECT MIN(id) FROM users_friendship GROUP BY user_id, friend_id));
+
+-- Пустой счётчик лайков бывает только сразу после добавления столбца: один раз заполняем его по films_likes,
+-- иначе индекс популярности заполнился бы нулями. В новых БД и при следующих запусках пустых счётчиков нет
+UPDATE films f SET likes_count = (SELECT COUNT(*) FROM films_likes fl WHERE fl.film_id = f.id)
+WHERE likes_count IS NULL;
+ALTER TABLE films ALTER COLUMN likes_count SET DEFAULT 0;
+ALTER TABLE films ALTER COLUMN likes_count SET NOT NULL;
+
+-- Обратные поиски (лайки пользователя, фильмы жанра, у кого пользователь в друзьях) идут по индексам,
+-- которые H2 сам создаёт на каждом внешнем ключе, поэтому отдельные индексы на user_id, genre_id и friend_id не нужны
+CREATE UNIQUE INDEX IF NOT EXISTS uq_films_likes_film_user ON films_likes (film_id, user_id);
+CREATE UNIQUE INDEX IF NOT EXISTS uq_films_genres_film_genre ON films_genres (film_id, genre_id);
+CREATE UNIQUE INDEX IF NOT EXISTS uq_users_friendship_user_friend ON users_friendship (user_id, friend_id);
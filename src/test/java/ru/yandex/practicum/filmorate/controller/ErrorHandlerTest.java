@@ -0,0 +1,54 @@
+package ru.yandex.practicum.filmorate.controller;
+
+import com.zaxxer.hikari.HikariConfig;
+import com.zaxxer.hikari.HikariDataSource;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpStatus;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+import ru.yandex.practicum.filmorate.service.GenreService;
+import ru.yandex.practicum.filmorate.storage.dao.GenreDbStorage;
+import ru.yandex.practicum.filmorate.storage.dao.mapper.GenreRowMapper;
+
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+
+class ErrorHandlerTest {
+    private static final String DB_URL = "jdbc:h2:mem:error-handler-test;DB_CLOSE_DELAY=-1";
+    private static final long CONNECTION_TIMEOUT_MS = 250;
+    private static final String POOL_EXHAUSTED_ERROR = "Сервис перегружен, повторите запрос позже";
+
+    @Test
+    @DisplayName("Запрос, не дождавшийся соединения из пула, должен получить 503")
+    void test_getGenres_WhenConnectionPoolExhausted_ShouldReturn503() throws Exception {
+        //given
+        HikariConfig config = new HikariConfig();
+        config.setJdbcUrl(DB_URL);
+        config.setMaximumPoolSize(1);
+        config.setConnectionTimeout(CONNECTION_TIMEOUT_MS);
+        try (HikariDataSource dataSource = new HikariDataSource(config);
+             Connection busyConnection = dataSource.getConnection()) {
+            MockMvc mockMvc = MockMvcBuilders.standaloneSetup(new GenreController(new GenreService(
+                            new GenreDbStorage(new JdbcTemplate(dataSource), new GenreRowMapper()))))
+                    .setControllerAdvice(new ErrorHandler())
+                    .build();
+
+            //when
+            MvcResult result = mockMvc.perform(get("/genres")).andReturn();
+
+            //then
+            assertTrue(busyConnection.isValid(0), "Занятое соединение закрыто");
+            assertEquals(HttpStatus.SERVICE_UNAVAILABLE.value(), result.getResponse().getStatus(),
+                    "Исчерпанный пул соединений не вернул 503");
+            assertTrue(result.getResponse().getContentAsString(StandardCharsets.UTF_8).contains(POOL_EXHAUSTED_ERROR),
+                    "В ответе нет описания ошибки");
+        }
+    }
+}
@@ -1,27 +1,48 @@
 package ru.yandex.practicum.filmorate.controller;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
 import lombok.RequiredArgsConstructor;
+import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.RegisterExtension;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
 import org.springframework.boot.test.autoconfigure.jdbc.JdbcTest;
 import org.springframework.context.annotation.ComponentScan;
+import org.springframework.core.io.ClassPathResource;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
 import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.init.ResourceDatabasePopulator;
+import org.springframework.test.context.transaction.TestTransaction;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import ru.yandex.practicum.filmorate.dto.PageDto;
 import ru.yandex.practicum.filmorate.dto.film.FilmDto;
+import ru.yandex.practicum.filmorate.dto.film.FilmImportErrorDto;
+import ru.yandex.practicum.filmorate.dto.film.FilmImportResultDto;
 import ru.yandex.practicum.filmorate.dto.film.NewFilmRequest;
 import ru.yandex.practicum.filmorate.dto.film.UpdateFilmRequest;
 import ru.yandex.practicum.filmorate.dto.user.NewUserRequest;
 import ru.yandex.practicum.filmorate.exception.NotFoundException;
 import ru.yandex.practicum.filmorate.exception.ValidationException;
-
+import ru.yandex.practicum.filmorate.model.Genre;
+import ru.yandex.practicum.filmorate.monitoring.QueryBudgetExtension;
+import ru.yandex.practicum.filmorate.storage.cache.CachedFilmStorage;
+import ru.yandex.practicum.filmorate.storage.dao.FilmPopularityIndex;
+
+import javax.sql.DataSource;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
 import java.time.LocalDate;
 import java.time.Month;
 import java.util.List;
 import java.util.Objects;
+import java.util.Set;
 import static org.junit.jupiter.api.Assertions.*;
 
 
@@ -48,6 +69,13 @@ class FilmControllerTest {
     private static final int FILM_ID = 100;
     private static final int FILM_COUNT_1 = 1;
     private static final int FILM_DEFAULT_COUNT = 10;
+    private static final int FILM_PAGE_LIMIT = 100;
+    private static final int FILM_PAGE_START = 0;
+    private static final int GENRE_ID_UNKNOWN = 100;
+    private static final int GENRE_ID = 1;
+    private static final int GENRE_ID_2 = 2;
+    private static final int FILMS_WITH_GENRES_COUNT = 5;
+    private static final int FILMS_PAGE_QUERY_BUDGET = 2;
 
     private static final String USER_NAME = "Вася";
     private static final String USER_EMAIL = "mail@mail.ru";
@@ -59,10 +87,17 @@ class FilmControllerTest {
 
     private static final String DELETE_FILMS = "DELETE FROM films;";
     private static final String DELETE_USERS = "DELETE FROM users;";
+    private static final String DATA_SCRIPT = "data.sql";
 
     private final FilmController filmController;
     private final UserController userController;
     private final JdbcTemplate jdbcTemplate;
+    private final DataSource dataSource;
+    private final FilmPopularityIndex popularityIndex;
+    private final CachedFilmStorage cachedFilmStorage;
+
+    @RegisterExtension
+    final QueryBudgetExtension queryBudget = new QueryBudgetExtension();
 
     @BeforeEach
     @DisplayName("Чистим БД")
@@ -71,6 +106,17 @@ class FilmControllerTest {
         jdbcTemplate.update(DELETE_USERS);
     }
 
+    @AfterEach
+    @DisplayName("Восстанавливаем БД после теста, зафиксировавшего свои транзакции")
+    void restoreCommittedDatabase() {
+        if (TestTransaction.isActive()) {
+            return;
+        }
+        new ResourceDatabasePopulator(new ClassPathResource(DATA_SCRIPT)).execute(dataSource);
+        popularityIndex.rebuild();
+        cachedFilmStorage.invalidate();
+    }
+
     @Test
     @DisplayName("При добавлении двух фильмов контроллер должен возвращать их")
     void test_getFilms_WhenAddedFilms_ShouldReturnAll() {
@@ -85,7 +131,7 @@ class FilmControllerTest {
         //when
         filmController.addFilm(film);
         filmController.addFilm(film2);
-        List<FilmDto> filmsByController = filmController.getFilms().getBody();
+        List<FilmDto> filmsByController = filmController.getFilms(FILM_PAGE_LIMIT, FILM_PAGE_START).getBody();
 
         //then
         assertNotNull(filmsByController, "В контроллере нет фильмов");
@@ -104,7 +150,7 @@ class FilmControllerTest {
 
         //when
         filmController.addFilm(film);
-        List<FilmDto> filmsByController = filmController.getFilms().getBody();
+        List<FilmDto> filmsByController = filmController.getFilms(FILM_PAGE_LIMIT, FILM_PAGE_START).getBody();
 
         //then
         assertNotNull(filmsByController, "В контроллере нет фильмов");
@@ -169,7 +215,7 @@ class FilmControllerTest {
                 .releaseDate(FILM_RELEASE_DATE)
                 .duration(FILM_DURATION).build();
         filmController.updateFilm(updatedFilm);
-        List<FilmDto> filmsByController = filmController.getFilms().getBody();
+        List<FilmDto> filmsByController = filmController.getFilms(FILM_PAGE_LIMIT, FILM_PAGE_START).getBody();
 
         //then
         assertNotNull(filmsByController, "В контроллере нет фильмов");
@@ -286,6 +332,31 @@ class FilmControllerTest {
         assertEquals(HttpStatus.OK, response.getStatusCode(), "Вернулся не успешный ответ");
     }
 
+    @Test
+    @DisplayName("Повторные добавление и удаление лайка должны возвращать OK 200 и ничего не менять")
+    void test_addAndRemoveLikeByUser_WhenRepeated_ShouldReturn200() {
+        //given
+        NewFilmRequest film = NewFilmRequest.builder().name(FILM_NAME).description(FILM_DESCRIPTION)
+                .releaseDate(FILM_RELEASE_DATE)
+                .duration(FILM_DURATION).build();
+        int filmId = Objects.requireNonNull(filmController.addFilm(film).getBody()).getId();
+
+        NewUserRequest user = NewUserRequest.builder().name(USER_NAME).email(USER_EMAIL).login(USER_LOGIN)
+                .birthday(USER_BIRTHDAY).build();
+        int userId = Objects.requireNonNull(userController.addUser(user).getBody()).getId();
+
+        //when
+        filmController.addLikeByUser(filmId, userId);
+        ResponseEntity<Void> repeatedAddResponse = filmController.addLikeByUser(filmId, userId);
+        filmController.removeLikeByUser(filmId, userId);
+        ResponseEntity<Void> repeatedRemoveResponse = filmController.removeLikeByUser(filmId, userId);
+
+        //then
+        assertEquals(HttpStatus.OK, repeatedAddResponse.getStatusCode(), "Повторный лайк вернул не успешный ответ");
+        assertEquals(HttpStatus.OK, repeatedRemoveResponse.getStatusCode(),
+                "Повторное удаление лайка вернуло не успешный ответ");
+    }
+
     @Test
     @DisplayName("При добавлении лайка существующему фильму от несуществующего пользователя должен вернуть ошибку")
     void test_addLikeByUser_WhenUserNotExists_ShouldThrowsError() {
@@ -362,6 +433,7 @@ class FilmControllerTest {
     }
 
     @Test
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
     @DisplayName("При запросе одного фильма должен вернуть самый популярный")
     void test_getMostPopularFilms_WhenRequestOne_ShouldReturnOne() {
         //given
@@ -385,7 +457,7 @@ class FilmControllerTest {
 
         //when
         filmController.addLikeByUser(filmId, userId);
-        filmController.addLikeByUser(filmId2, userId2);
+        filmController.addLikeByUser(filmId2, userId);
         filmController.addLikeByUser(filmId2, userId2);
         List<FilmDto> popularFilms = filmController.getMostPopularFilms(FILM_COUNT_1).getBody();
 
@@ -396,6 +468,7 @@ class FilmControllerTest {
     }
 
     @Test
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
     @DisplayName("Если передано дефолтное количество фильмов, то должен вернуть все (до дефолтного включительно)")
     void test_getMostPopularFilms_WhenRequestNothing_ShouldReturnAll() {
         //given
@@ -419,7 +492,7 @@ class FilmControllerTest {
 
         //when
         filmController.addLikeByUser(filmId, userId);
-        filmController.addLikeByUser(filmId2, userId2);
+        filmController.addLikeByUser(filmId2, userId);
         filmController.addLikeByUser(filmId2, userId2);
         List<FilmDto> popularFilms = filmController.getMostPopularFilms(FILM_DEFAULT_COUNT).getBody();
 
@@ -429,4 +502,125 @@ class FilmControllerTest {
         assertEquals(FILM_NAME_2, popularFilms.get(0).getName(), "В контроллере не корректный 1-ый фильм");
         assertEquals(FILM_NAME, popularFilms.get(1).getName(), "В контроллере не корректный 2-ой фильм");
     }
-}
\ No newline at end of file
+
+    @Test
+    @DisplayName("При запросе страницы фильмов контроллер должен вернуть курсор следующей страницы")
+    void test_getFilms_WhenMoreFilmsThanLimit_ShouldReturnNextCursor() {
+        //given
+        NewFilmRequest film = NewFilmRequest.builder().name(FILM_NAME).description(FILM_DESCRIPTION)
+                .releaseDate(FILM_RELEASE_DATE)
+                .duration(FILM_DURATION).build();
+        NewFilmRequest film2 = NewFilmRequest.builder().name(FILM_NAME_2).description(FILM_DESCRIPTION_2)
+                .releaseDate(FILM_RELEASE_DATE_2)
+                .duration(FILM_DURATION_2).build();
+        FilmDto createdFilm = filmController.addFilm(film).getBody();
+        filmController.addFilm(film2);
+
+        //when
+        ResponseEntity<List<FilmDto>> firstPage = filmController.getFilms(FILM_COUNT_1, FILM_PAGE_START);
+        String nextCursor = firstPage.getHeaders().getFirst(PageDto.NEXT_CURSOR_HEADER);
+        ResponseEntity<List<FilmDto>> secondPage = filmController.getFilms(FILM_COUNT_1,
+                Integer.parseInt(Objects.requireNonNull(nextCursor)));
+
+        //then
+        assertEquals(1, Objects.requireNonNull(firstPage.getBody()).size(), "На первой странице не один фильм");
+        assertEquals(FILM_NAME, firstPage.getBody().get(0).getName(), "На первой странице некорректный фильм");
+        assertEquals(String.valueOf(Objects.requireNonNull(createdFilm).getId()), nextCursor,
+                "Некорректный курсор следующей страницы");
+        assertEquals(1, Objects.requireNonNull(secondPage.getBody()).size(), "На второй странице не один фильм");
+        assertEquals(FILM_NAME_2, secondPage.getBody().get(0).getName(), "На второй странице некорректный фильм");
+    }
+
+    @Test
+    @DisplayName("При запросе страницы фильмов с некорректным размером контроллер должен вернуть ошибку")
+    void test_getFilms_WhenIncorrectLimit_ShouldThrowsError() {
+        //given && when && then
+        assertThrows(ValidationException.class,
+                () -> filmController.getFilms(0, FILM_PAGE_START),
+                "Удалось запросить пустую страницу фильмов");
+    }
+
+    @Test
+    @DisplayName("При выгрузке фильмов контроллер должен вернуть по одному фильму в строке")
+    void test_streamFilms_WhenAddedFilms_ShouldWriteNdjson() throws IOException {
+        //given
+        NewFilmRequest film = NewFilmRequest.builder().name(FILM_NAME).description(FILM_DESCRIPTION)
+                .releaseDate(FILM_RELEASE_DATE)
+                .duration(FILM_DURATION).build();
+        NewFilmRequest film2 = NewFilmRequest.builder().name(FILM_NAME_2).description(FILM_DESCRIPTION_2)
+                .releaseDate(FILM_RELEASE_DATE_2)
+                .duration(FILM_DURATION_2).build();
+        filmController.addFilm(film);
+        filmController.addFilm(film2);
+
+        //when
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        Objects.requireNonNull(filmController.streamFilms().getBody()).writeTo(outputStream);
+        List<String> lines = outputStream.toString(StandardCharsets.UTF_8).lines().toList();
+        ObjectMapper objectMapper = Jackson2ObjectMapperBuilder.json().build();
+
+        //then
+        assertEquals(2, lines.size(), "Выгружено не верное количество фильмов");
+        assertEquals(FILM_NAME, objectMapper.readValue(lines.get(0), FilmDto.class).getName(),
+                "Выгружен некорректный 1-ый фильм");
+        assertEquals(FILM_NAME_2, objectMapper.readValue(lines.get(1), FilmDto.class).getName(),
+                "Выгружен некорректный 2-ой фильм");
+    }
+
+    @Test
+    @DisplayName("При пакетном добавлении фильмов контроллер должен вернуть id добавленных и ошибки остальных")
+    void test_addFilms_WhenSomeFilmsIncorrect_ShouldReturnIdsAndErrors() {
+        //given
+        NewFilmRequest film = NewFilmRequest.builder().name(FILM_NAME).description(FILM_DESCRIPTION)
+                .releaseDate(FILM_RELEASE_DATE)
+                .duration(FILM_DURATION).build();
+        NewFilmRequest filmWithIncorrectDuration = NewFilmRequest.builder().name(FILM_NAME)
+                .description(FILM_DESCRIPTION).releaseDate(FILM_RELEASE_DATE)
+                .duration(FILM_DURATION_INCORRECT).build();
+        NewFilmRequest filmWithUnknownGenre = NewFilmRequest.builder().name(FILM_NAME).description(FILM_DESCRIPTION)
+                .releaseDate(FILM_RELEASE_DATE).duration(FILM_DURATION)
+                .genres(Set.of(new Genre(GENRE_ID_UNKNOWN, null))).build();
+        NewFilmRequest film2 = NewFilmRequest.builder().name(FILM_NAME_2).description(FILM_DESCRIPTION_2)
+                .releaseDate(FILM_RELEASE_DATE_2)
+                .duration(FILM_DURATION_2).build();
+
+        //when
+        FilmImportResultDto result = filmController.addFilms(
+                List.of(film, filmWithIncorrectDuration, filmWithUnknownGenre, film2)).getBody();
+        List<FilmDto> films = filmController.getFilms(FILM_PAGE_LIMIT, FILM_PAGE_START).getBody();
+
+        //then
+        assertNotNull(result, "Нет результата импорта");
+        assertEquals(4, result.getIds().size(), "Id возвращены не для каждого фильма");
+        assertNotNull(result.getIds().get(0), "Корректному фильму не присвоен id");
+        assertNull(result.getIds().get(1), "Фильму с некорректной длительностью присвоен id");
+        assertNull(result.getIds().get(2), "Фильму с несуществующим жанром присвоен id");
+        assertNotNull(result.getIds().get(3), "Корректному фильму не присвоен id");
+        assertEquals(List.of(1, 2), result.getErrors().stream().map(FilmImportErrorDto::getIndex).toList(),
+                "Ошибки возвращены не для некорректных фильмов");
+        assertEquals(2, Objects.requireNonNull(films).size(), "В контроллере не верное количество фильмов");
+        assertEquals(FILM_NAME_2, filmController.getFilmById(result.getIds().get(3)).getBody().getName(),
+                "Под id сохранён некорректный фильм");
+    }
+
+    @Test
+    @DisplayName("Страница фильмов с жанрами должна загружаться за постоянное число запросов к БД")
+    void test_getFilms_WhenFilmsHaveGenres_ShouldFitQueryBudget() {
+        //given
+        for (int i = 0; i < FILMS_WITH_GENRES_COUNT; i++) {
+            filmController.addFilm(NewFilmRequest.builder().name(FILM_NAME + i).description(FILM_DESCRIPTION)
+                    .releaseDate(FILM_RELEASE_DATE).duration(FILM_DURATION)
+                    .genres(Set.of(new Genre(GENRE_ID, null), new Genre(GENRE_ID_2, null))).build());
+        }
+        queryBudget.reset();
+
+        //when
+        List<FilmDto> films = filmController.getFilms(FILM_PAGE_LIMIT, FILM_PAGE_START).getBody();
+
+        //then
+        queryBudget.assertQueriesAtMost(FILMS_PAGE_QUERY_BUDGET, "Страница фильмов загружается запросом на фильм");
+        assertEquals(FILMS_WITH_GENRES_COUNT, Objects.requireNonNull(films).size(),
+                "В контроллере не верное количество фильмов");
+        assertEquals(2, films.get(0).getGenres().size(), "У фильма не загружены жанры");
+    }
+}
@@ -11,6 +11,7 @@ import org.springframework.context.annotation.ComponentScan;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.jdbc.core.JdbcTemplate;
+import ru.yandex.practicum.filmorate.dto.PageDto;
 import ru.yandex.practicum.filmorate.dto.user.NewUserRequest;
 import ru.yandex.practicum.filmorate.dto.user.UpdateUserRequest;
 import ru.yandex.practicum.filmorate.dto.user.UserDto;
@@ -48,6 +49,8 @@ class UserControllerTest {
     private static final LocalDate USER_BIRTHDAY_INCORRECT = LocalDate.of(3035, Month.DECEMBER, 12);
 
     private static final Integer USER_ID = 567;
+    private static final int USER_PAGE_LIMIT = 100;
+    private static final int USER_PAGE_START = 0;
 
     private static final String DELETE_USERS = "DELETE FROM users;";
 
@@ -74,7 +77,7 @@ class UserControllerTest {
                 .birthday(USER_BIRTHDAY_2)
                 .build();
         userController.addUser(user2);
-        List<UserDto> usersByController = userController.getUsers().getBody();
+        List<UserDto> usersByController = userController.getUsers(USER_PAGE_LIMIT, USER_PAGE_START).getBody();
 
         //then
         assertNotNull(usersByController, "В контроллере нет пользователей");
@@ -95,7 +98,7 @@ class UserControllerTest {
 
         //when
         userController.addUser(user);
-        List<UserDto> usersByController = userController.getUsers().getBody();
+        List<UserDto> usersByController = userController.getUsers(USER_PAGE_LIMIT, USER_PAGE_START).getBody();
 
         //then
         assertNotNull(usersByController, "В контроллере нет пользователей");
@@ -126,7 +129,7 @@ class UserControllerTest {
 
         //when
         userController.addUser(user);
-        List<UserDto> usersByController = userController.getUsers().getBody();
+        List<UserDto> usersByController = userController.getUsers(USER_PAGE_LIMIT, USER_PAGE_START).getBody();
 
         //then
         assertNotNull(usersByController, "В контроллере нет пользователей");
@@ -162,7 +165,7 @@ class UserControllerTest {
                 .birthday(USER_BIRTHDAY)
                 .build();
         userController.updateUser(updateUser);
-        List<UserDto> usersByController = userController.getUsers().getBody();
+        List<UserDto> usersByController = userController.getUsers(USER_PAGE_LIMIT, USER_PAGE_START).getBody();
 
         //then
         assertNotNull(usersByController, "В контроллере нет пользователей");
@@ -412,4 +415,27 @@ class UserControllerTest {
         assertNotNull(commonFriends, "Список общих друзей не проинициализировался");
         assertEquals(0, commonFriends.size(), "Список общих друзей не пустой");
     }
-}
\ No newline at end of file
+
+    @Test
+    @DisplayName("При запросе последней страницы пользователей контроллер не должен возвращать курсор")
+    void test_getUsers_WhenLastPage_ShouldNotReturnNextCursor() {
+        //given
+        NewUserRequest user = NewUserRequest.builder().name(USER_NAME).email(USER_EMAIL).login(USER_LOGIN)
+                .birthday(USER_BIRTHDAY)
+                .build();
+        NewUserRequest user2 = NewUserRequest.builder().name(USER_NAME_2).email(USER_EMAIL_2).login(USER_LOGIN_2)
+                .birthday(USER_BIRTHDAY_2)
+                .build();
+        UserDto createdUser = userController.addUser(user).getBody();
+        userController.addUser(user2);
+
+        //when
+        ResponseEntity<List<UserDto>> page = userController.getUsers(USER_PAGE_LIMIT,
+                Objects.requireNonNull(createdUser).getId());
+
+        //then
+        assertEquals(1, Objects.requireNonNull(page.getBody()).size(), "На странице не один пользователь");
+        assertEquals(USER_NAME_2, page.getBody().get(0).getName(), "На странице некорректный пользователь");
+        assertNull(page.getHeaders().getFirst(PageDto.NEXT_CURSOR_HEADER), "У последней страницы есть курсор");
+    }
+}
@@ -0,0 +1,123 @@
+package ru.yandex.practicum.filmorate.dataset;
+
+import lombok.RequiredArgsConstructor;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.jdbc.JdbcTest;
+import org.springframework.context.annotation.ComponentScan;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@JdbcTest
+@AutoConfigureTestDatabase
+@RequiredArgsConstructor(onConstructor_ = @Autowired)
+@ComponentScan(basePackages = "ru.yandex.practicum.filmorate")
+class SyntheticDataGeneratorTest {
+    private static final int USERS_COUNT = 500;
+    private static final int FILMS_COUNT = 200;
+    private static final int GENRES_PER_FILM = 2;
+    private static final int LIKES_COUNT = 5_000;
+    private static final int FRIENDS_PER_USER = 3;
+    private static final double ZIPF_EXPONENT = 1.0;
+    private static final long SEED = 7;
+
+    private static final String DELETE_FILMS = "DELETE FROM films;";
+    private static final String DELETE_USERS = "DELETE FROM users;";
+    private static final String COUNT_USERS = "SELECT COUNT(*) FROM users;";
+    private static final String COUNT_FILMS = "SELECT COUNT(*) FROM films;";
+    private static final String COUNT_FILMS_GENRES = "SELECT COUNT(*) FROM films_genres;";
+    private static final String COUNT_LIKES = "SELECT COUNT(*) FROM films_likes;";
+    private static final String COUNT_FRIENDSHIPS = "SELECT COUNT(*) FROM users_friendship;";
+    private static final String GET_LIKES_BY_RANK = "SELECT likes_count FROM films ORDER BY likes_count DESC, id;";
+    private static final String GET_FRIENDS_BY_RANK = "SELECT COUNT(*) FROM users_friendship " +
+            "GROUP BY user_id ORDER BY COUNT(*) DESC;";
+
+    private final SyntheticDataGenerator generator;
+    private final JdbcTemplate jdbcTemplate;
+
+    @BeforeEach
+    @DisplayName("Чистим БД")
+    void cleanDatabase() {
+        jdbcTemplate.update(DELETE_FILMS);
+        jdbcTemplate.update(DELETE_USERS);
+    }
+
+    @Test
+    @DisplayName("Генератор должен записать в БД ровно заданное количество строк")
+    void test_generate_WhenSpecGiven_ShouldWriteRequestedCounts() {
+        //given
+        DatasetSpec spec = new DatasetSpec(USERS_COUNT, FILMS_COUNT, GENRES_PER_FILM, LIKES_COUNT, FRIENDS_PER_USER,
+                ZIPF_EXPONENT, SEED);
+
+        //when
+        GeneratedDataset dataset = generator.generate(spec);
+
+        //then
+        assertEquals(USERS_COUNT, dataset.userIds().length, "Вернулись не все id пользователей");
+        assertEquals(FILMS_COUNT, dataset.filmIds().length, "Вернулись не все id фильмов");
+        assertEquals(USERS_COUNT, jdbcTemplate.queryForObject(COUNT_USERS, Integer.class), "Не те пользователи");
+        assertEquals(FILMS_COUNT, jdbcTemplate.queryForObject(COUNT_FILMS, Integer.class), "Не те фильмы");
+        assertEquals(FILMS_COUNT * GENRES_PER_FILM, jdbcTemplate.queryForObject(COUNT_FILMS_GENRES, Integer.class),
+                "Не те жанры фильмов");
+        assertEquals(LIKES_COUNT, jdbcTemplate.queryForObject(COUNT_LIKES, Integer.class), "Не те лайки");
+        assertEquals(dataset.friendships(), jdbcTemplate.queryForObject(COUNT_FRIENDSHIPS, Integer.class),
+                "Не та дружба");
+        assertEquals(LIKES_COUNT, jdbcTemplate.queryForList(GET_LIKES_BY_RANK, Integer.class).stream()
+                .mapToInt(Integer::intValue).sum(), "Счётчики лайков не пересчитаны");
+    }
+
+    @Test
+    @DisplayName("Лайки и друзья должны быть сосредоточены у немногих фильмов и пользователей")
+    void test_generate_WhenZipfLikes_ShouldBeSkewed() {
+        //given
+        DatasetSpec spec = new DatasetSpec(USERS_COUNT, FILMS_COUNT, GENRES_PER_FILM, LIKES_COUNT, FRIENDS_PER_USER,
+                ZIPF_EXPONENT, SEED);
+
+        //when
+        generator.generate(spec);
+        List<Integer> likesByRank = jdbcTemplate.queryForList(GET_LIKES_BY_RANK, Integer.class);
+        List<Integer> friendsByRank = jdbcTemplate.queryForList(GET_FRIENDS_BY_RANK, Integer.class);
+
+        //then
+        assertTrue(likesByRank.get(0) > 10 * likesByRank.get(FILMS_COUNT / 2),
+                "Самый популярный фильм не выделяется среди остальных");
+        assertTrue(friendsByRank.get(0) > 5 * friendsByRank.get(friendsByRank.size() / 2),
+                "Число друзей распределено не по степенному закону");
+    }
+
+    @Test
+    @DisplayName("Одинаковое зерно должно давать одинаковые данные")
+    void test_generate_WhenSameSeed_ShouldBeDeterministic() {
+        //given
+        DatasetSpec spec = new DatasetSpec(USERS_COUNT, FILMS_COUNT, GENRES_PER_FILM, LIKES_COUNT, FRIENDS_PER_USER,
+                ZIPF_EXPONENT, SEED);
+
+        //when
+        generator.generate(spec);
+        List<Integer> firstLikes = jdbcTemplate.queryForList(GET_LIKES_BY_RANK, Integer.class);
+        List<Integer> firstFriends = jdbcTemplate.queryForList(GET_FRIENDS_BY_RANK, Integer.class);
+        cleanDatabase();
+        generator.generate(spec);
+
+        //then
+        assertEquals(firstLikes, jdbcTemplate.queryForList(GET_LIKES_BY_RANK, Integer.class),
+                "Лайки отличаются при одинаковом зерне");
+        assertEquals(firstFriends, jdbcTemplate.queryForList(GET_FRIENDS_BY_RANK, Integer.class),
+                "Друзья отличаются при одинаковом зерне");
+    }
+
+    @Test
+    @DisplayName("Лайков не может быть больше, чем пар фильма и пользователя")
+    void test_datasetSpec_WhenTooManyLikes_ShouldThrowsError() {
+        //given && when && then
+        assertThrows(IllegalArgumentException.class,
+                () -> new DatasetSpec(2, 2, GENRES_PER_FILM, 5, FRIENDS_PER_USER, ZIPF_EXPONENT, SEED),
+                "Создан набор данных с невозможным числом лайков");
+    }
+}
@@ -0,0 +1,63 @@
+package ru.yandex.practicum.filmorate.model;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class IntHashSetTest {
+    private static final int OPERATIONS_COUNT = 100_000;
+    private static final int VALUES_RANGE = 2_000;
+    private static final long RANDOM_SEED = 42;
+
+    @Test
+    @DisplayName("Набор должен вести себя так же, как HashSet, при случайных добавлениях и удалениях")
+    public void test_addAndRemove_WhenRandomOperations_ShouldMatchHashSet() {
+        //given
+        IntHashSet intSet = new IntHashSet();
+        Set<Integer> expected = new HashSet<>();
+        Random random = new Random(RANDOM_SEED);
+
+        //when
+        for (int i = 0; i < OPERATIONS_COUNT; i++) {
+            int value = random.nextInt(VALUES_RANGE) - VALUES_RANGE / 2;
+            if (random.nextBoolean()) {
+                assertEquals(expected.add(value), intSet.add(value), "Добавление отличается от HashSet");
+            } else {
+                assertEquals(expected.remove(value), intSet.remove(value), "Удаление отличается от HashSet");
+            }
+        }
+
+        //then
+        assertEquals(expected.size(), intSet.size(), "Размер набора отличается от HashSet");
+        assertEquals(expected, intSet, "Содержимое набора отличается от HashSet");
+        assertEquals(expected.hashCode(), intSet.hashCode(), "Хэш набора отличается от HashSet");
+        for (int value = -VALUES_RANGE / 2; value < VALUES_RANGE / 2; value++) {
+            assertEquals(expected.contains(value), intSet.contains(value), "Набор неверно ищет " + value);
+        }
+    }
+
+    @Test
+    @DisplayName("Набор должен записываться в JSON и читаться из него обычным массивом чисел")
+    public void test_json_WhenSerialized_ShouldBeNumberArray() throws JsonProcessingException {
+        //given
+        ObjectMapper objectMapper = new ObjectMapper();
+        IntHashSet intSet = IntHashSet.of(0, 7, 3);
+
+        //when
+        String json = objectMapper.writeValueAsString(intSet);
+        IntHashSet readSet = objectMapper.readValue("[5,0,5,9]", IntHashSet.class);
+
+        //then
+        assertEquals(Set.of(0, 3, 7), objectMapper.readValue(json, new TypeReference<Set<Integer>>() { }),
+                "Набор записан в JSON не массивом чисел");
+        assertEquals(Set.of(0, 5, 9), readSet, "Набор неверно прочитан из JSON");
+    }
+}
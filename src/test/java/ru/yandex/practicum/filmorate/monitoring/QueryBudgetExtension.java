@@ -0,0 +1,50 @@
+package ru.yandex.practicum.filmorate.monitoring;
+
+import org.junit.jupiter.api.extension.AfterEachCallback;
+import org.junit.jupiter.api.extension.BeforeEachCallback;
+import org.junit.jupiter.api.extension.ExtensionContext;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Расширение JUnit для проверки бюджета запросов к БД.
+ * Подключается полем теста с @RegisterExtension и считает запросы потока теста через QueryStats,
+ * поэтому в контексте теста источник данных должен быть обёрнут QueryStatsDataSource.
+ * Подготовку данных можно исключить из подсчёта вызовом reset перед проверяемым вызовом.
+ */
+public class QueryBudgetExtension implements BeforeEachCallback, AfterEachCallback {
+    private QueryStats stats;
+
+    @Override
+    public void beforeEach(ExtensionContext context) {
+        stats = QueryStats.begin();
+    }
+
+    @Override
+    public void afterEach(ExtensionContext context) {
+        QueryStats.end();
+        stats = null;
+    }
+
+    /**
+     * Обнуляет счётчики запросов
+     */
+    public void reset() {
+        stats.reset();
+    }
+
+    /**
+     * Возвращает число запросов к БД с начала теста или с последнего reset
+     */
+    public int getQueryCount() {
+        return stats.getQueries();
+    }
+
+    /**
+     * Проверяет, что с начала теста или с последнего reset выполнено не больше maxQueries запросов к БД
+     */
+    public void assertQueriesAtMost(int maxQueries, String message) {
+        assertTrue(stats.getQueries() <= maxQueries,
+                () -> message + ": выполнено " + stats.getQueries() + " запросов к БД при бюджете " + maxQueries);
+    }
+}
@@ -0,0 +1,51 @@
+package ru.yandex.practicum.filmorate.monitoring;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class QueryStatsFilterTest {
+    private static final String DATABASE_URL = "jdbc:h2:mem:query-stats;DB_CLOSE_DELAY=-1";
+    private static final int WARN_THRESHOLD = 2;
+    private static final int ROWS_COUNT = 3;
+
+    private final JdbcTemplate jdbc = new JdbcTemplate(new QueryStatsDataSource(
+            new DriverManagerDataSource(DATABASE_URL)));
+
+    @Test
+    @DisplayName("Фильтр должен посчитать запросы и строки HTTP запроса и отдать их в заголовках ответа")
+    void test_doFilter_WhenHandlerQueriesDatabase_ShouldCountQueriesAndRows() throws Exception {
+        //given
+        QueryStatsFilter filter = new QueryStatsFilter(true, WARN_THRESHOLD);
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        jdbc.execute("CREATE TABLE IF NOT EXISTS items (id INT)");
+        jdbc.update("DELETE FROM items");
+
+        //when
+        filter.doFilter(new MockHttpServletRequest("GET", "/items"), response, (request, filterResponse) -> {
+            jdbc.batchUpdate("INSERT INTO items VALUES (?)", List.of(new Object[]{1}, new Object[]{2},
+                    new Object[]{3}));
+            jdbc.queryForList("SELECT id FROM items", Integer.class);
+            jdbc.queryForList("SELECT id FROM items WHERE id = 1", Integer.class);
+            filterResponse.getWriter().write("[]");
+        });
+        jdbc.queryForList("SELECT id FROM items", Integer.class);
+
+        //then
+        assertEquals("3", response.getHeader(QueryStatsFilter.QUERY_COUNT_HEADER), "Неверное число запросов");
+        assertEquals(String.valueOf(ROWS_COUNT * 2 + 1), response.getHeader(QueryStatsFilter.QUERY_ROWS_HEADER),
+                "Неверное число строк");
+        assertNotNull(response.getHeader(QueryStatsFilter.QUERY_TIME_HEADER), "Нет времени в БД");
+        QueryStatsFilter.Stats stats = filter.getStats();
+        assertEquals(1, stats.requests(), "Неверное число HTTP запросов");
+        assertEquals(3, stats.queries(), "Посчитаны запросы вне HTTP запроса");
+        assertEquals(1, stats.overThreshold(), "Не учтено превышение порога запросов");
+    }
+}
@@ -0,0 +1,119 @@
+package ru.yandex.practicum.filmorate.service;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import ru.yandex.practicum.filmorate.exception.NotFoundException;
+
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SingleFlightTest {
+    private static final int CALLS_COUNT = 8;
+    private static final int KEY = 1;
+    private static final long LONG_TIMEOUT_SECONDS = 10;
+    private static final long SHORT_TIMEOUT_MILLIS = 50;
+
+    private final ExecutorService executor = Executors.newFixedThreadPool(CALLS_COUNT);
+    private final AtomicInteger computations = new AtomicInteger();
+    private final CountDownLatch release = new CountDownLatch(1);
+
+    @AfterEach
+    void shutdownExecutor() {
+        release.countDown();
+        executor.shutdownNow();
+    }
+
+    @Test
+    @DisplayName("Одновременные вызовы с одним ключом должны выполнить вычисление один раз и получить его результат")
+    void test_execute_WhenConcurrentCallsWithSameKey_ShouldComputeOnce() throws Exception {
+        //given
+        SingleFlight<Integer, List<Integer>> singleFlight = new SingleFlight<>("test", LONG_TIMEOUT_SECONDS,
+                TimeUnit.SECONDS);
+
+        //when
+        List<Future<List<Integer>>> futures = IntStream.range(0, CALLS_COUNT)
+                .mapToObj(i -> executor.submit(() -> singleFlight.execute(KEY, this::blockingComputation)))
+                .toList();
+        awaitCalls(singleFlight, CALLS_COUNT);
+        release.countDown();
+        List<Integer> firstResult = futures.get(0).get();
+
+        //then
+        for (Future<List<Integer>> future : futures) {
+            assertSame(firstResult, future.get(), "Вызовы получили разные результаты");
+        }
+        assertEquals(1, computations.get(), "Вычисление выполнено больше одного раза");
+        assertEquals(new SingleFlight.Stats(CALLS_COUNT, CALLS_COUNT - 1, 0), singleFlight.getStats(),
+                "Неверные счётчики объединения вызовов");
+    }
+
+    @Test
+    @DisplayName("Ошибка вычисления должна достаться всем ждущим вызовам и не мешать следующему вычислению")
+    void test_execute_WhenComputationFails_ShouldPropagateErrorToWaitingCalls() throws Exception {
+        //given
+        SingleFlight<Integer, List<Integer>> singleFlight = new SingleFlight<>("test", LONG_TIMEOUT_SECONDS,
+                TimeUnit.SECONDS);
+        Future<List<Integer>> leader = executor.submit(() -> singleFlight.execute(KEY, () -> {
+            blockingComputation();
+            throw new NotFoundException("Не найдено");
+        }));
+        awaitCalls(singleFlight, 1);
+        Future<List<Integer>> follower = executor.submit(() -> singleFlight.execute(KEY, this::blockingComputation));
+        awaitCalls(singleFlight, 2);
+
+        //when
+        release.countDown();
+
+        //then
+        ExecutionException leaderError = assertThrows(ExecutionException.class, leader::get, "Ошибка потеряна");
+        ExecutionException followerError = assertThrows(ExecutionException.class, follower::get,
+                "Ожидающий вызов не получил ошибку");
+        assertInstanceOf(NotFoundException.class, leaderError.getCause(), "Неверная ошибка вычисления");
+        assertInstanceOf(NotFoundException.class, followerError.getCause(), "Неверная ошибка ожидающего вызова");
+        assertEquals(List.of(KEY), singleFlight.execute(KEY, this::blockingComputation),
+                "Следующее вычисление не выполнено");
+    }
+
+    @Test
+    @DisplayName("Вызов, не дождавшийся чужого вычисления, должен выполнить его сам")
+    void test_execute_WhenWaitTimesOut_ShouldComputeSeparately() throws Exception {
+        //given
+        SingleFlight<Integer, List<Integer>> singleFlight = new SingleFlight<>("test", SHORT_TIMEOUT_MILLIS,
+                TimeUnit.MILLISECONDS);
+        executor.submit(() -> singleFlight.execute(KEY, this::blockingComputation));
+        awaitCalls(singleFlight, 1);
+
+        //when
+        List<Integer> result = singleFlight.execute(KEY, () -> List.of(KEY));
+
+        //then
+        assertEquals(List.of(KEY), result, "Неверный результат отдельного вычисления");
+        assertEquals(1, singleFlight.getStats().timeouts(), "Не учтено истечение ожидания");
+    }
+
+    private List<Integer> blockingComputation() {
+        computations.incrementAndGet();
+        try {
+            release.await();
+        } catch (InterruptedException exception) {
+            Thread.currentThread().interrupt();
+        }
+        return List.of(KEY);
+    }
+
+    private void awaitCalls(SingleFlight<?, ?> singleFlight, int callsCount) throws InterruptedException {
+        while (singleFlight.getStats().calls() < callsCount) {
+            Thread.sleep(1);
+        }
+    }
+}
@@ -0,0 +1,156 @@
+package ru.yandex.practicum.filmorate.storage;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.dao.DataIntegrityViolationException;
+import ru.yandex.practicum.filmorate.dto.film.UpdateFilmRequest;
+import ru.yandex.practicum.filmorate.mapper.FilmMapper;
+import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.User;
+
+import java.time.LocalDate;
+import java.time.Month;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class InMemoryFilmStorageTest {
+    private static final String FILM_NAME = "Фильм";
+    private static final String FILM_DESCRIPTION = "Описание фильма";
+    private static final LocalDate FILM_RELEASE_DATE = LocalDate.of(1992, Month.DECEMBER, 12);
+    private static final int FILM_DURATION = 100;
+    private static final int FILM_DURATION_INCORRECT = -100;
+    private static final int FILM_ID = 100;
+
+    private static final String USER_EMAIL = "mail@mail.ru";
+    private static final String USER_LOGIN = "user";
+
+    private static final int THREADS_COUNT = 8;
+    private static final int FILMS_PER_THREAD = 1_000;
+
+    private InMemoryUserStorage userStorage;
+    private InMemoryFilmStorage filmStorage;
+
+    @BeforeEach
+    void createStorages() {
+        userStorage = new InMemoryUserStorage();
+        filmStorage = new InMemoryFilmStorage(userStorage);
+    }
+
+    @Test
+    @DisplayName("При параллельном добавлении фильмов каждый должен получить уникальный id")
+    void test_addFilm_WhenConcurrent_ShouldAssignUniqueIds() throws Exception {
+        //given
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS_COUNT);
+
+        //when
+        List<Future<List<Integer>>> futures = IntStream.range(0, THREADS_COUNT)
+                .mapToObj(thread -> executor.submit(() -> IntStream.range(0, FILMS_PER_THREAD)
+                        .mapToObj(i -> filmStorage.addFilm(createFilm()).getId())
+                        .toList()))
+                .toList();
+        Set<Integer> ids = new HashSet<>();
+        for (Future<List<Integer>> future : futures) {
+            ids.addAll(future.get());
+        }
+        executor.shutdown();
+
+        //then
+        assertEquals(THREADS_COUNT * FILMS_PER_THREAD, ids.size(), "Фильмам выданы одинаковые id");
+        assertEquals(THREADS_COUNT * FILMS_PER_THREAD, filmStorage.getFilms().size(), "Потеряны фильмы");
+    }
+
+    @Test
+    @DisplayName("Лайки должны ставиться и удаляться один раз и определять ТОП фильмов")
+    void test_addAndRemoveLike_WhenRepeated_ShouldBeIdempotentAndOrderPopularFilms() {
+        //given
+        List<Film> films = IntStream.range(0, 3).mapToObj(i -> filmStorage.addFilm(createFilm())).toList();
+        List<User> users = IntStream.range(0, 2).mapToObj(i -> userStorage.addUser(User.builder()
+                .email(i + USER_EMAIL).login(USER_LOGIN + i).build())).toList();
+
+        //when
+        boolean added = filmStorage.addLike(films.get(2).getId(), users.get(0).getId());
+        boolean addedAgain = filmStorage.addLike(films.get(2).getId(), users.get(0).getId());
+        filmStorage.addLike(films.get(2).getId(), users.get(1).getId());
+        filmStorage.addLike(films.get(1).getId(), users.get(0).getId());
+        filmStorage.addLike(films.get(0).getId(), users.get(0).getId());
+        boolean removed = filmStorage.removeLike(films.get(0).getId(), users.get(0).getId());
+        boolean removedAgain = filmStorage.removeLike(films.get(0).getId(), users.get(0).getId());
+
+        //then
+        assertTrue(added, "Лайк не поставлен");
+        assertFalse(addedAgain, "Повторный лайк поставлен");
+        assertTrue(removed, "Лайк не удалён");
+        assertFalse(removedAgain, "Повторно удалён лайк");
+        assertEquals(List.of(films.get(2).getId(), films.get(1).getId(), films.get(0).getId()),
+                filmStorage.getMostPopularFilms(films.size()).stream().map(Film::getId).toList(),
+                "Неверный порядок ТОП фильмов");
+        assertThrows(DataIntegrityViolationException.class,
+                () -> filmStorage.addLike(FILM_ID, users.get(0).getId()),
+                "Поставлен лайк несуществующему фильму");
+        assertThrows(DataIntegrityViolationException.class,
+                () -> filmStorage.addLike(films.get(0).getId(), FILM_ID),
+                "Поставлен лайк от несуществующего пользователя");
+    }
+
+    @Test
+    @DisplayName("Отклонённое обновление полученного фильма не должно менять фильм в хранилище")
+    void test_getFilmById_WhenReturnedFilmChangedWithoutUpdate_ShouldKeepStoredFilm() {
+        //given
+        Film film = filmStorage.addFilm(createFilm());
+        User user = userStorage.addUser(User.builder().email(USER_EMAIL).login(USER_LOGIN).build());
+        filmStorage.addLike(film.getId(), user.getId());
+
+        //when
+        Film rejectedFilm = FilmMapper.updateFilmFields(filmStorage.getFilmById(film.getId()),
+                UpdateFilmRequest.builder().id(film.getId()).duration(FILM_DURATION_INCORRECT).build());
+        rejectedFilm.getLikes().clear();
+        Film storedFilm = filmStorage.getFilmById(film.getId());
+
+        //then
+        assertEquals(FILM_DURATION, storedFilm.getDuration(), "Отклонённое обновление изменило фильм в хранилище");
+        assertEquals(Set.of(user.getId()), storedFilm.getLikes(), "Изменение копии затронуло лайки фильма");
+    }
+
+    @Test
+    @DisplayName("Списки фильмов должны отдавать копии фильмов с актуальными лайками")
+    void test_getFilmsAndPopular_WhenFilmLiked_ShouldReturnIsolatedCopiesWithLikes() {
+        //given
+        Film addedFilm = createFilm();
+        filmStorage.addFilm(addedFilm);
+        User user = userStorage.addUser(User.builder().email(USER_EMAIL).login(USER_LOGIN).build());
+        filmStorage.addLike(addedFilm.getId(), user.getId());
+
+        //when
+        Film popularFilm = filmStorage.getMostPopularFilms(1).get(0);
+        Film listedFilm = filmStorage.getFilms().get(0);
+        List<Film> streamedFilms = new ArrayList<>();
+        filmStorage.streamFilms(streamedFilms::addAll);
+        addedFilm.setName(FILM_NAME + FILM_NAME);
+        listedFilm.setDuration(FILM_DURATION_INCORRECT);
+        popularFilm.getLikes().clear();
+
+        //then
+        assertEquals(Set.of(user.getId()), filmStorage.getFilms(0, 1).get(0).getLikes(),
+                "В странице фильмов нет лайков");
+        assertEquals(Set.of(user.getId()), streamedFilms.get(0).getLikes(), "В выгрузке фильмов нет лайков");
+        assertEquals(Set.of(user.getId()), listedFilm.getLikes(), "В списке фильмов нет лайков");
+        Film storedFilm = filmStorage.getFilmById(addedFilm.getId());
+        assertEquals(FILM_NAME, storedFilm.getName(), "Изменение добавленного объекта затронуло хранилище");
+        assertEquals(FILM_DURATION, storedFilm.getDuration(), "Изменение фильма из списка затронуло хранилище");
+        assertEquals(Set.of(user.getId()), storedFilm.getLikes(), "Изменение лайков из ТОП затронуло хранилище");
+    }
+
+    private Film createFilm() {
+        return Film.builder().name(FILM_NAME).description(FILM_DESCRIPTION).releaseDate(FILM_RELEASE_DATE)
+                .duration(FILM_DURATION).build();
+    }
+}
@@ -0,0 +1,59 @@
+package ru.yandex.practicum.filmorate.storage;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.dao.DataIntegrityViolationException;
+import ru.yandex.practicum.filmorate.model.IntHashSet;
+import ru.yandex.practicum.filmorate.model.User;
+
+import java.util.List;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class InMemoryUserStorageTest {
+    private static final String USER_EMAIL = "mail@mail.ru";
+    private static final String USER_LOGIN = "user";
+    private static final int USER_ID = 567;
+
+    private InMemoryUserStorage userStorage;
+
+    @BeforeEach
+    void createStorage() {
+        userStorage = new InMemoryUserStorage();
+    }
+
+    @Test
+    @DisplayName("Дружба должна добавляться и удаляться один раз и давать общих друзей")
+    void test_addAndRemoveFriends_WhenRepeated_ShouldBeIdempotentAndFindCommonFriends() {
+        //given
+        List<User> users = IntStream.range(0, 4).mapToObj(i -> userStorage.addUser(User.builder()
+                .email(i + USER_EMAIL).login(USER_LOGIN + i).build())).toList();
+        int first = users.get(0).getId();
+        int second = users.get(1).getId();
+        int common = users.get(2).getId();
+        int removedFriend = users.get(3).getId();
+
+        //when
+        boolean added = userStorage.addFriends(first, common);
+        boolean addedAgain = userStorage.addFriends(first, common);
+        userStorage.addFriends(second, common);
+        userStorage.addFriends(first, removedFriend);
+        userStorage.addFriends(second, removedFriend);
+        boolean removed = userStorage.removeFriends(second, removedFriend);
+        boolean removedAgain = userStorage.removeFriends(second, removedFriend);
+
+        //then
+        assertTrue(added, "Пользователь не добавлен в друзья");
+        assertFalse(addedAgain, "Пользователь повторно добавлен в друзья");
+        assertTrue(removed, "Пользователь не удалён из друзей");
+        assertFalse(removedAgain, "Пользователь повторно удалён из друзей");
+        assertEquals(IntHashSet.of(common, removedFriend), userStorage.getUserById(first).getFriends(),
+                "Неверные друзья в пользователе");
+        assertEquals(IntHashSet.of(common), userStorage.getCommonFriendIds(first, second), "Неверные общие друзья");
+        assertTrue(userStorage.getUserFriends(common).isEmpty(), "Дружба не должна быть взаимной");
+        assertThrows(DataIntegrityViolationException.class, () -> userStorage.addFriends(first, USER_ID),
+                "В друзья добавлен несуществующий пользователь");
+    }
+}
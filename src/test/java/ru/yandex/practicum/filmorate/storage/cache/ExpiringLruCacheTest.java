@@ -0,0 +1,81 @@
+package ru.yandex.practicum.filmorate.storage.cache;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import ru.yandex.practicum.filmorate.exception.NotFoundException;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ExpiringLruCacheTest {
+    private static final long TTL_SECONDS = 60;
+    private static final int MISSING_KEY = 100;
+
+    private final List<Integer> loadedKeys = new ArrayList<>();
+    private final AtomicLong nanoTime = new AtomicLong();
+
+    @Test
+    @DisplayName("Кэш должен загружать элемент один раз и вытеснять давно не читанные элементы")
+    void test_get_WhenCacheIsFull_ShouldEvictLeastRecentlyUsed() {
+        //given
+        ExpiringLruCache<StringBuilder> cache = createCache(1);
+
+        //when
+        cache.get(1);
+        cache.get(1);
+        cache.get(2);
+        cache.get(1);
+
+        //then
+        assertEquals(List.of(1, 2, 1), loadedKeys, "Неверные загрузки элементов");
+        assertEquals(new ExpiringLruCache.Stats(1, 3, 2), cache.getStats(), "Неверные счётчики кэша");
+        assertEquals(1, cache.size(), "Кэш превысил свой размер");
+    }
+
+    @Test
+    @DisplayName("Кэш должен перечитывать устаревший и сброшенный элемент и не кэшировать ошибки загрузки")
+    void test_get_WhenExpiredOrInvalidated_ShouldReload() {
+        //given
+        ExpiringLruCache<StringBuilder> cache = createCache(10);
+        cache.get(1);
+        cache.get(2);
+
+        //when
+        nanoTime.addAndGet(TimeUnit.SECONDS.toNanos(TTL_SECONDS));
+        cache.get(1);
+        cache.invalidate(2);
+        cache.get(2);
+        assertThrows(NotFoundException.class, () -> cache.get(MISSING_KEY), "Получен несуществующий элемент");
+        assertThrows(NotFoundException.class, () -> cache.get(MISSING_KEY), "Закэширована ошибка загрузки");
+
+        //then
+        assertEquals(List.of(1, 2, 1, 2, MISSING_KEY, MISSING_KEY), loadedKeys, "Неверные загрузки элементов");
+    }
+
+    @Test
+    @DisplayName("Изменение полученного из кэша элемента не должно менять элемент в кэше")
+    void test_get_WhenReturnedValueChanged_ShouldKeepCachedValue() {
+        //given
+        ExpiringLruCache<StringBuilder> cache = createCache(10);
+
+        //when
+        cache.get(1).append("изменение");
+
+        //then
+        assertEquals("1", cache.get(1).toString(), "Элемент в кэше изменён через полученную копию");
+    }
+
+    private ExpiringLruCache<StringBuilder> createCache(int maxSize) {
+        return new ExpiringLruCache<>(maxSize, TTL_SECONDS, TimeUnit.SECONDS, key -> {
+            loadedKeys.add(key);
+            if (key == MISSING_KEY) {
+                throw new NotFoundException("Элемент " + key + " не найден");
+            }
+            return new StringBuilder(String.valueOf(key));
+        }, StringBuilder::new, nanoTime::get);
+    }
+}
@@ -1,6 +1,7 @@
 package ru.yandex.practicum.filmorate.storage.dao;
 
 import lombok.RequiredArgsConstructor;
+import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.Test;
@@ -8,18 +9,46 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
 import org.springframework.boot.test.autoconfigure.jdbc.JdbcTest;
 import org.springframework.context.annotation.ComponentScan;
+import org.springframework.core.io.ClassPathResource;
 import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.jdbc.CannotGetJdbcConnectionException;
 import org.springframework.jdbc.core.JdbcTemplate;
-import ru.yandex.practicum.filmorate.exception.InternalServerException;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.jdbc.datasource.init.ResourceDatabasePopulator;
+import org.springframework.test.context.transaction.TestTransaction;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
 import ru.yandex.practicum.filmorate.exception.NotFoundException;
 import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.Genre;
+import ru.yandex.practicum.filmorate.model.Mpa;
 import ru.yandex.practicum.filmorate.model.User;
 import ru.yandex.practicum.filmorate.storage.FilmStorage;
+import ru.yandex.practicum.filmorate.storage.GenreStorage;
+import ru.yandex.practicum.filmorate.storage.MpaStorage;
 import ru.yandex.practicum.filmorate.storage.UserStorage;
+import ru.yandex.practicum.filmorate.storage.cache.CachedFilmStorage;
+import ru.yandex.practicum.filmorate.storage.dao.mapper.FilmRowMapper;
+import ru.yandex.practicum.filmorate.storage.dao.mapper.FilmWithGenresExtractor;
 
+import javax.sql.DataSource;
 import java.time.LocalDate;
 import java.time.Month;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.stream.IntStream;
 
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -45,6 +74,17 @@ class FilmDbStorageTest {
 
     private static final int FILM_ID = 100;
     private static final int FILM_COUNT_1 = 1;
+    private static final int FILM_COUNT_10 = 10;
+    private static final int FILMS_LIST_QUERY_COUNT = 2;
+    private static final int ADD_FILM_QUERY_COUNT = 3;
+    private static final int UPDATE_FILM_QUERY_COUNT = 4;
+    private static final int ADD_FILMS_QUERY_COUNT = 2;
+    private static final int STREAM_FILMS_COUNT = 501;
+
+    private static final Mpa MPA = new Mpa(1, null);
+    private static final Genre GENRE = new Genre(1, null);
+    private static final Genre GENRE_2 = new Genre(2, null);
+    private static final Genre GENRE_3 = new Genre(3, null);
 
     private static final String USER_NAME = "Вася";
     private static final String USER_EMAIL = "mail@mail.ru";
@@ -56,10 +96,34 @@ class FilmDbStorageTest {
 
     private static final String DELETE_FILMS = "DELETE FROM films;";
     private static final String DELETE_USERS = "DELETE FROM users;";
+    private static final String DATA_SCRIPT = "data.sql";
+    private static final String GET_POPULAR_FILMS_IDS = "SELECT f.id FROM films f " +
+            "LEFT JOIN films_likes fl ON f.id = fl.film_id " +
+            "GROUP BY f.id " +
+            "ORDER BY COUNT(fl.user_id) DESC, f.id " +
+            "LIMIT ?;";
+    private static final String SET_LIKES_COUNT = "UPDATE films SET likes_count = ? WHERE id = ?;";
+    private static final String GET_LIKES_COUNT = "SELECT likes_count FROM films WHERE id = ?;";
+    private static final String GET_FILM_LIKES = "SELECT COUNT(*) FROM films_likes WHERE film_id = ?;";
+    private static final String DELETE_FILM = "DELETE FROM films WHERE id = ?;";
+
+    private static final int WRITE_BEHIND_CAPACITY = 100;
+    private static final int WRITE_BEHIND_BATCH_SIZE = 100;
+    private static final long WRITE_BEHIND_FLUSH_INTERVAL_MS = 10;
+    private static final long REBUILD_WAIT_MS = 300;
 
     private final FilmStorage filmStorage;
     private final UserStorage userStorage;
     private final JdbcTemplate jdbcTemplate;
+    private final DataSource dataSource;
+    private final FilmRowMapper filmRowMapper;
+    private final FilmWithGenresExtractor filmWithGenresExtractor;
+    private final MpaStorage mpaStorage;
+    private final GenreStorage genreStorage;
+    private final FilmLikesWriteBuffer likesWriteBuffer;
+    private final PlatformTransactionManager transactionManager;
+    private final FilmPopularityIndex popularityIndex;
+    private final CachedFilmStorage cachedFilmStorage;
 
     @BeforeEach
     @DisplayName("Чистим БД")
@@ -68,6 +132,17 @@ class FilmDbStorageTest {
         jdbcTemplate.update(DELETE_USERS);
     }
 
+    @AfterEach
+    @DisplayName("Восстанавливаем БД после теста, зафиксировавшего свои транзакции")
+    void restoreCommittedDatabase() {
+        if (TestTransaction.isActive()) {
+            return;
+        }
+        new ResourceDatabasePopulator(new ClassPathResource(DATA_SCRIPT)).execute(dataSource);
+        popularityIndex.rebuild();
+        cachedFilmStorage.invalidate();
+    }
+
     @Test
     @DisplayName("При получении существующего фильма по id хранилище должно вернуть его")
     void test_getFilmById_WhenFilmExists_ShouldReturnOne() {
@@ -93,6 +168,42 @@ class FilmDbStorageTest {
                 "Из БД получен несуществующий фильм");
     }
 
+    @Test
+    @DisplayName("Проверка наличия фильма должна находить только существующий фильм")
+    void test_existsFilm_WhenFilmExistsOrNot_ShouldReturnCorrectResult() {
+        //given
+        Film film = Film.builder().name(FILM_NAME).description(FILM_DESCRIPTION).releaseDate(FILM_RELEASE_DATE)
+                .duration(FILM_DURATION).build();
+        Film createdFilm = filmStorage.addFilm(film);
+
+        //when && then
+        assertTrue(filmStorage.existsFilm(createdFilm.getId()), "Существующий фильм не найден");
+        assertFalse(filmStorage.existsFilm(FILM_ID), "Найден несуществующий фильм");
+    }
+
+    @Test
+    @DisplayName("Кэш фильмов должен отдавать копии фильма и сбрасывать фильм при его обновлении")
+    void test_getFilmById_WhenCachedAndUpdated_ShouldReturnIsolatedFreshCopies() {
+        //given
+        Film film = filmStorage.addFilm(Film.builder().name(FILM_NAME).description(FILM_DESCRIPTION)
+                .releaseDate(FILM_RELEASE_DATE).duration(FILM_DURATION).mpa(MPA)
+                .genres(new LinkedHashSet<>(List.of(GENRE))).build());
+        Film cachedFilm = filmStorage.getFilmById(film.getId());
+
+        //when
+        cachedFilm.setName(FILM_NAME_2);
+        cachedFilm.getGenres().add(GENRE_2);
+        Film untouchedFilm = filmStorage.getFilmById(film.getId());
+        filmStorage.updateFilm(cachedFilm);
+        Film updatedFilm = filmStorage.getFilmById(film.getId());
+
+        //then
+        assertEquals(FILM_NAME, untouchedFilm.getName(), "Изменение копии фильма попало в кэш");
+        assertEquals(1, untouchedFilm.getGenres().size(), "Изменение жанров копии фильма попало в кэш");
+        assertEquals(FILM_NAME_2, updatedFilm.getName(), "После обновления из кэша получен старый фильм");
+        assertEquals(2, updatedFilm.getGenres().size(), "После обновления из кэша получены старые жанры");
+    }
+
     @Test
     @DisplayName("При добавлении двух фильмов хранилище должно возвращать их")
     void test_getFilms_WhenAddedFilms_ShouldReturnAll() {
@@ -260,6 +371,27 @@ class FilmDbStorageTest {
                 "Не удалось поставить лайк существующему фильму");
     }
 
+    @Test
+    @DisplayName("Повторный лайк от того же пользователя не должен менять счётчик лайков")
+    void test_addLikeByUser_WhenLikeAlreadyExists_ShouldNotChangeCount() {
+        //given
+        Film film = Film.builder().name(FILM_NAME).description(FILM_DESCRIPTION).releaseDate(FILM_RELEASE_DATE)
+                .duration(FILM_DURATION).build();
+        Film createdFilm = filmStorage.addFilm(film);
+        User user = User.builder().name(USER_NAME).email(USER_EMAIL).login(USER_LOGIN).birthday(USER_BIRTHDAY).build();
+        User createdUser = userStorage.addUser(user);
+
+        //when
+        boolean firstAdded = filmStorage.addLike(createdFilm.getId(), createdUser.getId());
+        boolean secondAdded = filmStorage.addLike(createdFilm.getId(), createdUser.getId());
+
+        //then
+        assertTrue(firstAdded, "Первый лайк не добавлен");
+        assertFalse(secondAdded, "Повторный лайк добавлен");
+        assertEquals(1, jdbcTemplate.queryForObject(GET_LIKES_COUNT, Integer.class, createdFilm.getId()),
+                "Повторный лайк изменил счётчик лайков");
+    }
+
     @Test
     @DisplayName("При добавлении лайка несуществующему фильму от существующего пользователя должен вернуть ошибку")
     void test_addLikeByUser_WhenFilmNotExists_ShouldThrowsError() {
@@ -292,31 +424,32 @@ class FilmDbStorageTest {
     }
 
     @Test
-    @DisplayName("При удалении лайка с существующего фильма от несуществующего пользователя должен вернуть ошибку")
-    void test_removeLikeByUser_WhenUserNotExists_ShouldThrowsError() {
+    @DisplayName("При удалении лайка с существующего фильма от несуществующего пользователя должен вернуть false")
+    void test_removeLikeByUser_WhenUserNotExists_ShouldReturnFalse() {
         //given && when
         Film film = Film.builder().name(FILM_NAME).description(FILM_DESCRIPTION).releaseDate(FILM_RELEASE_DATE)
                 .duration(FILM_DURATION).build();
         Film createdFilm = filmStorage.addFilm(film);
 
         //then
-        assertThrows(InternalServerException.class, () -> filmStorage.removeLike(createdFilm.getId(), USER_ID),
+        assertFalse(filmStorage.removeLike(createdFilm.getId(), USER_ID),
                 "Удалось убрать лайк от несуществующего пользователя");
     }
 
     @Test
-    @DisplayName("При удалении лайка с несуществующего фильма от существующего пользователя должен вернуть ошибку")
-    void test_removeLikeByUser_WhenFilmNotExists_ShouldThrowsError() {
+    @DisplayName("При удалении лайка с несуществующего фильма от существующего пользователя должен вернуть false")
+    void test_removeLikeByUser_WhenFilmNotExists_ShouldReturnFalse() {
         //given && when
         User user = User.builder().name(USER_NAME).email(USER_EMAIL).login(USER_LOGIN).birthday(USER_BIRTHDAY).build();
         User createdUser = userStorage.addUser(user);
 
         //then
-        assertThrows(InternalServerException.class, () -> filmStorage.removeLike(FILM_ID, createdUser.getId()),
+        assertFalse(filmStorage.removeLike(FILM_ID, createdUser.getId()),
                 "Удалось убрать лайк с несуществующего фильма");
     }
 
     @Test
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
     @DisplayName("При запросе одного фильма должен вернуть самый популярный")
     void test_getMostPopularFilms_WhenRequestOne_ShouldReturnOne() {
         //given
@@ -343,4 +476,470 @@ class FilmDbStorageTest {
         assertEquals(1, popularFilms.size(), "В БД не верное количество фильмов");
         assertEquals(FILM_NAME_2, popularFilms.get(0).getName(), "В БД не корректный фильм");
     }
-}
\ No newline at end of file
+
+    @Test
+    @DisplayName("Список фильмов должен загружаться с жанрами и MPA за постоянное число запросов")
+    void test_getFilms_WhenFilmsHaveGenres_ShouldUseConstantQueryCount() {
+        //given
+        Film film = Film.builder().name(FILM_NAME).description(FILM_DESCRIPTION).releaseDate(FILM_RELEASE_DATE)
+                .duration(FILM_DURATION).mpa(MPA).genres(new LinkedHashSet<>(List.of(GENRE_2, GENRE))).build();
+        Film film2 = Film.builder().name(FILM_NAME_2).description(FILM_DESCRIPTION_2).releaseDate(FILM_RELEASE_DATE_2)
+                .duration(FILM_DURATION_2).genres(new LinkedHashSet<>(List.of(GENRE))).build();
+        Film film3 = Film.builder().name(FILM_NAME).description(FILM_DESCRIPTION).releaseDate(FILM_RELEASE_DATE)
+                .duration(FILM_DURATION).mpa(MPA).build();
+        Film createdFilm = filmStorage.addFilm(film);
+        filmStorage.addFilm(film2);
+        filmStorage.addFilm(film3);
+
+        QueryCountingDataSource countingDataSource = new QueryCountingDataSource(dataSource);
+        FilmStorage countingFilmStorage = createCountingFilmStorage(countingDataSource);
+
+        //when
+        List<Film> films = countingFilmStorage.getFilms();
+        int filmsQueryCount = countingDataSource.getQueryCount();
+        countingDataSource.reset();
+        List<Film> popularFilms = countingFilmStorage.getMostPopularFilms(FILM_COUNT_10);
+        int popularFilmsQueryCount = countingDataSource.getQueryCount();
+
+        //then
+        assertEquals(3, films.size(), "В БД не верное количество фильмов");
+        assertEquals(FILMS_LIST_QUERY_COUNT, filmsQueryCount, "Список фильмов загружается не за 2 запроса");
+        assertEquals(FILMS_LIST_QUERY_COUNT, popularFilmsQueryCount,
+                "Популярные фильмы загружаются не за 2 запроса");
+        assertEquals(List.of(GENRE, GENRE_2), List.copyOf(films.get(0).getGenres()),
+                "Жанры фильма не упорядочены по id");
+        assertEquals("Комедия", films.get(0).getGenres().iterator().next().getName(),
+                "У жанра фильма некорректное название");
+        assertEquals("G", films.get(0).getMpa().getName(), "У фильма некорректный MPA рейтинг");
+        assertEquals(1, films.get(1).getGenres().size(), "У второго фильма некорректные жанры");
+        assertNull(films.get(1).getMpa(), "У второго фильма не должно быть MPA рейтинга");
+        assertTrue(films.get(2).getGenres().isEmpty(), "У третьего фильма не должно быть жанров");
+        assertEquals(filmStorage.getFilmById(createdFilm.getId()).getGenres(), films.get(0).getGenres(),
+                "Жанры в списке отличаются от жанров фильма по id");
+    }
+
+    @Test
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
+    @DisplayName("Выгрузка фильмов должна читать фильмы и жанры через одно соединение")
+    void test_streamFilms_WhenSeveralBatches_ShouldUseSingleConnection() {
+        //given
+        filmStorage.addFilms(IntStream.range(0, STREAM_FILMS_COUNT)
+                .mapToObj(i -> Film.builder().name(FILM_NAME + i).description(FILM_DESCRIPTION)
+                        .releaseDate(FILM_RELEASE_DATE).duration(FILM_DURATION)
+                        .genres(new LinkedHashSet<>(List.of(GENRE))).build())
+                .toList());
+        QueryCountingDataSource countingDataSource = new QueryCountingDataSource(dataSource);
+        FilmStorage countingFilmStorage = new FilmDbStorage(new JdbcTemplate(countingDataSource), filmRowMapper,
+                mpaStorage, genreStorage, filmWithGenresExtractor, new FilmPopularityIndex(jdbcTemplate, true),
+                likesWriteBuffer, new DataSourceTransactionManager(countingDataSource));
+        List<Film> streamedFilms = new ArrayList<>();
+
+        //when
+        countingFilmStorage.streamFilms(streamedFilms::addAll);
+
+        //then
+        assertEquals(STREAM_FILMS_COUNT, streamedFilms.size(), "Выгружены не все фильмы");
+        assertTrue(streamedFilms.stream().allMatch(film -> film.getGenres().size() == 1), "Жанры фильмов не загружены");
+        assertEquals(1, countingDataSource.getMaxOpenConnections(), "Выгрузка заняла больше одного соединения");
+    }
+
+    @Test
+    @DisplayName("Фильм по id должен загружаться с жанрами и MPA одним запросом")
+    void test_getFilmById_WhenFilmHasGenres_ShouldUseSingleQuery() {
+        //given
+        Film film = Film.builder().name(FILM_NAME).description(FILM_DESCRIPTION).releaseDate(FILM_RELEASE_DATE)
+                .duration(FILM_DURATION).mpa(MPA).genres(new LinkedHashSet<>(List.of(GENRE_2, GENRE))).build();
+        Film createdFilm = filmStorage.addFilm(film);
+
+        QueryCountingDataSource countingDataSource = new QueryCountingDataSource(dataSource);
+        FilmStorage countingFilmStorage = createCountingFilmStorage(countingDataSource);
+
+        //when
+        Film findFilm = countingFilmStorage.getFilmById(createdFilm.getId());
+
+        //then
+        assertEquals(1, countingDataSource.getQueryCount(), "Фильм по id загружается не одним запросом");
+        assertEquals(FILM_NAME, findFilm.getName(), "В БД некорректный фильм");
+        assertEquals(List.of(GENRE, GENRE_2), List.copyOf(findFilm.getGenres()), "Жанры фильма не упорядочены по id");
+        assertEquals("Драма", findFilm.getGenres().stream().toList().get(1).getName(),
+                "У жанра фильма некорректное название");
+        assertEquals("G", findFilm.getMpa().getName(), "У фильма некорректный MPA рейтинг");
+    }
+
+    @Test
+    @DisplayName("Жанры фильма должны записываться пакетом за постоянное число запросов")
+    void test_addAndUpdateFilm_WhenFilmHasGenres_ShouldWriteGenresInBatch() {
+        //given
+        Film film = Film.builder().name(FILM_NAME).description(FILM_DESCRIPTION).releaseDate(FILM_RELEASE_DATE)
+                .duration(FILM_DURATION).mpa(MPA).genres(new LinkedHashSet<>(List.of(GENRE, GENRE_2))).build();
+        QueryCountingDataSource countingDataSource = new QueryCountingDataSource(dataSource);
+        FilmStorage countingFilmStorage = createCountingFilmStorage(countingDataSource);
+
+        //when
+        Film createdFilm = countingFilmStorage.addFilm(film);
+        int addQueryCount = countingDataSource.getQueryCount();
+        countingDataSource.reset();
+        Film updatedFilm = createdFilm.toBuilder().name(FILM_NAME_2)
+                .genres(new LinkedHashSet<>(List.of(GENRE_3, GENRE_2, GENRE))).build();
+        countingFilmStorage.updateFilm(updatedFilm);
+        int updateQueryCount = countingDataSource.getQueryCount();
+
+        //then
+        assertEquals(ADD_FILM_QUERY_COUNT, addQueryCount, "Фильм с жанрами добавляется не за 3 запроса");
+        assertEquals(UPDATE_FILM_QUERY_COUNT, updateQueryCount, "Фильм с жанрами обновляется не за 4 запроса");
+        assertEquals(List.of(GENRE, GENRE_2, GENRE_3), List.copyOf(filmStorage.getFilmById(createdFilm.getId())
+                .getGenres()), "Жанры фильма не обновлены");
+    }
+
+    @Test
+    @DisplayName("Пакет фильмов с жанрами должен добавляться двумя пакетными запросами")
+    void test_addFilms_WhenFilmsHaveGenres_ShouldUseTwoBatchQueries() {
+        //given
+        List<Film> films = IntStream.range(0, FILM_COUNT_10)
+                .mapToObj(i -> Film.builder().name(FILM_NAME + i).description(FILM_DESCRIPTION)
+                        .releaseDate(FILM_RELEASE_DATE).duration(FILM_DURATION).mpa(i % 2 == 0 ? MPA : null)
+                        .genres(new LinkedHashSet<>(List.of(GENRE, GENRE_2))).build())
+                .toList();
+        QueryCountingDataSource countingDataSource = new QueryCountingDataSource(dataSource);
+        FilmStorage countingFilmStorage = createCountingFilmStorage(countingDataSource);
+
+        //when
+        List<Film> addedFilms = countingFilmStorage.addFilms(films);
+        int addQueryCount = countingDataSource.getQueryCount();
+        Film lastFilm = filmStorage.getFilmById(addedFilms.get(FILM_COUNT_10 - 1).getId());
+
+        //then
+        assertEquals(ADD_FILMS_QUERY_COUNT, addQueryCount, "Пакет фильмов добавляется не за 2 запроса");
+        assertEquals(FILM_COUNT_10, filmStorage.getFilms().size(), "В БД не верное количество фильмов");
+        assertEquals(FILM_NAME + (FILM_COUNT_10 - 1), lastFilm.getName(), "Фильму присвоен чужой id");
+        assertEquals(List.of(GENRE, GENRE_2), List.copyOf(lastFilm.getGenres()), "Жанры фильма не сохранены");
+        assertNull(lastFilm.getMpa(), "У фильма не должно быть MPA рейтинга");
+    }
+
+    @Test
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
+    @DisplayName("ТОП фильмов из индекса популярности должен совпадать с подсчётом лайков в БД")
+    void test_getMostPopularFilms_WhenLikesChanged_ShouldMatchSqlAggregation() {
+        //given
+        List<Film> films = IntStream.range(0, 5)
+                .mapToObj(i -> filmStorage.addFilm(Film.builder().name(FILM_NAME + i).description(FILM_DESCRIPTION)
+                        .releaseDate(FILM_RELEASE_DATE).duration(FILM_DURATION).build()))
+                .toList();
+        List<User> users = IntStream.range(0, 4)
+                .mapToObj(i -> userStorage.addUser(User.builder().name(USER_NAME).email(i + USER_EMAIL)
+                        .login(USER_LOGIN + i).birthday(USER_BIRTHDAY).build()))
+                .toList();
+
+        //when
+        for (int filmIdx = 0; filmIdx < films.size(); filmIdx++) {
+            for (int userIdx = 0; userIdx < users.size() && userIdx < filmIdx; userIdx++) {
+                filmStorage.addLike(films.get(filmIdx).getId(), users.get(userIdx).getId());
+            }
+        }
+        filmStorage.removeLike(films.get(4).getId(), users.get(0).getId());
+        filmStorage.removeLike(films.get(4).getId(), users.get(1).getId());
+        filmStorage.addLike(films.get(1).getId(), users.get(3).getId());
+
+        //then
+        for (int count = 1; count <= films.size(); count++) {
+            List<Integer> expectedIds = jdbcTemplate.queryForList(GET_POPULAR_FILMS_IDS, Integer.class, count);
+            List<Integer> actualIds = filmStorage.getMostPopularFilms(count).stream().map(Film::getId).toList();
+            assertEquals(expectedIds, actualIds, "ТОП из " + count + " фильмов не совпадает с подсчётом в БД");
+        }
+    }
+
+    @Test
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
+    @DisplayName("Откаченные фильм и лайк не должны попадать в индекс популярности")
+    void test_addFilmAndLike_WhenTransactionRolledBack_ShouldNotChangePopularityIndex() {
+        //given
+        Film createdFilm = filmStorage.addFilm(Film.builder().name(FILM_NAME).description(FILM_DESCRIPTION)
+                .releaseDate(FILM_RELEASE_DATE).duration(FILM_DURATION).build());
+        User createdUser = userStorage.addUser(User.builder().name(USER_NAME).email(USER_EMAIL).login(USER_LOGIN)
+                .birthday(USER_BIRTHDAY).build());
+        TransactionTemplate transactionTemplate = new TransactionTemplate(transactionManager);
+
+        //when
+        Film rolledBackFilm = transactionTemplate.execute(status -> {
+            filmStorage.addLike(createdFilm.getId(), createdUser.getId());
+            Film film = filmStorage.addFilm(Film.builder().name(FILM_NAME_2).description(FILM_DESCRIPTION_2)
+                    .releaseDate(FILM_RELEASE_DATE_2).duration(FILM_DURATION_2).build());
+            status.setRollbackOnly();
+            return film;
+        });
+
+        //then
+        assertEquals(0, popularityIndex.getLikes(createdFilm.getId()), "Индекс учёл откаченный лайк");
+        assertEquals(List.of(createdFilm.getId()), popularityIndex.getTopFilmIds(FILM_COUNT_10),
+                "Индекс содержит откаченный фильм " + rolledBackFilm.getId());
+    }
+
+    @Test
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
+    @DisplayName("Индекс, заполненный заново после коммита лайка, но до его учёта, не должен считать лайк дважды")
+    void test_rebuild_WhenLikeCommittedButNotApplied_ShouldCountLikeOnce() {
+        //given
+        Film film = filmStorage.addFilm(Film.builder().name(FILM_NAME).description(FILM_DESCRIPTION)
+                .releaseDate(FILM_RELEASE_DATE).duration(FILM_DURATION).build());
+        User user = addUsers(1).get(0);
+        AtomicReference<CompletableFuture<Void>> rebuild = new AtomicReference<>();
+        AtomicBoolean rebuiltBeforeLikeApplied = new AtomicBoolean();
+
+        //when
+        new TransactionTemplate(transactionManager).executeWithoutResult(status -> {
+            // Регистрируется первой, поэтому заполнение запускается после коммита лайка, но до его учёта в индексе
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    rebuild.set(CompletableFuture.runAsync(popularityIndex::rebuild));
+                    rebuiltBeforeLikeApplied.set(completesWithin(rebuild.get(), REBUILD_WAIT_MS));
+                }
+            });
+            filmStorage.addLike(film.getId(), user.getId());
+        });
+        rebuild.get().join();
+
+        //then
+        assertFalse(rebuiltBeforeLikeApplied.get(), "Индекс заполнен заново до учёта записанного лайка");
+        assertEquals(1, popularityIndex.getLikes(film.getId()), "Индекс учёл лайк не один раз");
+    }
+
+    @Test
+    @DisplayName("Фильм из индекса, которого нет в БД, должен пропускаться в ТОП без изменения индекса")
+    void test_getMostPopularFilms_WhenIndexedFilmMissingInDb_ShouldSkipItAndKeepIndex() {
+        //given
+        FilmPopularityIndex popularityIndex = new FilmPopularityIndex(jdbcTemplate, true);
+        FilmStorage indexedStorage = createWriteBehindFilmStorage(popularityIndex, likesWriteBuffer);
+        List<Film> films = IntStream.range(0, 3)
+                .mapToObj(i -> indexedStorage.addFilm(Film.builder().name(FILM_NAME + i)
+                        .description(FILM_DESCRIPTION).releaseDate(FILM_RELEASE_DATE).duration(FILM_DURATION).build()))
+                .toList();
+        jdbcTemplate.update(SET_LIKES_COUNT, 2, films.get(0).getId());
+        jdbcTemplate.update(SET_LIKES_COUNT, 1, films.get(1).getId());
+        List<Integer> indexedIds = popularityIndex.getTopFilmIds(FILM_COUNT_10);
+
+        //when
+        jdbcTemplate.update(DELETE_FILM, films.get(0).getId());
+        List<Integer> topIds = indexedStorage.getMostPopularFilms(2).stream().map(Film::getId).toList();
+
+        //then
+        assertEquals(List.of(films.get(1).getId(), films.get(2).getId()), topIds,
+                "Вместо отсутствующего в БД фильма не взят следующий по популярности");
+        assertEquals(indexedIds, popularityIndex.getTopFilmIds(FILM_COUNT_10),
+                "Индекс изменён чтением ТОП фильмов");
+    }
+
+    @Test
+    @DisplayName("При выключенном индексе в памяти ТОП фильмов должен читаться по счётчику лайков в БД")
+    void test_getMostPopularFilms_WhenInMemoryIndexDisabled_ShouldUseLikesCounter() {
+        //given
+        FilmStorage columnFilmStorage = new FilmDbStorage(jdbcTemplate, filmRowMapper, mpaStorage, genreStorage,
+                filmWithGenresExtractor, new FilmPopularityIndex(jdbcTemplate, false), likesWriteBuffer,
+                transactionManager);
+        List<Film> films = IntStream.range(0, 3)
+                .mapToObj(i -> columnFilmStorage.addFilm(Film.builder().name(FILM_NAME + i)
+                        .description(FILM_DESCRIPTION).releaseDate(FILM_RELEASE_DATE).duration(FILM_DURATION).build()))
+                .toList();
+        User user = userStorage.addUser(User.builder().name(USER_NAME).email(USER_EMAIL).login(USER_LOGIN)
+                .birthday(USER_BIRTHDAY).build());
+        User user2 = userStorage.addUser(User.builder().name(USER_NAME).email(USER_EMAIL_2).login(USER_LOGIN_2)
+                .birthday(USER_BIRTHDAY).build());
+
+        //when
+        columnFilmStorage.addLike(films.get(2).getId(), user.getId());
+        columnFilmStorage.addLike(films.get(2).getId(), user2.getId());
+        columnFilmStorage.addLike(films.get(1).getId(), user.getId());
+        columnFilmStorage.addLike(films.get(0).getId(), user.getId());
+        columnFilmStorage.removeLike(films.get(0).getId(), user.getId());
+
+        //then
+        List<Integer> expectedIds = jdbcTemplate.queryForList(GET_POPULAR_FILMS_IDS, Integer.class, films.size());
+        List<Integer> actualIds = columnFilmStorage.getMostPopularFilms(films.size()).stream()
+                .map(Film::getId).toList();
+        assertEquals(expectedIds, actualIds, "ТОП по счётчику лайков не совпадает с подсчётом в БД");
+    }
+
+    @Test
+    @DisplayName("Восстановление счётчиков должно пересчитать разошедшиеся с films_likes счётчики лайков")
+    void test_repairLikesCounters_WhenCounterDrifted_ShouldRecountFromLikes() {
+        //given
+        Film film = filmStorage.addFilm(Film.builder().name(FILM_NAME).description(FILM_DESCRIPTION)
+                .releaseDate(FILM_RELEASE_DATE).duration(FILM_DURATION).build());
+        User user = userStorage.addUser(User.builder().name(USER_NAME).email(USER_EMAIL).login(USER_LOGIN)
+                .birthday(USER_BIRTHDAY).build());
+        filmStorage.addLike(film.getId(), user.getId());
+        jdbcTemplate.update(SET_LIKES_COUNT, 42, film.getId());
+
+        //when
+        int filmsRepaired = new FilmLikesCounterRepairJob(jdbcTemplate, new FilmPopularityIndex(jdbcTemplate, true),
+                likesWriteBuffer).repair();
+
+        //then
+        assertEquals(1, filmsRepaired, "Не верное количество исправленных счётчиков");
+        assertEquals(1, jdbcTemplate.queryForObject(GET_LIKES_COUNT, Integer.class, film.getId()),
+                "Счётчик лайков не восстановлен");
+    }
+
+    @Test
+    @DisplayName("При отложенной записи лайк с последующим удалением должны взаимно уничтожиться до записи в БД")
+    void test_addAndRemoveLike_WhenWriteBehind_ShouldCancelOutInBuffer() {
+        //given
+        FilmPopularityIndex popularityIndex = new FilmPopularityIndex(jdbcTemplate, true);
+        FilmLikesWriteBuffer writeBuffer = createWriteBuffer(popularityIndex, WRITE_BEHIND_CAPACITY);
+        FilmStorage writeBehindStorage = createWriteBehindFilmStorage(popularityIndex, writeBuffer);
+        Film film = writeBehindStorage.addFilm(Film.builder().name(FILM_NAME).description(FILM_DESCRIPTION)
+                .releaseDate(FILM_RELEASE_DATE).duration(FILM_DURATION).build());
+        User user = addUsers(1).get(0);
+
+        //when
+        boolean added = writeBehindStorage.addLike(film.getId(), user.getId());
+        boolean addedAgain = writeBehindStorage.addLike(film.getId(), user.getId());
+        boolean removed = writeBehindStorage.removeLike(film.getId(), user.getId());
+        boolean removedAgain = writeBehindStorage.removeLike(film.getId(), user.getId());
+
+        //then
+        assertTrue(added, "Лайк не поставлен в буфер");
+        assertFalse(addedAgain, "Повторный лайк поставлен в буфер");
+        assertTrue(removed, "Удаление лайка не поставлено в буфер");
+        assertFalse(removedAgain, "Повторное удаление лайка поставлено в буфер");
+        assertEquals(0, writeBuffer.getPendingCount(), "Лайк и его удаление не схлопнулись в буфере");
+        assertEquals(0, popularityIndex.getLikes(film.getId()), "Индекс популярности учёл отменённый лайк");
+        assertThrows(DataIntegrityViolationException.class, () -> writeBehindStorage.addLike(FILM_ID, user.getId()),
+                "В буфер поставлен лайк несуществующему фильму");
+    }
+
+    @Test
+    @DisplayName("При отложенной записи ТОП должен видеть незаписанные лайки, а запись буфера - обновить БД")
+    void test_getMostPopularFilms_WhenWriteBehind_ShouldSeePendingLikes() {
+        //given
+        FilmPopularityIndex popularityIndex = new FilmPopularityIndex(jdbcTemplate, true);
+        FilmLikesWriteBuffer writeBuffer = createWriteBuffer(popularityIndex, WRITE_BEHIND_CAPACITY);
+        FilmStorage writeBehindStorage = createWriteBehindFilmStorage(popularityIndex, writeBuffer);
+        List<Film> films = IntStream.range(0, 3)
+                .mapToObj(i -> writeBehindStorage.addFilm(Film.builder().name(FILM_NAME + i)
+                        .description(FILM_DESCRIPTION).releaseDate(FILM_RELEASE_DATE).duration(FILM_DURATION).build()))
+                .toList();
+        List<User> users = addUsers(2);
+        filmStorage.addLike(films.get(0).getId(), users.get(0).getId());
+
+        //when
+        writeBehindStorage.addLike(films.get(2).getId(), users.get(0).getId());
+        writeBehindStorage.addLike(films.get(2).getId(), users.get(1).getId());
+        writeBehindStorage.removeLike(films.get(0).getId(), users.get(0).getId());
+        List<Integer> pendingTopIds = writeBehindStorage.getMostPopularFilms(1).stream().map(Film::getId).toList();
+        int likesBeforeFlush = jdbcTemplate.queryForObject(GET_FILM_LIKES, Integer.class, films.get(2).getId());
+        writeBuffer.flush();
+
+        //then
+        assertEquals(List.of(films.get(2).getId()), pendingTopIds, "ТОП не учёл незаписанные лайки");
+        assertEquals(0, likesBeforeFlush, "Лайки записаны в БД до записи буфера");
+        assertEquals(0, writeBuffer.getPendingCount(), "Буфер не опустел после записи");
+        assertEquals(2, jdbcTemplate.queryForObject(GET_FILM_LIKES, Integer.class, films.get(2).getId()),
+                "Лайки из буфера не записаны в БД");
+        assertEquals(2, jdbcTemplate.queryForObject(GET_LIKES_COUNT, Integer.class, films.get(2).getId()),
+                "Счётчик лайков не увеличен при записи буфера");
+        assertEquals(0, jdbcTemplate.queryForObject(GET_LIKES_COUNT, Integer.class, films.get(0).getId()),
+                "Счётчик лайков не уменьшен при записи буфера");
+    }
+
+    @Test
+    @DisplayName("Заполненный буфер лайков должен записываться сам, а при остановке - дописываться в БД")
+    void test_addLike_WhenWriteBehindBufferFullOrShutdown_ShouldFlushToDatabase() throws InterruptedException {
+        //given
+        FilmPopularityIndex popularityIndex = new FilmPopularityIndex(jdbcTemplate, true);
+        FilmLikesWriteBuffer writeBuffer = createWriteBuffer(popularityIndex, 2);
+        FilmStorage writeBehindStorage = createWriteBehindFilmStorage(popularityIndex, writeBuffer);
+        Film film = writeBehindStorage.addFilm(Film.builder().name(FILM_NAME).description(FILM_DESCRIPTION)
+                .releaseDate(FILM_RELEASE_DATE).duration(FILM_DURATION).build());
+        List<User> users = addUsers(5);
+
+        //when
+        users.forEach(user -> writeBehindStorage.addLike(film.getId(), user.getId()));
+        int likesBeforeShutdown = jdbcTemplate.queryForObject(GET_FILM_LIKES, Integer.class, film.getId());
+        int pendingBeforeShutdown = writeBuffer.getPendingCount();
+        writeBuffer.shutdown();
+
+        //then
+        assertEquals(4, likesBeforeShutdown, "Заполненный буфер не записан в БД");
+        assertEquals(1, pendingBeforeShutdown, "Буфер превысил свой размер");
+        assertEquals(users.size(), jdbcTemplate.queryForObject(GET_FILM_LIKES, Integer.class, film.getId()),
+                "Буфер не дописан в БД при остановке");
+        assertEquals(users.size(), jdbcTemplate.queryForObject(GET_LIKES_COUNT, Integer.class, film.getId()),
+                "Счётчик лайков не совпадает с лайками после остановки буфера");
+    }
+
+    @Test
+    @DisplayName("Лайки, не записанные из-за недоступности БД, должны вернуться в буфер и записаться позже")
+    void test_flush_WhenDatabaseUnavailable_ShouldRequeueLikes() {
+        //given
+        FilmPopularityIndex popularityIndex = new FilmPopularityIndex(jdbcTemplate, true);
+        JdbcTemplate failingOnceJdbc = new JdbcTemplate(dataSource) {
+            private boolean failed;
+
+            @Override
+            public int[] batchUpdate(String sql, List<Object[]> batchArgs) {
+                if (!failed) {
+                    failed = true;
+                    throw new CannotGetJdbcConnectionException("БД недоступна");
+                }
+                return super.batchUpdate(sql, batchArgs);
+            }
+        };
+        FilmLikesWriteBuffer writeBuffer = new FilmLikesWriteBuffer(failingOnceJdbc, transactionManager,
+                popularityIndex, true, WRITE_BEHIND_CAPACITY, WRITE_BEHIND_BATCH_SIZE, WRITE_BEHIND_FLUSH_INTERVAL_MS);
+        FilmStorage writeBehindStorage = createWriteBehindFilmStorage(popularityIndex, writeBuffer);
+        Film film = writeBehindStorage.addFilm(Film.builder().name(FILM_NAME).description(FILM_DESCRIPTION)
+                .releaseDate(FILM_RELEASE_DATE).duration(FILM_DURATION).build());
+        User user = addUsers(1).get(0);
+        writeBehindStorage.addLike(film.getId(), user.getId());
+
+        //when
+        writeBuffer.flush();
+        int pendingAfterFailure = writeBuffer.getPendingCount();
+        int likesAfterFailure = jdbcTemplate.queryForObject(GET_FILM_LIKES, Integer.class, film.getId());
+        writeBuffer.flush();
+
+        //then
+        assertEquals(1, pendingAfterFailure, "Не записанный лайк не вернулся в буфер");
+        assertEquals(0, likesAfterFailure, "Лайк записан в БД при ошибке записи");
+        assertEquals(0, writeBuffer.getPendingCount(), "Буфер не опустел после повторной записи");
+        assertEquals(1, jdbcTemplate.queryForObject(GET_FILM_LIKES, Integer.class, film.getId()),
+                "Лайк из буфера не записан в БД после ошибки");
+        assertEquals(1, popularityIndex.getLikes(film.getId()), "Индекс популярности изменён при возврате в буфер");
+    }
+
+    private static boolean completesWithin(Future<?> future, long millis) {
+        try {
+            future.get(millis, TimeUnit.MILLISECONDS);
+            return true;
+        } catch (TimeoutException exception) {
+            return false;
+        } catch (InterruptedException | ExecutionException exception) {
+            throw new IllegalStateException(exception);
+        }
+    }
+
+    private FilmStorage createCountingFilmStorage(QueryCountingDataSource countingDataSource) {
+        return new FilmDbStorage(new JdbcTemplate(countingDataSource), filmRowMapper, mpaStorage, genreStorage,
+                filmWithGenresExtractor, new FilmPopularityIndex(jdbcTemplate, true), likesWriteBuffer,
+                transactionManager);
+    }
+
+    private FilmStorage createWriteBehindFilmStorage(FilmPopularityIndex popularityIndex,
+                                                     FilmLikesWriteBuffer writeBuffer) {
+        return new FilmDbStorage(jdbcTemplate, filmRowMapper, mpaStorage, genreStorage, filmWithGenresExtractor,
+                popularityIndex, writeBuffer, transactionManager);
+    }
+
+    private FilmLikesWriteBuffer createWriteBuffer(FilmPopularityIndex popularityIndex, int capacity) {
+        return new FilmLikesWriteBuffer(jdbcTemplate, transactionManager, popularityIndex, true, capacity,
+                WRITE_BEHIND_BATCH_SIZE, WRITE_BEHIND_FLUSH_INTERVAL_MS);
+    }
+
+    private List<User> addUsers(int count) {
+        return IntStream.range(0, count)
+                .mapToObj(i -> userStorage.addUser(User.builder().name(USER_NAME).email(i + USER_EMAIL)
+                        .login(USER_LOGIN + i).birthday(USER_BIRTHDAY).build()))
+                .toList();
+    }
+}
@@ -7,9 +7,14 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
 import org.springframework.boot.test.autoconfigure.jdbc.JdbcTest;
 import org.springframework.context.annotation.ComponentScan;
+import org.springframework.jdbc.core.JdbcTemplate;
+import ru.yandex.practicum.filmorate.exception.NotFoundException;
 import ru.yandex.practicum.filmorate.model.Genre;
 import ru.yandex.practicum.filmorate.storage.GenreStorage;
+import ru.yandex.practicum.filmorate.storage.cache.CachedGenreStorage;
+import ru.yandex.practicum.filmorate.storage.dao.mapper.GenreRowMapper;
 
+import javax.sql.DataSource;
 import java.util.List;
 
 import static org.junit.jupiter.api.Assertions.*;
@@ -22,7 +27,10 @@ class GenreDbStorageTest {
     private static final int GENRE_ID = 1;
     private static final String GENRE_NAME = "Комедия";
     private static final int GENRES_COUNT = 6;
+    private static final int GENRE_ID_UNKNOWN = 100;
     private final GenreStorage genreStorage;
+    private final DataSource dataSource;
+    private final GenreRowMapper genreRowMapper;
 
     @Test
     @DisplayName("При запросе по id должен вернуть жанр")
@@ -45,4 +53,31 @@ class GenreDbStorageTest {
         assertNotNull(genres, "В контроллере нет жанров");
         assertEquals(GENRES_COUNT, genres.size(), "В контроллере не верное количество жанров");
     }
-}
\ No newline at end of file
+
+    @Test
+    @DisplayName("Жанры должны читаться из БД один раз и дальше отдаваться из кэша")
+    void test_getGenres_WhenCached_ShouldNotQueryDatabaseAgain() {
+        //given
+        QueryCountingDataSource countingDataSource = new QueryCountingDataSource(dataSource);
+        CachedGenreStorage cachedGenreStorage = new CachedGenreStorage(
+                new GenreDbStorage(new JdbcTemplate(countingDataSource), genreRowMapper));
+
+        //when
+        List<Genre> genres = cachedGenreStorage.getGenres();
+        Genre genre = cachedGenreStorage.getGenreById(GENRE_ID);
+        genre.setName(GENRE_NAME + GENRE_NAME);
+        cachedGenreStorage.getGenres();
+        int queryCountBeforeRefresh = countingDataSource.getQueryCount();
+        cachedGenreStorage.refresh();
+
+        //then
+        assertEquals(GENRES_COUNT, genres.size(), "В кэше не верное количество жанров");
+        assertEquals(1, queryCountBeforeRefresh, "Жанры прочитаны из БД больше одного раза");
+        assertEquals(2, countingDataSource.getQueryCount(), "Жанры не перечитаны из БД при обновлении кэша");
+        assertEquals(GENRE_NAME, cachedGenreStorage.getGenreById(GENRE_ID).getName(),
+                "Изменение полученного жанра повлияло на кэш");
+        assertThrows(NotFoundException.class, () -> cachedGenreStorage.getGenreById(GENRE_ID_UNKNOWN),
+                "Из кэша получен несуществующий жанр");
+        assertEquals(2, countingDataSource.getQueryCount(), "Запрос несуществующего жанра перечитал жанры из БД");
+    }
+}
@@ -0,0 +1,63 @@
+package ru.yandex.practicum.filmorate.storage.dao;
+
+import org.springframework.jdbc.datasource.DelegatingDataSource;
+import org.springframework.jdbc.datasource.TransactionAwareDataSourceProxy;
+
+import javax.sql.DataSource;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Источник данных для тестов, который считает отправленные в БД запросы и одновременно открытые соединения.
+ * Работает внутри транзакции теста, поэтому видит данные, добавленные в этой транзакции.
+ */
+class QueryCountingDataSource extends DelegatingDataSource {
+    private static final Set<String> STATEMENT_METHODS = Set.of("prepareStatement", "createStatement",
+            "prepareCall");
+
+    private final AtomicInteger queryCount = new AtomicInteger();
+    private final AtomicInteger openConnections = new AtomicInteger();
+    private final AtomicInteger maxOpenConnections = new AtomicInteger();
+
+    QueryCountingDataSource(DataSource dataSource) {
+        super(new TransactionAwareDataSourceProxy(dataSource));
+    }
+
+    @Override
+    public Connection getConnection() throws SQLException {
+        Connection connection = super.getConnection();
+        maxOpenConnections.accumulateAndGet(openConnections.incrementAndGet(), Math::max);
+        AtomicBoolean closed = new AtomicBoolean();
+        return (Connection) Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[]{Connection.class},
+                (proxy, method, args) -> {
+                    if (STATEMENT_METHODS.contains(method.getName())) {
+                        queryCount.incrementAndGet();
+                    }
+                    if ("close".equals(method.getName()) && closed.compareAndSet(false, true)) {
+                        openConnections.decrementAndGet();
+                    }
+                    try {
+                        return method.invoke(connection, args);
+                    } catch (InvocationTargetException exception) {
+                        throw exception.getTargetException();
+                    }
+                });
+    }
+
+    int getQueryCount() {
+        return queryCount.get();
+    }
+
+    int getMaxOpenConnections() {
+        return maxOpenConnections.get();
+    }
+
+    void reset() {
+        queryCount.set(0);
+    }
+}
@@ -0,0 +1,78 @@
+package ru.yandex.practicum.filmorate.storage.dao;
+
+import lombok.RequiredArgsConstructor;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.jdbc.JdbcTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@JdbcTest
+@AutoConfigureTestDatabase
+@RequiredArgsConstructor(onConstructor_ = @Autowired)
+class SchemaIndexesTest {
+    private static final String EXPLAIN = "EXPLAIN ";
+    private static final String TABLE_SCAN = "TABLESCAN";
+
+    private final JdbcTemplate jdbcTemplate;
+
+    @Test
+    @DisplayName("Поиск лайка должен идти по уникальному индексу (film_id, user_id)")
+    void test_filmLikeQuery_ShouldUseFilmUserIndex() {
+        assertUsesIndex("SELECT COUNT(*) FROM films_likes WHERE film_id = ? AND user_id = ?",
+                "UQ_FILMS_LIKES_FILM_USER");
+    }
+
+    @Test
+    @DisplayName("Жанры фильмов должны загружаться по уникальному индексу (film_id, genre_id)")
+    void test_filmGenresQuery_ShouldUseFilmGenreIndex() {
+        assertUsesIndex("SELECT film_id, genre_id FROM films_genres WHERE film_id IN (?, ?) " +
+                "ORDER BY film_id, genre_id", "UQ_FILMS_GENRES_FILM_GENRE");
+    }
+
+    @Test
+    @DisplayName("Друзья и общие друзья должны искаться по уникальному индексу (user_id, friend_id)")
+    void test_friendshipQueries_ShouldUseUserFriendIndex() {
+        assertUsesIndex("SELECT friend_id FROM users_friendship WHERE user_id = ?",
+                "UQ_USERS_FRIENDSHIP_USER_FRIEND");
+        assertUsesIndex("SELECT f1.friend_id FROM users_friendship f1 " +
+                "JOIN users_friendship f2 ON f1.friend_id = f2.friend_id " +
+                "WHERE f1.user_id = ? AND f2.user_id = ?", "UQ_USERS_FRIENDSHIP_USER_FRIEND");
+    }
+
+    @Test
+    @DisplayName("Удаление связей и обратные поиски не должны сканировать таблицы целиком")
+    void test_deleteAndReverseQueries_ShouldNotScanTables() {
+        assertNoTableScan("DELETE FROM films_likes WHERE film_id = ? AND user_id = ?");
+        assertNoTableScan("DELETE FROM films_genres WHERE film_id = ?");
+        assertNoTableScan("DELETE FROM users_friendship WHERE user_id = ? AND friend_id = ?");
+        assertNoTableScan("SELECT film_id FROM films_likes WHERE user_id = ?");
+        assertNoTableScan("SELECT film_id FROM films_genres WHERE genre_id = ?");
+        assertNoTableScan("SELECT user_id FROM users_friendship WHERE friend_id = ?");
+    }
+
+    private void assertUsesIndex(String query, String indexName) {
+        String plan = explain(query);
+        assertTrue(plan.contains(indexName), "Запрос не использует индекс " + indexName + ": " + plan);
+    }
+
+    private void assertNoTableScan(String query) {
+        String plan = explain(query);
+        assertFalse(plan.contains(TABLE_SCAN), "Запрос сканирует таблицу целиком: " + plan);
+    }
+
+    private String explain(String query) {
+        String plan = jdbcTemplate.query(EXPLAIN + query, preparedStatement -> {
+            for (int idx = 1; idx <= preparedStatement.getParameterMetaData().getParameterCount(); idx++) {
+                preparedStatement.setInt(idx, idx);
+            }
+        }, resultSet -> resultSet.next() ? resultSet.getString(1) : null);
+        assertNotNull(plan, "Нет плана запроса");
+        return plan.toUpperCase();
+    }
+}
@@ -12,11 +12,16 @@ import org.springframework.jdbc.core.JdbcTemplate;
 import ru.yandex.practicum.filmorate.exception.NotFoundException;
 import ru.yandex.practicum.filmorate.model.User;
 import ru.yandex.practicum.filmorate.storage.UserStorage;
+import ru.yandex.practicum.filmorate.storage.dao.mapper.UserRowMapper;
 
+import javax.sql.DataSource;
 import java.time.LocalDate;
 import java.time.Month;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -38,10 +43,13 @@ class UserDbStorageTest {
     private static final LocalDate USER_BIRTHDAY_2 = LocalDate.of(1982, Month.OCTOBER, 22);
 
     private static final Integer USER_ID = 567;
+    private static final int FRIENDS_COUNT = 20;
     private static final String DELETE_USERS = "DELETE FROM users;";
 
     private final UserStorage userStorage;
     private final JdbcTemplate jdbcTemplate;
+    private final DataSource dataSource;
+    private final UserRowMapper userRowMapper;
 
     @BeforeEach
     @DisplayName("Чистим БД")
@@ -73,6 +81,26 @@ class UserDbStorageTest {
                 "Из контроллера получен несуществующий пользователь");
     }
 
+    @Test
+    @DisplayName("Проверка наличия пользователей должна находить только существующих одним запросом")
+    void test_existsUser_WhenSomeUsersNotExist_ShouldReturnOnlyExisting() {
+        //given
+        User user = User.builder().name(USER_NAME).email(USER_EMAIL).login(USER_LOGIN).birthday(USER_BIRTHDAY).build();
+        User createdUser = userStorage.addUser(user);
+        QueryCountingDataSource countingDataSource = new QueryCountingDataSource(dataSource);
+        UserStorage countingUserStorage = new UserDbStorage(new JdbcTemplate(countingDataSource), userRowMapper);
+
+        //when
+        Set<Integer> existingIds = countingUserStorage.getExistingUserIds(List.of(createdUser.getId(), USER_ID));
+        int existingIdsQueryCount = countingDataSource.getQueryCount();
+
+        //then
+        assertTrue(userStorage.existsUser(createdUser.getId()), "Существующий пользователь не найден");
+        assertFalse(userStorage.existsUser(USER_ID), "Найден несуществующий пользователь");
+        assertEquals(Set.of(createdUser.getId()), existingIds, "Найдены не те пользователи");
+        assertEquals(1, existingIdsQueryCount, "Наличие пользователей проверяется не одним запросом");
+    }
+
     @Test
     @DisplayName("При добавлении двух пользователей хранилище должно возвращать их")
     void test_getUsers_WhenAddedUsers_ShouldReturnAll() {
@@ -130,6 +158,31 @@ class UserDbStorageTest {
                 "При добавлении в друзья список друзей остался пуст");
     }
 
+    @Test
+    @DisplayName("Повторное добавление и удаление из друзей не должно менять список друзей")
+    void test_addAndRemoveFriends_WhenRepeated_ShouldBeIdempotent() {
+        //given
+        User user = User.builder().name(USER_NAME).email(USER_EMAIL).login(USER_LOGIN).birthday(USER_BIRTHDAY).build();
+        User user2 = User.builder().name(USER_NAME_2).email(USER_EMAIL_2).login(USER_LOGIN_2).birthday(USER_BIRTHDAY_2)
+                .build();
+        User createdUser1 = userStorage.addUser(user);
+        User createdUser2 = userStorage.addUser(user2);
+
+        //when
+        boolean firstAdded = userStorage.addFriends(createdUser1.getId(), createdUser2.getId());
+        boolean secondAdded = userStorage.addFriends(createdUser1.getId(), createdUser2.getId());
+        int friendsCount = userStorage.getUserFriends(createdUser1.getId()).size();
+        boolean firstRemoved = userStorage.removeFriends(createdUser1.getId(), createdUser2.getId());
+        boolean secondRemoved = userStorage.removeFriends(createdUser1.getId(), createdUser2.getId());
+
+        //then
+        assertTrue(firstAdded, "Пользователь не добавлен в друзья");
+        assertFalse(secondAdded, "Пользователь повторно добавлен в друзья");
+        assertEquals(1, friendsCount, "Повторное добавление изменило список друзей");
+        assertTrue(firstRemoved, "Пользователь не удалён из друзей");
+        assertFalse(secondRemoved, "Пользователь повторно удалён из друзей");
+    }
+
     @Test
     @DisplayName("При удалении из друзей пользователя список друзей должен обновиться")
     void test_removeFriends_WhenFriendsExist_ShouldReturnZero() {
@@ -183,4 +236,72 @@ class UserDbStorageTest {
         assertNotNull(userFriends, "Список друзей не проинициализировался");
         assertEquals(0, userFriends.size(), "Список друзей не пустой");
     }
-}
\ No newline at end of file
+
+    @Test
+    @DisplayName("Друзья пользователя должны загружаться одним запросом без их собственных друзей")
+    void test_getUserFriendUsers_WhenManyFriends_ShouldUseSingleQuery() {
+        //given
+        User user = userStorage.addUser(User.builder().name(USER_NAME).email(USER_EMAIL).login(USER_LOGIN)
+                .birthday(USER_BIRTHDAY).build());
+        List<User> friends = IntStream.range(0, FRIENDS_COUNT)
+                .mapToObj(i -> userStorage.addUser(User.builder().name(USER_NAME_2 + i).email(i + USER_EMAIL_2)
+                        .login(USER_LOGIN_2 + i).birthday(USER_BIRTHDAY_2).build()))
+                .toList();
+        friends.forEach(friend -> userStorage.addFriends(user.getId(), friend.getId()));
+        userStorage.addFriends(friends.get(0).getId(), user.getId());
+
+        QueryCountingDataSource countingDataSource = new QueryCountingDataSource(dataSource);
+        UserStorage countingUserStorage = new UserDbStorage(new JdbcTemplate(countingDataSource), userRowMapper);
+
+        //when
+        List<User> friendUsers = countingUserStorage.getUserFriendUsers(user.getId());
+
+        //then
+        assertEquals(1, countingDataSource.getQueryCount(), "Друзья пользователя загружаются не одним запросом");
+        assertEquals(FRIENDS_COUNT, friendUsers.size(), "Загружено не верное количество друзей");
+        assertEquals(friends.get(0).getName(), friendUsers.get(0).getName(), "Друзья не упорядочены по id");
+        assertTrue(friendUsers.get(0).getFriends().isEmpty(), "У друзей загружены их собственные друзья");
+    }
+
+    @Test
+    @DisplayName("Пользователи по набору id должны возвращаться упорядоченными по id без несуществующих")
+    void test_getUsersByIds_WhenSomeUsersNotExist_ShouldReturnExisting() {
+        //given
+        User user = userStorage.addUser(User.builder().name(USER_NAME).email(USER_EMAIL).login(USER_LOGIN)
+                .birthday(USER_BIRTHDAY).build());
+        User user2 = userStorage.addUser(User.builder().name(USER_NAME_2).email(USER_EMAIL_2).login(USER_LOGIN_2)
+                .birthday(USER_BIRTHDAY_2).build());
+
+        //when
+        List<User> users = userStorage.getUsersByIds(List.of(user2.getId(), USER_ID, user.getId()));
+
+        //then
+        assertEquals(List.of(user.getId(), user2.getId()), users.stream().map(User::getId).toList(),
+                "Возвращены некорректные пользователи");
+    }
+
+    @Test
+    @DisplayName("Id общих друзей должны находиться пересечением друзей двух пользователей")
+    void test_getCommonFriendIds_WhenUsersHaveCommonFriends_ShouldReturnIntersection() {
+        //given
+        List<User> users = IntStream.range(0, FRIENDS_COUNT)
+                .mapToObj(i -> userStorage.addUser(User.builder().name(USER_NAME + i).email(i + USER_EMAIL)
+                        .login(USER_LOGIN + i).birthday(USER_BIRTHDAY).build()))
+                .toList();
+        int firstUserId = users.get(0).getId();
+        int secondUserId = users.get(1).getId();
+        users.subList(2, FRIENDS_COUNT).forEach(friend -> userStorage.addFriends(firstUserId, friend.getId()));
+        users.subList(FRIENDS_COUNT / 2, FRIENDS_COUNT)
+                .forEach(friend -> userStorage.addFriends(secondUserId, friend.getId()));
+        userStorage.addFriends(secondUserId, firstUserId);
+
+        //when
+        Set<Integer> commonFriendIds = userStorage.getCommonFriendIds(firstUserId, secondUserId);
+
+        //then
+        assertEquals(users.subList(FRIENDS_COUNT / 2, FRIENDS_COUNT).stream().map(User::getId)
+                        .collect(Collectors.toSet()), commonFriendIds, "Найдены некорректные общие друзья");
+        assertTrue(userStorage.getCommonFriendIds(secondUserId, USER_ID).isEmpty(),
+                "У пользователя без друзей найдены общие друзья");
+    }
+}
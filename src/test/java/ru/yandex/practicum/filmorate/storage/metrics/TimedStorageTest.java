@@ -0,0 +1,52 @@
+package ru.yandex.practicum.filmorate.storage.metrics;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import lombok.RequiredArgsConstructor;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.jdbc.JdbcTest;
+import org.springframework.context.annotation.ComponentScan;
+import org.springframework.context.annotation.Import;
+import ru.yandex.practicum.filmorate.exception.NotFoundException;
+import ru.yandex.practicum.filmorate.model.User;
+import ru.yandex.practicum.filmorate.storage.UserStorage;
+
+import java.time.LocalDate;
+import java.time.Month;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@JdbcTest
+@AutoConfigureTestDatabase
+@Import(SimpleMeterRegistry.class)
+@RequiredArgsConstructor(onConstructor_ = @Autowired)
+@ComponentScan(basePackages = "ru.yandex.practicum.filmorate")
+class TimedStorageTest {
+    private static final int USER_ID_UNKNOWN = 567;
+
+    private final UserStorage userStorage;
+    private final MeterRegistry meterRegistry;
+
+    @Test
+    @DisplayName("Хранилище должно замерять время каждого вызова метода, в том числе завершившегося ошибкой")
+    void test_getUserById_WhenCalled_ShouldRecordStorageTimer() {
+        //given
+        User user = userStorage.addUser(User.builder().name("Вася").email("mail@mail.ru").login("user")
+                .birthday(LocalDate.of(1992, Month.DECEMBER, 12)).build());
+
+        //when
+        userStorage.getUserById(user.getId());
+        assertThrows(NotFoundException.class, () -> userStorage.getUserById(USER_ID_UNKNOWN),
+                "Получен несуществующий пользователь");
+
+        //then
+        assertInstanceOf(TimedUserStorage.class, userStorage, "Хранилище пользователей без таймеров");
+        assertEquals(2, meterRegistry.get(StorageTimers.METRIC_NAME)
+                .tags("storage", "users", "method", "getUserById").timer().count(), "Вызовы не замерены");
+        assertEquals(1, meterRegistry.get(StorageTimers.METRIC_NAME)
+                .tags("storage", "users", "method", "addUser").timer().count(), "Добавление не замерено");
+    }
+}